@@ -0,0 +1,68 @@
+package org.mapleir.jdaplugin.bench;
+
+import org.mapleir.jdaplugin.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code AnalysisManager.analyzeBinary} for a container that isn't in the disk cache, as run when a jar is
+ * opened: parse every class, build the hierarchy, all of the cfgs, the index and optionally the call graph.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class AnalysisBenchmark {
+    /** 0 for one worker per core */
+    @Param({"1", "0"})
+    public int workers;
+
+    @Param({"NONE", "CHA"})
+    public CallGraph.Mode callGraph;
+
+    private ForkJoinPool pool;
+    private AnalysisManager manager;
+
+    @Setup(Level.Trial)
+    public void createManager() {
+        pool = Workers.create(workers == 0 ? Runtime.getRuntime().availableProcessors() : workers);
+        manager = manager(pool, callGraph);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public ContainerIndex analyze(CorpusState corpus) throws InterruptedException {
+        MemoryFileContainer fc = analyze(manager, corpus);
+        ContainerIndex index = manager.getIndex(fc);
+        manager.unload(fc);
+        // otherwise the next iteration would only reanalyse what changed, i.e. nothing
+        manager.clearRetained();
+        return index;
+    }
+
+    static AnalysisManager manager(ForkJoinPool pool, CallGraph.Mode callGraph) {
+        // read by the manager when it's created
+        System.setProperty(AnalysisDiskCache.ENABLED_PROPERTY, "false");
+        System.setProperty(CallGraph.MODE_PROPERTY, callGraph.name());
+        return new AnalysisManager(pool, false, busy -> {});
+    }
+
+    /**
+     * @return the container, still loaded
+     */
+    static MemoryFileContainer analyze(AnalysisManager manager, CorpusState corpus) throws InterruptedException {
+        MemoryFileContainer fc = new MemoryFileContainer(Paths.get(corpus.shape.name() + ".jar"), corpus.classes);
+        if (!manager.analyze(fc))
+            throw new IllegalStateException("Analysis of " + fc.name + " didn't complete");
+        return fc;
+    }
+}
@@ -0,0 +1,25 @@
+package org.mapleir.jdaplugin.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Without arguments runs every benchmark with the gc profiler (allocation rate and bytes per op) and writes
+ * {@code jmh-result.json}. Any arguments are passed to the regular JMH command line instead.
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder()
+                .include(BenchmarkMain.class.getPackage().getName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-result.json")
+                .build()).run();
+    }
+}
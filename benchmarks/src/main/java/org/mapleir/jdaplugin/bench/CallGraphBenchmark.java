@@ -0,0 +1,35 @@
+package org.mapleir.jdaplugin.bench;
+
+import org.mapleir.jdaplugin.CallGraph;
+import org.mapleir.jdaplugin.Workers;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the call graph of a whole container, without the rest of analysis.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class CallGraphBenchmark {
+    @Param({"CHA", "RTA"})
+    public CallGraph.Mode mode;
+
+    private List<ClassNode> classes;
+
+    @Setup(Level.Trial)
+    public void setup(CorpusState corpus) {
+        classes = Corpus.parse(corpus.classes);
+    }
+
+    @Benchmark
+    public CallGraph build() throws InterruptedException {
+        return CallGraph.build(classes, mode, Workers.shared());
+    }
+}
@@ -0,0 +1,392 @@
+package org.mapleir.jdaplugin.bench;
+
+import org.mapleir.jdaplugin.ClassHierarchyIndex;
+import org.mapleir.jdaplugin.HierarchyClassWriter;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Classes to benchmark against. The synthetic shapes exaggerate what obfuscated jars look like, {@code JAR}
+ * loads the jar named by the {@code mapleir.bench.jar} system property.
+ */
+public final class Corpus {
+    public static final String JAR_PROPERTY = "mapleir.bench.jar";
+
+    public enum Shape {
+        /** few classes with huge table and lookup switches */
+        SWITCH,
+        /** deeply nested try/catch ranges */
+        EXCEPTIONS,
+        /** thousands of blocks under hundreds of overlapping try/catch ranges */
+        HANDLERS,
+        /** long chains of opaque predicates and constant arithmetic, repeated across classes */
+        OPAQUE,
+        /** many small classes with fields, accessors, calls between each other and string constants */
+        MIXED,
+        JAR
+    }
+
+    private Corpus() {
+    }
+
+    /**
+     * @return class file name -> bytes
+     */
+    public static Map<String, byte[]> load(Shape shape) throws IOException {
+        switch (shape) {
+            case SWITCH:
+                return generate(20, i -> switchClass(i, 2000));
+            case EXCEPTIONS:
+                return generate(50, i -> exceptionClass(i, 48));
+            case HANDLERS:
+                return generate(10, i -> handlerClass(i, 1500, 300));
+            case OPAQUE:
+                return generate(100, i -> opaqueClass(i, 200));
+            case MIXED:
+                return generate(500, i -> mixedClass(i, 500));
+            case JAR:
+                String jar = System.getProperty(JAR_PROPERTY);
+                if (jar == null)
+                    throw new IllegalStateException("-D" + JAR_PROPERTY + "=<path> is required for the JAR corpus");
+                return readJar(Paths.get(jar));
+        }
+        throw new IllegalArgumentException(shape.toString());
+    }
+
+    public static List<ClassNode> parse(Map<String, byte[]> classes) {
+        List<ClassNode> nodes = new ArrayList<>(classes.size());
+        for (byte[] bytes : classes.values()) {
+            ClassNode cn = new ClassNode();
+            new ClassReader(bytes).accept(cn, ClassReader.SKIP_FRAMES);
+            nodes.add(cn);
+        }
+        return nodes;
+    }
+
+    private interface Generator {
+        ClassWriter generate(int index);
+    }
+
+    private static Map<String, byte[]> generate(int count, Generator generator) {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            ClassWriter cw = generator.generate(i);
+            byte[] bytes = cw.toByteArray();
+            classes.put(new ClassReader(bytes).getClassName() + ".class", bytes);
+        }
+        return classes;
+    }
+
+    private static ClassWriter newClass(String name) {
+        ClassWriter cw = new HierarchyClassWriter(ClassWriter.COMPUTE_FRAMES, ClassHierarchyIndex.of(Collections.emptyList()));
+        cw.visit(V1_8, ACC_PUBLIC | ACC_SUPER, name, null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        return cw;
+    }
+
+    private static ClassWriter switchClass(int index, int cases) {
+        ClassWriter cw = newClass("bench/Switch" + index);
+        Random random = new Random(index);
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "dispatch", "(I)I", null, null);
+        mv.visitCode();
+        Label dflt = new Label();
+        Label[] labels = new Label[cases];
+        for (int i = 0; i < cases; i++)
+            labels[i] = new Label();
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitTableSwitchInsn(0, cases - 1, dflt, labels);
+        for (int i = 0; i < cases; i++) {
+            mv.visitLabel(labels[i]);
+            mv.visitVarInsn(ILOAD, 0);
+            mv.visitLdcInsn(random.nextInt());
+            mv.visitInsn(IMUL);
+            mv.visitLdcInsn(random.nextInt());
+            mv.visitInsn(IXOR);
+            mv.visitInsn(IRETURN);
+        }
+        mv.visitLabel(dflt);
+        mv.visitInsn(ICONST_M1);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "lookup", "(I)Ljava/lang/String;", null, null);
+        mv.visitCode();
+        int[] keys = new int[cases / 4];
+        Label[] targets = new Label[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i * 7919;
+            targets[i] = new Label();
+        }
+        Label none = new Label();
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitLookupSwitchInsn(none, keys, targets);
+        for (int i = 0; i < keys.length; i++) {
+            mv.visitLabel(targets[i]);
+            mv.visitLdcInsn("case-" + keys[i]);
+            mv.visitInsn(ARETURN);
+        }
+        mv.visitLabel(none);
+        mv.visitInsn(ACONST_NULL);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw;
+    }
+
+    private static ClassWriter exceptionClass(int index, int depth) {
+        String name = "bench/Exceptions" + index;
+        ClassWriter cw = newClass(name);
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "helper", "(I)I", null, null);
+        mv.visitCode();
+        Label ok = new Label();
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitJumpInsn(IFGE, ok);
+        mv.visitTypeInsn(NEW, "java/lang/IllegalStateException");
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/IllegalStateException", "<init>", "()V", false);
+        mv.visitInsn(ATHROW);
+        mv.visitLabel(ok);
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitInsn(ICONST_3);
+        mv.visitInsn(IMUL);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "nested", "(I)I", null, null);
+        mv.visitCode();
+        Label[] start = new Label[depth], end = new Label[depth], handler = new Label[depth], after = new Label[depth];
+        for (int i = 0; i < depth; i++) {
+            start[i] = new Label();
+            end[i] = new Label();
+            handler[i] = new Label();
+            after[i] = new Label();
+        }
+        // innermost first, that's the order the jvm searches the table in
+        for (int i = depth - 1; i >= 0; i--) {
+            mv.visitTryCatchBlock(start[i], end[i], handler[i], i % 2 == 0 ? "java/lang/RuntimeException" : "java/lang/IllegalStateException");
+        }
+        for (int i = 0; i < depth; i++) {
+            mv.visitLabel(start[i]);
+            mv.visitIincInsn(0, 1);
+        }
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitMethodInsn(INVOKESTATIC, name, "helper", "(I)I", false);
+        mv.visitVarInsn(ISTORE, 0);
+        for (int i = depth - 1; i >= 0; i--) {
+            mv.visitLabel(end[i]);
+            mv.visitJumpInsn(GOTO, after[i]);
+            mv.visitLabel(handler[i]);
+            mv.visitInsn(POP);
+            mv.visitIincInsn(0, i);
+            mv.visitLabel(after[i]);
+        }
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw;
+    }
+
+    private static ClassWriter handlerClass(int index, int segments, int ranges) {
+        ClassWriter cw = newClass("bench/Handlers" + index);
+        Random random = new Random(index);
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "guarded", "(I)I", null, null);
+        mv.visitCode();
+        Label[] marks = new Label[segments + 1];
+        for (int i = 0; i <= segments; i++)
+            marks[i] = new Label();
+        Label[] handlers = new Label[ranges];
+        for (int r = 0; r < ranges; r++) {
+            handlers[r] = new Label();
+            int from = random.nextInt(segments);
+            int to = Math.min(segments, from + 1 + random.nextInt(segments / 4));
+            mv.visitTryCatchBlock(marks[from], marks[to], handlers[r], r % 3 == 0 ? null : "java/lang/RuntimeException");
+        }
+        // a branch per segment, so there are several blocks between range boundaries
+        for (int i = 0; i < segments; i++) {
+            Label odd = new Label(), join = new Label();
+            mv.visitLabel(marks[i]);
+            mv.visitVarInsn(ILOAD, 0);
+            mv.visitInsn(ICONST_1);
+            mv.visitInsn(IAND);
+            mv.visitJumpInsn(IFNE, odd);
+            mv.visitVarInsn(ILOAD, 0);
+            mv.visitInsn(ICONST_3);
+            mv.visitInsn(IDIV);
+            mv.visitVarInsn(ISTORE, 0);
+            mv.visitJumpInsn(GOTO, join);
+            mv.visitLabel(odd);
+            mv.visitIincInsn(0, i & 0x7f);
+            mv.visitLabel(join);
+        }
+        mv.visitLabel(marks[segments]);
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitInsn(IRETURN);
+        for (int r = 0; r < ranges; r++) {
+            mv.visitLabel(handlers[r]);
+            mv.visitInsn(POP);
+            mv.visitIincInsn(0, -r);
+            mv.visitVarInsn(ILOAD, 0);
+            mv.visitInsn(IRETURN);
+        }
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw;
+    }
+
+    private static ClassWriter opaqueClass(int index, int predicates) {
+        ClassWriter cw = newClass("bench/Opaque" + index);
+        // a small pool of constants, obfuscators repeat the same predicates all over a jar
+        Random random = new Random(index % 8);
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "compute", "(I)I", null, null);
+        mv.visitCode();
+        for (int i = 0; i < predicates; i++) {
+            int c1 = random.nextInt(1 << 16), c2 = random.nextInt(1 << 16), c3 = random.nextInt(), c4 = 1 + random.nextInt(97);
+            int k = (c1 * c2 + c3) % c4;
+            Label junk = new Label(), next = new Label();
+            mv.visitLdcInsn(c1);
+            mv.visitLdcInsn(c2);
+            mv.visitInsn(IMUL);
+            mv.visitLdcInsn(c3);
+            mv.visitInsn(IADD);
+            mv.visitLdcInsn(c4);
+            mv.visitInsn(IREM);
+            mv.visitLdcInsn(k);
+            mv.visitJumpInsn(IF_ICMPNE, junk);
+            mv.visitVarInsn(ILOAD, 0);
+            mv.visitLdcInsn(random.nextInt());
+            mv.visitLdcInsn(random.nextInt());
+            mv.visitInsn(IXOR);
+            mv.visitInsn(IADD);
+            mv.visitVarInsn(ISTORE, 0);
+            mv.visitJumpInsn(GOTO, next);
+            mv.visitLabel(junk);
+            mv.visitVarInsn(ILOAD, 0);
+            mv.visitLdcInsn(random.nextInt());
+            mv.visitInsn(IXOR);
+            mv.visitVarInsn(ISTORE, 0);
+            mv.visitLabel(next);
+        }
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw;
+    }
+
+    private static ClassWriter mixedClass(int index, int count) {
+        String name = "bench/Mixed" + index;
+        String next = "bench/Mixed" + ((index + 1) % count);
+        ClassWriter cw = newClass(name);
+        cw.visitField(ACC_PRIVATE, "value", "I", null, null).visitEnd();
+        cw.visitField(ACC_PRIVATE, "label", "Ljava/lang/String;", null, null).visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "getValue", "()I", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, name, "value", "I");
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC, "setValue", "(I)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitFieldInsn(PUTFIELD, name, "value", "I");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC, "describe", "()Ljava/lang/String;", null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(NEW, "java/lang/StringBuilder");
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn("bench-string-" + index);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "(Ljava/lang/String;)V", false);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, name, "label", "Ljava/lang/String;");
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;", false);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;", false);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // sum over a chain of instances of the next class
+        mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "sum", "(I)I", null, null);
+        mv.visitCode();
+        Label loop = new Label(), done = new Label();
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ISTORE, 1);
+        mv.visitLabel(loop);
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitJumpInsn(IFLE, done);
+        mv.visitTypeInsn(NEW, next);
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, next, "<init>", "()V", false);
+        mv.visitInsn(DUP);
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitMethodInsn(INVOKEVIRTUAL, next, "setValue", "(I)V", false);
+        mv.visitMethodInsn(INVOKEVIRTUAL, next, "getValue", "()I", false);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitInsn(IADD);
+        mv.visitVarInsn(ISTORE, 1);
+        mv.visitIincInsn(0, -1);
+        mv.visitJumpInsn(GOTO, loop);
+        mv.visitLabel(done);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw;
+    }
+
+    private static Map<String, byte[]> readJar(Path jar) throws IOException {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                if (entry.isDirectory() || !entry.getName().endsWith(".class"))
+                    continue;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                    byte[] chunk = new byte[8192];
+                    for (int n; (n = in.read(chunk)) > 0; )
+                        buf.write(chunk, 0, n);
+                    classes.put(entry.getName(), buf.toByteArray());
+                }
+            }
+        }
+        return classes;
+    }
+}
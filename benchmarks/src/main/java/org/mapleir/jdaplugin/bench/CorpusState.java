@@ -0,0 +1,19 @@
+package org.mapleir.jdaplugin.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Map;
+
+@State(Scope.Benchmark)
+public class CorpusState {
+    @Param({"SWITCH", "EXCEPTIONS", "HANDLERS", "OPAQUE", "MIXED"})
+    public Corpus.Shape shape;
+
+    public Map<String, byte[]> classes;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        classes = Corpus.load(shape);
+    }
+}
@@ -0,0 +1,66 @@
+package org.mapleir.jdaplugin.bench;
+
+import club.bytecode.the.jda.decompilers.JDADecompiler;
+import org.mapleir.jdaplugin.*;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering whole classes through each decompiler, i.e. {@code createPrint} for every method. With
+ * {@code cached} the shared cfg cache is kept warm between calls, which is what switching tabs costs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class DecompilerBenchmark {
+    public enum Decompiler {
+        IL, IR, DEBUG_IL
+    }
+
+    @Param({"IL", "IR", "DEBUG_IL"})
+    public Decompiler decompiler;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private JDADecompiler instance;
+    private List<ClassNode> classes;
+
+    @Setup(Level.Trial)
+    public void setup(CorpusState corpus) {
+        if (MaplePlugin.getInstance() == null)
+            new MaplePlugin(); // decompilers report the classes they show to the analysis manager
+        switch (decompiler) {
+            case IL:
+                instance = new ILDecompiler();
+                break;
+            case IR:
+                instance = new IRDecompiler();
+                break;
+            case DEBUG_IL:
+                instance = new DebugILDecompiler();
+                break;
+        }
+        classes = Corpus.parse(corpus.classes);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        if (!cached)
+            CfgCache.shared().clear();
+    }
+
+    @Benchmark
+    public void decompile(Blackhole bh) {
+        for (ClassNode cn : classes) {
+            bh.consume(instance.decompileClassNode(null, cn));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.mapleir.jdaplugin.bench;
+
+import org.mapleir.asm.ClassHelper;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.jdaplugin.DeobfuscateFilter;
+import org.mapleir.jdaplugin.ManagedIRCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The filter's ssa passes over every method of the corpus. The cfgs are rebuilt (untimed) before each call
+ * since the passes rewrite them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Thread)
+public class DeobfuscateBenchmark {
+    private final DeobfuscateFilter filter = new DeobfuscateFilter();
+    private List<ControlFlowGraph> cfgs;
+
+    @Setup(Level.Invocation)
+    public void build(CorpusState corpus) {
+        cfgs = new ArrayList<>();
+        for (byte[] bytes : corpus.classes.values()) {
+            for (MethodNode m : ClassHelper.create(bytes).getMethods()) {
+                cfgs.add(ManagedIRCache.build(m));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<ControlFlowGraph> simplifyArithmetic() {
+        for (ControlFlowGraph cfg : cfgs)
+            filter.simplifyArithmetic(cfg);
+        return cfgs;
+    }
+
+    @Benchmark
+    public List<ControlFlowGraph> killDeadCode() {
+        for (ControlFlowGraph cfg : cfgs)
+            filter.killDeadCode(cfg);
+        return cfgs;
+    }
+
+    @Benchmark
+    public List<ControlFlowGraph> simplifyToFixpoint() {
+        for (ControlFlowGraph cfg : cfgs)
+            filter.simplify(cfg, true);
+        return cfgs;
+    }
+}
@@ -0,0 +1,71 @@
+package org.mapleir.jdaplugin.bench;
+
+import org.mapleir.jdaplugin.AnalysisManager;
+import org.mapleir.jdaplugin.CallGraph;
+import org.mapleir.jdaplugin.ConstantIndex;
+import org.mapleir.jdaplugin.ContainerIndex;
+import org.mapleir.jdaplugin.SearchQuery;
+import org.mapleir.jdaplugin.Workers;
+import org.mapleir.stdlib.util.JavaDesc;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The index lookups behind {@code searchConstant} and {@code search}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+    private ContainerIndex index;
+
+    @Setup(Level.Trial)
+    public void index(CorpusState corpus) throws InterruptedException {
+        AnalysisManager manager = AnalysisBenchmark.manager(Workers.shared(), CallGraph.Mode.NONE);
+        index = manager.getIndex(AnalysisBenchmark.analyze(manager, corpus));
+    }
+
+    private void run(SearchQuery query, Blackhole bh) {
+        query.run(index, (className, method) -> bh.consume(className));
+    }
+
+    @Benchmark
+    public void constantSubstring(Blackhole bh) {
+        run(SearchQuery.constant("string-4", ConstantIndex.Match.SUBSTRING), bh);
+    }
+
+    @Benchmark
+    public void constantShortSubstring(Blackhole bh) {
+        run(SearchQuery.constant("-1", ConstantIndex.Match.SUBSTRING), bh);
+    }
+
+    @Benchmark
+    public void constantExact(Blackhole bh) {
+        run(SearchQuery.constant("case-7919", ConstantIndex.Match.EXACT), bh);
+    }
+
+    @Benchmark
+    public void constantRange(Blackhole bh) {
+        run(SearchQuery.constantRange(0, 100000), bh);
+    }
+
+    @Benchmark
+    public void methodByName(Blackhole bh) {
+        run(SearchQuery.member(JavaDesc.DescType.METHOD, null, "helper", null), bh);
+    }
+
+    @Benchmark
+    public void methodByRegex(Blackhole bh) {
+        run(SearchQuery.memberPattern(JavaDesc.DescType.METHOD, "[gs]et.*"), bh);
+    }
+
+    @Benchmark
+    public void fieldExact(Blackhole bh) {
+        run(SearchQuery.member(JavaDesc.DescType.FIELD, "bench/Mixed1", "value", "I"), bh);
+    }
+}
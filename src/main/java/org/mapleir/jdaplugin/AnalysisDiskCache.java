@@ -0,0 +1,171 @@
+package org.mapleir.jdaplugin;
+
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk cache of {@link ClassSummary}s keyed by the SHA-256 of a class' bytes and the MapleIR version, and
+ * disabled when that version can't be determined.
+ * Entries are written to a temp file and atomically renamed into place, so concurrent writers (several JDA
+ * instances, or several containers sharing classes) never expose a partial entry. Entries that fail
+ * validation on read are deleted and treated as a miss.
+ *
+ * The cache lives in {@code ~/.mapleir/cache} unless {@code mapleir.cache.dir} is set, and is disabled with
+ * {@code -Dmapleir.cache=false}.
+ */
+public class AnalysisDiskCache {
+    public static final String ENABLED_PROPERTY = "mapleir.cache";
+    public static final String DIR_PROPERTY = "mapleir.cache.dir";
+
+    private static final int MAGIC = 0x4d495243; // MIRC
+    private static final short FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 4 + 8;
+    private static final String MAPLEIR_POM = "/META-INF/maven/org.mapleir/main/pom.properties";
+
+    private final Path dir;
+    private final boolean enabled;
+    private final byte[] versionSalt;
+
+    public AnalysisDiskCache(Path dir, boolean enabled) {
+        this(dir, enabled, mapleVersion());
+    }
+
+    /**
+     * @param irVersion the MapleIR version summaries are built with, the cache is disabled if it's null
+     */
+    public AnalysisDiskCache(Path dir, boolean enabled, String irVersion) {
+        this.dir = dir;
+        if (enabled && irVersion == null)
+            System.err.println("[MapleIR] Can't tell which MapleIR version is loaded, analysis cache disabled");
+        this.enabled = enabled && irVersion != null;
+        versionSalt = (irVersion + "/" + FORMAT_VERSION).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The version of the MapleIR artifact on the class path, read from its pom.properties since the jar manifest
+     * doesn't carry one (and the shaded plugin jar's manifest is the plugin's).
+     */
+    static String mapleVersion() {
+        try (InputStream in = ControlFlowGraphBuilder.class.getResourceAsStream(MAPLEIR_POM)) {
+            if (in == null)
+                return null;
+            Properties properties = new Properties();
+            properties.load(in);
+            return properties.getProperty("version");
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public static AnalysisDiskCache fromSystemProperties() {
+        String dir = System.getProperty(DIR_PROPERTY);
+        Path path = dir != null ? Paths.get(dir) : Paths.get(System.getProperty("user.home"), ".mapleir", "cache");
+        return new AnalysisDiskCache(path, Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true")));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String key(byte[] classBytes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(versionSalt);
+            byte[] hash = digest.digest(classBytes);
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every jre ships sha-256
+        }
+    }
+
+    /**
+     * @return the cached summary, or null on a miss or a corrupt entry
+     */
+    public ClassSummary read(String key) {
+        if (!enabled)
+            return null;
+        Path file = entry(key);
+        if (!Files.isRegularFile(file))
+            return null;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC || buf.getShort() != FORMAT_VERSION)
+                throw new IllegalArgumentException("bad header");
+            int length = buf.getInt();
+            long checksum = buf.getLong();
+            if (length != buf.remaining())
+                throw new IllegalArgumentException("bad length");
+            ByteBuffer payload = buf.slice();
+            if (crc(payload.duplicate()) != checksum)
+                throw new IllegalArgumentException("bad checksum");
+            return ClassSummary.deserialize(payload);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("[MapleIR] Dropping corrupt cache entry " + file + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+            }
+            return null;
+        }
+    }
+
+    public void write(String key, ClassSummary summary) {
+        if (!enabled)
+            return;
+        Path file = entry(key);
+        Path tmp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            byte[] payload = summary.serialize();
+            ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+            buf.putInt(MAGIC).putShort(FORMAT_VERSION).putInt(payload.length).putLong(crc(ByteBuffer.wrap(payload))).put(payload);
+            buf.flip();
+            tmp = Files.createTempFile(file.getParent(), key, ".tmp");
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (buf.hasRemaining())
+                    ch.write(buf);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+        } catch (IOException e) {
+            System.err.println("[MapleIR] Failed to write cache entry " + file + ": " + e.getMessage());
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private Path entry(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + ".bin");
+    }
+
+    private static long crc(ByteBuffer buf) {
+        CRC32 crc = new CRC32();
+        while (buf.hasRemaining())
+            crc.update(buf.get());
+        return crc.getValue();
+    }
+}
@@ -3,141 +3,692 @@ package org.mapleir.jdaplugin;
 import club.bytecode.the.jda.FileContainer;
 import club.bytecode.the.jda.JDA;
 import club.bytecode.the.jda.gui.fileviewer.ViewerFile;
-import club.bytecode.the.jda.util.BytecodeUtils;
-import org.mapleir.app.client.SimpleApplicationContext;
 import org.mapleir.app.service.ApplicationClassSource;
 import org.mapleir.asm.ClassHelper;
 import org.mapleir.asm.ClassNode;
 import org.mapleir.asm.MethodNode;
 import org.mapleir.context.AnalysisContext;
 import org.mapleir.context.BasicAnalysisContext;
-import org.mapleir.context.IRCache;
 import org.mapleir.deob.dataflow.LiveDataFlowAnalysisImpl;
-import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.cfg.ControlFlowGraph;
 import org.mapleir.stdlib.util.JavaDesc;
-import org.mapleir.stdlib.util.JavaDescSpecifier;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-import static club.bytecode.the.jda.util.GuiUtils.sleep;
-
 public class AnalysisManager {
-    public final Map<FileContainer, AnalysisContext> cxts = new HashMap<>();
+    public final Map<FileContainer, AnalysisContext> cxts = new ConcurrentHashMap<>();
+
+    private final Map<FileContainer, ContainerIndex> indexes = new ConcurrentHashMap<>();
+    private final Map<FileContainer, IRWarmer> warmers = new ConcurrentHashMap<>();
+    private final Map<FileContainer, AnalysisProgress> progress = new ConcurrentHashMap<>();
+    private final Map<FileContainer, CallGraph> callGraphs = new ConcurrentHashMap<>();
+    private final List<AnalysisProgress.Listener> progressListeners = new CopyOnWriteArrayList<>();
+
+    private final Map<FileContainer, AnalysisScheduler.Job<?>> analysisJobs = new ConcurrentHashMap<>();
+    private final AnalysisScheduler scheduler;
+    private final AnalysisDiskCache diskCache = AnalysisDiskCache.fromSystemProperties();
+    private final ForkJoinPool workers;
+    private final ExecutorService searchExecutor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "MapleIR-search");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile FileContainer foreground;
+
+    public static final String LAZY_PROPERTY = "mapleir.analysis.lazy";
+    public static final String RETAIN_PROPERTY = "mapleir.analysis.retain";
+    // how often a search over a container still being indexed reports what got indexed meanwhile
+    private static final long SEARCH_BATCH_MILLIS = 100;
+
+    // indexes of closed containers by path, so reopening a patched jar only reanalyses what changed
+    private final Map<String, ContainerIndex> retained = new LinkedHashMap<String, ContainerIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ContainerIndex> eldest) {
+            return size() > Integer.getInteger(RETAIN_PROPERTY, 4);
+        }
+    };
+
+    private final boolean lazy;
+    private final CallGraph.Mode callGraphMode = CallGraph.Mode.fromSystemProperties();
 
-    private final AtomicInteger queuedAnalysisItems = new AtomicInteger(0);
-    private final Map<FileContainer, Thread> analysisJobs = new HashMap<>();
+    public AnalysisManager() {
+        this(Workers.shared(), Boolean.getBoolean(LAZY_PROPERTY));
+    }
+
+    /**
+     * @param lazy publish the context as soon as classes are loaded and build the ir in background
+     */
+    public AnalysisManager(ForkJoinPool workers, boolean lazy) {
+        this(workers, lazy, JDA::setBusy);
+    }
+
+    /**
+     * @param busyListener told when analysis starts and stops, the GUI shows it as busy
+     */
+    public AnalysisManager(ForkJoinPool workers, boolean lazy, Consumer<Boolean> busyListener) {
+        this.workers = workers;
+        this.lazy = lazy;
+        this.scheduler = new AnalysisScheduler(busyListener);
+        registerGauges(AnalysisMetrics.shared());
+    }
+
+    private void registerGauges(AnalysisMetrics metrics) {
+        IRCacheBudget budget = IRCacheBudget.shared();
+        metrics.registerGauge("analysis.queued", scheduler::getQueueDepth);
+        metrics.registerGauge("analysis.inFlight", scheduler::getInFlight);
+        metrics.registerGauge("analysis.containers", cxts::size);
+        metrics.registerGauge("ircache.usedBytes", budget::getUsedBytes);
+        metrics.registerGauge("ircache.resident", budget::getResidentCount);
+        metrics.registerGauge("ircache.hits", budget::getHits);
+        metrics.registerGauge("ircache.misses", budget::getMisses);
+        metrics.registerGauge("ircache.evictions", budget::getEvictions);
+        metrics.registerGauge("ircache.rebuilds", budget::getRebuilds);
+        metrics.registerGauge("cfgcache.size", CfgCache.shared()::size);
+        metrics.registerGauge("fold.folded", DeobfuscateFilter.getFolder()::getFolded);
+        metrics.registerGauge("fold.deferred", DeobfuscateFilter.getFolder()::getDeferred);
+        metrics.registerGauge("fold.memoHits", DeobfuscateFilter.getFolder()::getMemoHits);
+        MethodBudget methodBudget = MethodBudget.shared();
+        metrics.registerGauge("budget.exceeded", methodBudget::getExceeded);
+        metrics.registerGauge("budget.rejected", methodBudget::getRejected);
+        metrics.registerGauge("budget.skipped", methodBudget::getSkippedCount);
+    }
+
+    public void addProgressListener(AnalysisProgress.Listener listener) {
+        progressListeners.add(listener);
+    }
+
+    public void removeProgressListener(AnalysisProgress.Listener listener) {
+        progressListeners.remove(listener);
+    }
+
+    /**
+     * @return progress of the given container's analysis, or null if it isn't open
+     */
+    public AnalysisProgress getProgress(FileContainer fc) {
+        return progress.get(fc);
+    }
+
+    /**
+     * @return progress of every open container, finished or not
+     */
+    public Collection<AnalysisProgress> getProgress() {
+        return progress.values();
+    }
 
     public void load(FileContainer fileContainer) {
-        Thread analysisThread = new Thread(() -> analyzeBinaryThread(fileContainer));
-        analysisJobs.put(fileContainer, analysisThread);
-        analysisThread.start();
-        System.out.println("[MapleIR] " + fileContainer + " analyzing in background");
+        synchronized (cxts) {
+            progress.put(fileContainer, new AnalysisProgress(fileContainer, progressListeners));
+            // the job only reads its own handle under the same lock, so it's always set by then
+            AtomicReference<AnalysisScheduler.Job<?>> self = new AtomicReference<>();
+            self.set(scheduler.submit(() -> {
+                AnalysisScheduler.Job<?> job;
+                synchronized (cxts) {
+                    job = self.get();
+                }
+                analyzeBinaryJob(fileContainer, job);
+                return null;
+            }, false));
+            analysisJobs.put(fileContainer, self.get());
+        }
+        setForeground(fileContainer);
+        System.out.println("[MapleIR] " + fileContainer + " queued for analysis");
+    }
+
+    /**
+     * Loads the container and waits for its analysis to finish, for use without the GUI.
+     *
+     * @return whether the analysis ran to completion, the index (and call graph if enabled) is then available
+     */
+    public boolean analyze(FileContainer fileContainer) throws InterruptedException {
+        load(fileContainer);
+        // the job unregisters itself when done, so it may already be gone
+        AnalysisScheduler.Job<?> job = analysisJobs.get(fileContainer);
+        if (job != null) {
+            try {
+                job.get();
+            } catch(CancellationException e) {
+                return false;
+            } catch(ExecutionException e) {
+                System.err.println("[MapleIR] Analysis of " + fileContainer + " failed:");
+                e.getCause().printStackTrace();
+                return false;
+            }
+        }
+        AnalysisProgress p = progress.get(fileContainer);
+        return p != null && p.getStage() == AnalysisProgress.Stage.DONE;
     }
 
-    private void analyzeBinaryThread(FileContainer fileContainer) {
-        queuedAnalysisItems.incrementAndGet();
-        JDA.setBusy(true);
-        AnalysisContext newCxt = analyzeBinary(fileContainer);
+    /**
+     * Moves the analysis of the given container ahead of the other queued ones, and the previous foreground
+     * container's back in line.
+     */
+    public void setForeground(FileContainer fileContainer) {
+        FileContainer previous = foreground;
+        if (previous == fileContainer)
+            return; // called for every class shown, nothing to do while the user stays in one container
+        foreground = fileContainer;
+        AnalysisScheduler.Job<?> job;
+        if (previous != null && previous != fileContainer && (job = analysisJobs.get(previous)) != null) {
+            scheduler.setForeground(job, false);
+        }
+        if ((job = analysisJobs.get(fileContainer)) != null) {
+            scheduler.setForeground(job, true);
+        }
+    }
+
+    private void analyzeBinaryJob(FileContainer fileContainer, AnalysisScheduler.Job<?> job) {
+        System.out.println("[MapleIR] " + fileContainer + " analyzing in background");
+        AnalysisProgress p = progress.get(fileContainer);
+        ContainerIndex index;
+        synchronized (retained) {
+            index = retained.remove(retainKey(fileContainer));
+        }
+        boolean completed = false;
         try {
-            cxts.put(fileContainer, newCxt);
+            completed = analyzeBinary(fileContainer, job, index != null ? index : new ContainerIndex(), p);
         } finally {
-            JDA.setBusy(false);
-            queuedAnalysisItems.decrementAndGet();
-            analysisJobs.remove(fileContainer);
+            // the container may have been closed and opened again meanwhile, leave the new job's entries alone
+            analysisJobs.remove(fileContainer, job);
+            if (p != null)
+                p.finish(!completed);
         }
     }
 
-    private AnalysisContext analyzeBinary(FileContainer fileContainer) {
-        Set<ClassNode> classes = new HashSet<>();
-        for (String file : fileContainer.getFiles().keySet()) {
-            if (!file.endsWith(".class"))
-                continue;
+    private boolean publish(FileContainer fileContainer, AnalysisScheduler.Job<?> job, AnalysisContext newCxt, ContainerIndex index) {
+        synchronized (cxts) {
+            // unload() may have raced us, in which case the job is no longer registered
+            if (analysisJobs.get(fileContainer) != job)
+                return false;
+            cxts.put(fileContainer, newCxt);
+            indexes.put(fileContainer, index);
+            return true;
+        }
+    }
+
+    /**
+     * @return whether the analysis ran to completion
+     */
+    private boolean analyzeBinary(FileContainer fileContainer, AnalysisScheduler.Job<?> job, ContainerIndex index, AnalysisProgress progress) {
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        if (progress == null)
+            progress = new AnalysisProgress(fileContainer, Collections.emptyList());
+        try {
+            return analyzeBinary(fileContainer, job, index, progress, cancelled);
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            System.out.println("[MapleIR] Analysis interrupted");
+            return false;
+        }
+    }
+
+    private boolean analyzeBinary(FileContainer fileContainer, AnalysisScheduler.Job<?> job, ContainerIndex index, AnalysisProgress progress,
+                                  AtomicBoolean cancelled) throws InterruptedException {
+        long startTime = System.nanoTime();
+        AnalysisMetrics metrics = AnalysisMetrics.shared();
+        Map<String, byte[]> files = fileContainer.getFiles();
+        List<String> classFiles = files.keySet().stream()
+                .filter(file -> file.endsWith(".class"))
+                .collect(Collectors.toList());
+        Set<ClassNode> classes = ConcurrentHashMap.newKeySet();
+        Map<ClassNode, String> cacheKeys = new ConcurrentHashMap<>();
+        boolean incremental = index.size() > 0;
+        AtomicInteger unchanged = new AtomicInteger();
+        AtomicInteger restored = new AtomicInteger();
+        ClassHierarchyIndex.Builder hierarchy = new ClassHierarchyIndex.Builder();
+        progress.parsing(classFiles.size());
+        Workers.invoke(workers, () -> classFiles.parallelStream().forEach(file -> {
+            if (cancelled.get())
+                return;
             try {
-                classes.add(ClassHelper.create(fileContainer.loadClassFile(file)));
+                long parseStart = System.nanoTime();
+                ClassNode cn = ClassHelper.create(fileContainer.loadClassFile(file));
+                metrics.record(AnalysisMetrics.Phase.CLASS_PARSE, System.nanoTime() - parseStart);
+                classes.add(cn);
+                hierarchy.add(cn.node);
+                byte[] bytes = files.get(file);
+                String key = bytes != null ? diskCache.key(bytes) : null;
+                if (incremental) {
+                    if (key != null && key.equals(index.getContentHash(cn.getName())) && index.contains(cn.getName())) {
+                        unchanged.incrementAndGet();
+                        progress.classParsed();
+                        return;
+                    }
+                    index.remove(cn.getName());
+                }
+                if (key != null) {
+                    index.setContentHash(cn.getName(), key);
+                }
+                if (key != null && diskCache.isEnabled()) {
+                    long readStart = System.nanoTime();
+                    ClassSummary summary = diskCache.read(key);
+                    metrics.record(AnalysisMetrics.Phase.CACHE_READ, System.nanoTime() - readStart);
+                    if (summary != null && summary.name.equals(cn.getName())) {
+                        index.add(summary);
+                        restored.incrementAndGet();
+                    } else {
+                        cacheKeys.put(cn, key);
+                    }
+                }
             } catch(Exception e) {
+                metrics.failed(AnalysisMetrics.Phase.CLASS_PARSE);
                 System.err.println("[MapleIR] Failed to load class " + file + ":");
                 e.printStackTrace();
             }
-            if (Thread.currentThread().isInterrupted()) {
-                System.out.println("[MapleIR] Analysis interrupted");
-                return null;
-            }
+            progress.classParsed();
+        }));
+        if (cancelled.get())
+            throw new InterruptedException();
+        if (incremental) {
+            Set<String> names = new HashSet<>();
+            for (ClassNode cn : classes)
+                names.add(cn.getName());
+            int removed = index.retainAll(names);
+            System.out.printf("[MapleIR] Reanalysing %s incrementally: %d classes unchanged, %d changed or added, %d removed\n",
+                    fileContainer.name, unchanged.get(), classes.size() - unchanged.get(), removed);
         }
-        System.out.printf("[MapleIR] Loaded %d classes\n", classes.size());
+        long hierarchyStart = System.nanoTime();
+        index.setHierarchy(Workers.invoke(workers, hierarchy::build));
+        long loadTime = System.nanoTime();
+        metrics.record(AnalysisMetrics.Phase.HIERARCHY, loadTime - hierarchyStart);
+        System.out.printf("[MapleIR] Loaded %d classes in %d ms (%d restored from cache), hierarchy: %s\n", classes.size(),
+                millis(startTime, loadTime), restored.get(), index.getHierarchy());
 
         ApplicationClassSource app = new ApplicationClassSource(fileContainer.name, classes);
 
-        IRCache irFactory = new IRCache(ControlFlowGraphBuilder::build);
+        ManagedIRCache irFactory = new ManagedIRCache();
         AnalysisContext newCxt = new BasicAnalysisContext.BasicContextBuilder()
                 .setApplication(app)
                 // .setInvocationResolver(new DefaultInvocationResolver(app))
                 .setCache(irFactory)
-                .setApplicationContext(new SimpleApplicationContext(app))
+                // entry points come from the hierarchy index, which search and the call graph share
+                .setApplicationContext(new IndexedApplicationContext(index.getHierarchy(), classes))
                 .setDataFlowAnalysis(new LiveDataFlowAnalysisImpl(irFactory))
                 .build();
 
+        // classes restored from the disk cache or unchanged since the container was last open don't need their ir
+        // up front, getFor builds it on demand
+        List<ClassNode> pending = new ArrayList<>();
         for (ClassNode cn : newCxt.getApplication().iterate()) {
-            for (MethodNode m : cn.getMethods()) {
-                try {
-                    newCxt.getIRCache().getFor(new MethodNode(BytecodeUtils.applyJsrInlineAdapter(m.node), m.owner));
-                } catch(Exception e) {
-                    System.err.println("[MapleIR] Failed to build IR for " + m.getJavaDesc() + ":");
-                    e.printStackTrace();
-                }
-                if (Thread.currentThread().isInterrupted()) {
-                    System.out.println("[MapleIR] Analysis interrupted");
-                    return null;
-                }
+            if (!index.contains(cn.getName()))
+                pending.add(cn);
+        }
+        IRWarmer warmer = new IRWarmer(pending, irFactory, index, diskCache, cacheKeys, cancelled);
+        synchronized (cxts) {
+            if (analysisJobs.get(fileContainer) != job)
+                return false;
+            warmers.put(fileContainer, warmer);
+        }
+        try {
+            warmer.setProgress(progress);
+            progress.building(warmer.remainingMethods());
+
+            if (lazy) {
+                if (!publish(fileContainer, job, newCxt, index))
+                    return false;
+                System.out.printf("[MapleIR] Published %s, warming %d classes in background\n", fileContainer.name, pending.size());
+                warmer.warm(workers, Math.max(1, workers.getParallelism() / 2));
+            } else {
+                warmer.forceAll(workers);
+            }
+            if (cancelled.get())
+                throw new InterruptedException();
+            if (callGraphMode != CallGraph.Mode.NONE) {
+                buildCallGraph(fileContainer, job, index.getHierarchy());
             }
+            long endTime = System.nanoTime();
+            System.out.printf("[MapleIR] Computed %d cfgs in %d ms using %d workers\n",
+                    newCxt.getIRCache().size(), millis(loadTime, endTime), workers.getParallelism());
+            System.out.printf("[MapleIR] Analysis of %s took %d ms\n", fileContainer.name, millis(startTime, endTime));
+            System.out.println("[MapleIR] IR cache: " + IRCacheBudget.shared());
+            for (AnalysisMetrics.Outlier slow : irFactory.getSlowest()) {
+                System.out.println("[MapleIR] Slow method: " + slow);
+            }
+            metrics.dumpIfRequested();
+            return lazy || publish(fileContainer, job, newCxt, index);
+        } finally {
+            warmers.remove(fileContainer, warmer);
+        }
+    }
+
+    private void buildCallGraph(FileContainer fileContainer, AnalysisScheduler.Job<?> job, ClassHierarchyIndex hierarchy) throws InterruptedException {
+        long start = System.nanoTime();
+        CallGraph callGraph = CallGraph.build(hierarchy, callGraphMode, workers);
+        long elapsed = System.nanoTime() - start;
+        AnalysisMetrics.shared().record(AnalysisMetrics.Phase.CALL_GRAPH, elapsed);
+        synchronized (cxts) {
+            if (analysisJobs.get(fileContainer) == job)
+                callGraphs.put(fileContainer, callGraph);
         }
-        System.out.printf("[MapleIR] Computed %d cfgs\n", newCxt.getIRCache().size());
-        return newCxt;
+        System.out.printf("[MapleIR] Built %s of %s in %d ms\n", callGraph, fileContainer.name, TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    private static long millis(long from, long to) {
+        return TimeUnit.NANOSECONDS.toMillis(to - from);
     }
 
     public void unload(FileContainer fc) {
-        stopAnalysis(fc);
-        cxts.remove(fc);
+        AnalysisContext cxt;
+        synchronized (cxts) {
+            stopAnalysis(fc);
+            cxt = cxts.remove(fc);
+            ContainerIndex index = indexes.remove(fc);
+            callGraphs.remove(fc);
+            AnalysisProgress p = progress.remove(fc);
+            if (index != null && p != null && p.getStage() == AnalysisProgress.Stage.DONE) {
+                index.setHierarchy(null); // holds on to the parsed classes, and is rebuilt on reopening anyway
+                synchronized (retained) {
+                    retained.put(retainKey(fc), index);
+                }
+            }
+        }
+        if (cxt != null && cxt.getIRCache() instanceof ManagedIRCache) {
+            ((ManagedIRCache) cxt.getIRCache()).release();
+        }
+        if (foreground == fc) {
+            foreground = null;
+        }
     }
 
-    private void stopAnalysis(FileContainer fc) {
-        if (analysisJobs.get(fc) == null) return;
-        analysisJobs.get(fc).interrupt();
-        for (int i = 0; i < 100 && analysisJobs.get(fc) != null; i++) {
-            sleep(10L);
+    private static String retainKey(FileContainer fc) {
+        return fc.file != null ? fc.file.getAbsolutePath() : fc.name;
+    }
+
+    /**
+     * Forgets the indexes kept for closed containers, so reopening them starts from scratch.
+     */
+    public void clearRetained() {
+        synchronized (retained) {
+            retained.clear();
         }
-        if (analysisJobs.get(fc) != null) { // apply violence
-            analysisJobs.get(fc).stop();
+    }
+
+    private void stopAnalysis(FileContainer fc) {
+        AnalysisScheduler.Job<?> job = analysisJobs.remove(fc);
+        if (job != null) {
+            scheduler.cancel(job);
         }
     }
 
     public boolean isAnalysisComplete() {
-        return queuedAnalysisItems.get() == 0;
+        return scheduler.isIdle();
     }
 
-    public List<ViewerFile> searchConstant(String needle) {
-        List<ViewerFile> matches = new ArrayList<>();
-        for (FileContainer fc : JDA.getOpenFiles()) {
-            AnalysisContext cxt = cxts.get(fc);
-            if (cxt == null) continue; // incomplete analysis
-            matches.addAll(cxt.getDataflowAnalysis().enumerateConstants()
-                    .filter(constantExpr -> String.valueOf(constantExpr.getConstant()).contains(needle))
-                    .map(constantExpr -> new ViewerFile(fc, constantExpr.getRootParent().getBlock().getGraph().getOwner() + ".class"))
-                    .collect(Collectors.toList()));
+    /**
+     * @return number of containers waiting to be analysed
+     */
+    public int getQueuedAnalysisCount() {
+        return scheduler.getQueueDepth();
+    }
+
+    /**
+     * @return number of containers currently being analysed
+     */
+    public int getInFlightAnalysisCount() {
+        return scheduler.getInFlight();
+    }
+
+    public ContainerIndex getIndex(FileContainer fc) {
+        return indexes.get(fc);
+    }
+
+    /**
+     * @return the call graph of the container, or null if it's not built (yet), see {@link CallGraph#MODE_PROPERTY}
+     */
+    public CallGraph getCallGraph(FileContainer fc) {
+        return callGraphs.get(fc);
+    }
+
+    public CallGraph.Mode getCallGraphMode() {
+        return callGraphMode;
+    }
+
+    /**
+     * Hints that the user is looking at the given class, so background warming should get to it first.
+     */
+    public void touch(String className) {
+        for (IRWarmer warmer : warmers.values()) {
+            warmer.touch(className);
         }
+    }
+
+    /**
+     * Same, for a class of the given container, which also becomes the foreground one.
+     */
+    public void touch(FileContainer fileContainer, String className) {
+        if (fileContainer == null) {
+            touch(className);
+            return;
+        }
+        setForeground(fileContainer);
+        IRWarmer warmer = warmers.get(fileContainer);
+        if (warmer != null)
+            warmer.touch(className);
+    }
+
+    /**
+     * Lifts the budget for a skipped method and, in the background, rebuilds the summary of its class so search
+     * covers the method from then on.
+     */
+    public void retry(String budgetKey) {
+        MethodBudget.shared().retry(budgetKey);
+        String owner = MethodBudget.owner(budgetKey);
+        searchExecutor.execute(() -> reindex(owner));
+    }
+
+    /**
+     * Rebuilds the summary of an already indexed class in every container that has it. Classes the warmer hasn't
+     * got to yet are left to it.
+     */
+    public void reindex(String className) {
+        for (Map.Entry<FileContainer, AnalysisContext> e : cxts.entrySet()) {
+            AnalysisContext cxt = e.getValue();
+            ContainerIndex index = indexes.get(e.getKey());
+            ClassNode cn = cxt.getApplication().findClassNode(className);
+            if (index == null || cn == null || !index.contains(className))
+                continue;
+            List<MethodNode> methods = cn.getMethods();
+            List<ControlFlowGraph> cfgs = new ArrayList<>(methods.size());
+            boolean incomplete = false;
+            for (MethodNode m : methods) {
+                try {
+                    cfgs.add(cxt.getIRCache().getFor(m));
+                } catch(Exception ex) {
+                    cfgs.add(null);
+                    incomplete = true;
+                    if (!(ex instanceof MethodBudget.OverBudgetException)) {
+                        System.err.println("[MapleIR] Failed to build IR for " + m.getJavaDesc() + ":");
+                        ex.printStackTrace();
+                    }
+                }
+            }
+            ClassSummary summary = ClassSummary.create(className, methods, cfgs);
+            index.add(summary);
+            String key = index.getContentHash(className);
+            if (key != null && !incomplete) {
+                diskCache.write(key, summary);
+            }
+            System.out.println("[MapleIR] Reindexed " + className + " in " + e.getKey().name);
+        }
+    }
+
+    /**
+     * Runs a search over every open container on a background thread. Each matching class is reported to
+     * {@code sink} once, with its hit count and the methods the hits are in, as soon as its container has been
+     * searched. Stops after {@code limit} classes if positive, or when the returned task is cancelled.
+     */
+    public SearchTask search(SearchQuery query, int limit, Consumer<SearchHit> sink) {
+        SearchTask task = new SearchTask();
+        List<FileContainer> files = new ArrayList<>(JDA.getOpenFiles());
+        searchExecutor.execute(() -> {
+            try {
+                runSearch(files, query, limit, sink, task);
+                task.completion().complete(null);
+            } catch(Throwable t) {
+                task.completion().completeExceptionally(t);
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Classes already indexed are searched straight away. Whatever the background warmer hasn't got to yet is
+     * built with the whole pool meanwhile, and searched in batches as it's indexed.
+     */
+    private void runSearch(List<FileContainer> files, SearchQuery query, int limit, Consumer<SearchHit> sink, SearchTask task) {
+        for (FileContainer fc : files) {
+            if (task.isCancelled())
+                return;
+            ContainerIndex index = indexes.get(fc);
+            if (index == null) {
+                task.partial(fc); // incomplete analysis
+                continue;
+            }
+            IRWarmer warmer = warmers.get(fc);
+            Set<String> pending = warmer != null ? warmer.pending() : Collections.emptySet();
+            Set<String> emitted = new HashSet<>();
+            if (pending.isEmpty()) {
+                if (!emit(fc, index, query, pending, emitted, limit, sink, task))
+                    return;
+                continue;
+            }
+            AtomicBoolean stop = new AtomicBoolean();
+            Future<?> indexing = searchExecutor.submit(() -> {
+                warmer.forceAll(workers, () -> stop.get() || task.isCancelled());
+                return null;
+            });
+            try {
+                boolean finished = false;
+                while (true) {
+                    if (!emit(fc, index, query, pending, emitted, limit, sink, task))
+                        return;
+                    if (pending.isEmpty() || finished)
+                        break;
+                    finished = await(indexing, SEARCH_BATCH_MILLIS);
+                    pending = warmer.pending();
+                }
+            } finally {
+                stop.set(true);
+            }
+            if (!pending.isEmpty())
+                task.partial(fc);
+        }
+    }
+
+    /**
+     * Reports the matches in classes that are neither pending nor reported already. A class that wasn't pending
+     * before the query ran was fully indexed by then.
+     *
+     * @return whether the search should go on
+     */
+    private static boolean emit(FileContainer fc, ContainerIndex index, SearchQuery query, Set<String> pending,
+                                Set<String> emitted, int limit, Consumer<SearchHit> sink, SearchTask task) {
+        // class -> hit count, methods hit
+        Map<String, int[]> counts = new TreeMap<>();
+        Map<String, BitSet> methods = new HashMap<>();
+        query.run(index, (className, method) -> {
+            if (pending.contains(className) || emitted.contains(className))
+                return;
+            counts.computeIfAbsent(className, k -> new int[1])[0]++;
+            methods.computeIfAbsent(className, k -> new BitSet()).set(method);
+        });
+        for (Map.Entry<String, int[]> e : counts.entrySet()) {
+            if (task.isCancelled())
+                return false;
+            emitted.add(e.getKey());
+            sink.accept(new SearchHit(fc, e.getKey(), e.getValue()[0], locations(index.get(e.getKey()), methods.get(e.getKey()))));
+            if (task.emit() == limit)
+                return false;
+        }
+        return !task.isCancelled();
+    }
+
+    /**
+     * @return whether the task is done, after waiting at most the given time for it
+     */
+    private static boolean await(Future<?> future, long millis) {
+        try {
+            future.get(millis, TimeUnit.MILLISECONDS);
+        } catch(TimeoutException e) {
+            return false;
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(ExecutionException | CancellationException e) {
+            // the warmer reports its own failures, searching what got indexed is all that's left to do
+        }
+        return true;
+    }
+
+    private static List<String> locations(ClassSummary summary, BitSet methods) {
+        List<String> locations = new ArrayList<>(methods.cardinality());
+        for (int m = methods.nextSetBit(0); m >= 0; m = methods.nextSetBit(m + 1)) {
+            locations.add(summary == null || m >= summary.methodNames.length ? "?" : summary.methodNames[m] + summary.methodDescs[m]);
+        }
+        return locations;
+    }
+
+    /**
+     * Runs a search to completion on the calling thread, one entry per matching class.
+     */
+    public List<ViewerFile> searchNow(SearchQuery query) {
+        List<ViewerFile> matches = new ArrayList<>();
+        runSearch(new ArrayList<>(JDA.getOpenFiles()), query, 0, hit -> matches.add(hit.toViewerFile()), new SearchTask());
         return matches;
     }
 
+    public List<ViewerFile> searchConstant(String needle) {
+        return searchConstant(needle, ConstantIndex.Match.SUBSTRING);
+    }
+
+    public List<ViewerFile> searchConstant(String needle, ConstantIndex.Match match) {
+        return searchNow(SearchQuery.constant(needle, match));
+    }
+
+    /**
+     * Finds numeric constants within {@code [from, to]}.
+     */
+    public List<ViewerFile> searchConstantRange(double from, double to) {
+        return searchNow(SearchQuery.constantRange(from, to));
+    }
+
     public List<ViewerFile> search(String methodName, JavaDesc.DescType descType) { // ugh... we want tokenization from JDA's part
-        List<ViewerFile> matches = new ArrayList<>();
-        for (FileContainer fc : JDA.getOpenFiles()) {
-            AnalysisContext cxt = cxts.get(fc);
-            if (cxt == null) continue; // incomplete analysis
-            matches.addAll(cxt.getDataflowAnalysis().findAllRefs(new JavaDescSpecifier(".*", methodName, ".*", descType))
-                    .map(javaDescUse -> new ViewerFile(fc, javaDescUse.flowElement.getDataUseLocation().owner + ".class"))
-                    .collect(Collectors.toList()));
+        return searchNow(memberQuery(methodName, descType));
+    }
+
+    /**
+     * Finds uses of a method or field, including those through subtypes of the owner that inherit it. Null
+     * components match anything.
+     */
+    public List<ViewerFile> search(String owner, String name, String desc, JavaDesc.DescType descType) {
+        return searchNow(SearchQuery.memberInHierarchy(descType, owner, name, desc));
+    }
+
+    /**
+     * Query for uses of members by name, which may be a regex.
+     */
+    public static SearchQuery memberQuery(String name, JavaDesc.DescType descType) {
+        return isLiteral(name) ? SearchQuery.member(descType, null, name, null) : SearchQuery.memberPattern(descType, name);
+    }
+
+    private static boolean isLiteral(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if ("\\.[]{}()<>*+-=!?^$|".indexOf(s.charAt(i)) >= 0)
+                return false;
         }
-        return matches;
+        return true;
     }
 }
@@ -0,0 +1,305 @@
+package org.mapleir.jdaplugin;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Timings and failure counts of the analysis phases, plus the slowest methods seen, so pathological methods
+ * can be found. Each phase keeps a count, total, max and a log2 histogram of durations in microseconds.
+ * Other components publish their own counters as gauges. Available over JMX and as JSON, which is also
+ * written to {@code mapleir.metrics.dump} (if set) after each analysis.
+ */
+public class AnalysisMetrics implements AnalysisMetricsMXBean {
+    public enum Phase {
+        CLASS_PARSE, CACHE_READ, JSR_INLINE, CFG_BUILD, INDEX, CACHE_WRITE, DEOBFUSCATE, HIERARCHY, CALL_GRAPH
+    }
+
+    public static final String DUMP_PROPERTY = "mapleir.metrics.dump";
+    public static final String SLOWEST_PROPERTY = "mapleir.metrics.slowest";
+
+    private static final int BUCKETS = 40;
+    private static final AnalysisMetrics SHARED = new AnalysisMetrics(Integer.getInteger(SLOWEST_PROPERTY, 20));
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(SHARED, new ObjectName("org.mapleir.jdaplugin:type=AnalysisMetrics"));
+        } catch(Exception e) {
+            System.err.println("[MapleIR] Couldn't register metrics MBean: " + e);
+        }
+    }
+
+    // per phase: count, total nanos, max nanos, then the histogram
+    private final AtomicLongArray phases = new AtomicLongArray(Phase.values().length * (3 + BUCKETS));
+    private final AtomicLongArray failures = new AtomicLongArray(Phase.values().length);
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Outliers slowest;
+
+    public AnalysisMetrics(int slowestCount) {
+        this.slowest = new Outliers(slowestCount);
+    }
+
+    public static AnalysisMetrics shared() {
+        return SHARED;
+    }
+
+    public void record(Phase phase, long nanos) {
+        int base = phase.ordinal() * (3 + BUCKETS);
+        phases.incrementAndGet(base);
+        phases.addAndGet(base + 1, nanos);
+        long max;
+        while (nanos > (max = phases.get(base + 2)) && !phases.compareAndSet(base + 2, max, nanos)) {
+        }
+        long micros = nanos / 1000;
+        int bucket = micros <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        phases.incrementAndGet(base + 3 + bucket);
+    }
+
+    /**
+     * Records a per-method timing and keeps it if it's one of the slowest.
+     */
+    public void record(Phase phase, long nanos, String method) {
+        record(phase, nanos);
+        slowest.offer(phase, nanos, method);
+    }
+
+    public void failed(Phase phase) {
+        failures.incrementAndGet(phase.ordinal());
+    }
+
+    public void registerGauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public long getCount(Phase phase) {
+        return phases.get(phase.ordinal() * (3 + BUCKETS));
+    }
+
+    public long getTotalNanos(Phase phase) {
+        return phases.get(phase.ordinal() * (3 + BUCKETS) + 1);
+    }
+
+    public long getMaxNanos(Phase phase) {
+        return phases.get(phase.ordinal() * (3 + BUCKETS) + 2);
+    }
+
+    public long getFailures(Phase phase) {
+        return failures.get(phase.ordinal());
+    }
+
+    /**
+     * @return upper bound of the histogram bucket the given percentile falls in
+     */
+    public long getPercentileMicros(Phase phase, double percentile) {
+        int base = phase.ordinal() * (3 + BUCKETS);
+        long count = phases.get(base);
+        if (count == 0)
+            return 0;
+        long rank = (long) Math.ceil(count * percentile / 100), seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += phases.get(base + 3 + b);
+            if (seen >= rank)
+                return b == 0 ? 1 : 1L << b;
+        }
+        return TimeUnit.NANOSECONDS.toMicros(getMaxNanos(phase));
+    }
+
+    /**
+     * @return the slowest methods since the last reset, of every container, slowest first
+     */
+    public List<Outlier> getSlowest() {
+        return slowest.get();
+    }
+
+    @Override
+    public Map<String, Long> getPhaseCounts() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (Phase p : Phase.values())
+            map.put(p.name(), getCount(p));
+        return map;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseTotalMillis() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (Phase p : Phase.values())
+            map.put(p.name(), TimeUnit.NANOSECONDS.toMillis(getTotalNanos(p)));
+        return map;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseP99Micros() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (Phase p : Phase.values())
+            map.put(p.name(), getPercentileMicros(p, 99));
+        return map;
+    }
+
+    @Override
+    public Map<String, Long> getFailures() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (Phase p : Phase.values())
+            map.put(p.name(), getFailures(p));
+        return map;
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> map = new TreeMap<>();
+        for (Map.Entry<String, LongSupplier> e : gauges.entrySet())
+            map.put(e.getKey(), e.getValue().getAsLong());
+        return map;
+    }
+
+    @Override
+    public String[] getSlowestMethods() {
+        return getSlowest().stream().map(Outlier::toString).toArray(String[]::new);
+    }
+
+    @Override
+    public synchronized void reset() {
+        for (int i = 0; i < phases.length(); i++)
+            phases.set(i, 0);
+        for (int i = 0; i < failures.length(); i++)
+            failures.set(i, 0);
+        slowest.clear();
+    }
+
+    @Override
+    public String getJson() {
+        StringBuilder sb = new StringBuilder("{\n  \"phases\": {");
+        Phase[] values = Phase.values();
+        for (int i = 0; i < values.length; i++) {
+            Phase p = values[i];
+            sb.append(i == 0 ? "\n" : ",\n").append("    \"").append(p.name()).append("\": {")
+                    .append("\"count\": ").append(getCount(p))
+                    .append(", \"totalMillis\": ").append(TimeUnit.NANOSECONDS.toMillis(getTotalNanos(p)))
+                    .append(", \"maxMicros\": ").append(TimeUnit.NANOSECONDS.toMicros(getMaxNanos(p)))
+                    .append(", \"p50Micros\": ").append(getPercentileMicros(p, 50))
+                    .append(", \"p99Micros\": ").append(getPercentileMicros(p, 99))
+                    .append(", \"failures\": ").append(getFailures(p)).append('}');
+        }
+        sb.append("\n  },\n  \"gauges\": {");
+        boolean first = true;
+        for (Map.Entry<String, Long> e : getGauges().entrySet()) {
+            sb.append(first ? "\n" : ",\n").append("    ").append(quote(e.getKey())).append(": ").append(e.getValue());
+            first = false;
+        }
+        sb.append("\n  },\n  \"slowest\": [");
+        first = true;
+        for (Outlier o : getSlowest()) {
+            sb.append(first ? "\n" : ",\n").append("    {\"phase\": \"").append(o.phase.name())
+                    .append("\", \"method\": ").append(quote(o.method))
+                    .append(", \"micros\": ").append(TimeUnit.NANOSECONDS.toMicros(o.nanos)).append('}');
+            first = false;
+        }
+        return sb.append("\n  ]\n}\n").toString();
+    }
+
+    public void dump(Path file) throws IOException {
+        Files.write(file, getJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the JSON dump to {@code mapleir.metrics.dump}, if set.
+     */
+    public void dumpIfRequested() {
+        String path = System.getProperty(DUMP_PROPERTY);
+        if (path == null)
+            return;
+        try {
+            dump(Paths.get(path));
+        } catch(IOException e) {
+            System.err.println("[MapleIR] Failed to write metrics to " + path + ": " + e);
+        }
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Keeps the slowest of the timings offered to it, at most {@code capacity} of them.
+     */
+    public static final class Outliers {
+        private final int capacity;
+        private final PriorityQueue<Outlier> slowest = new PriorityQueue<>();
+        private volatile long threshold;
+
+        public Outliers(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public void offer(Phase phase, long nanos, String method) {
+            if (capacity <= 0 || nanos <= threshold)
+                return;
+            synchronized (slowest) {
+                slowest.add(new Outlier(phase, method, nanos));
+                if (slowest.size() > capacity)
+                    slowest.poll();
+                if (slowest.size() == capacity)
+                    threshold = slowest.peek().nanos;
+            }
+        }
+
+        /**
+         * @return the outliers, slowest first
+         */
+        public List<Outlier> get() {
+            List<Outlier> list;
+            synchronized (slowest) {
+                list = new ArrayList<>(slowest);
+            }
+            list.sort(Collections.reverseOrder());
+            return list;
+        }
+
+        public void clear() {
+            synchronized (slowest) {
+                slowest.clear();
+                threshold = 0;
+            }
+        }
+    }
+
+    public static final class Outlier implements Comparable<Outlier> {
+        public final Phase phase;
+        public final String method;
+        public final long nanos;
+
+        Outlier(Phase phase, String method, long nanos) {
+            this.phase = phase;
+            this.method = method;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public int compareTo(Outlier o) {
+            return Long.compare(nanos, o.nanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %d ms (%s)", method, TimeUnit.NANOSECONDS.toMillis(nanos), phase);
+        }
+    }
+}
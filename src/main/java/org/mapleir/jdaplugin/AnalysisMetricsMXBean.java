@@ -0,0 +1,24 @@
+package org.mapleir.jdaplugin;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link AnalysisMetrics}, registered as {@code org.mapleir.jdaplugin:type=AnalysisMetrics}.
+ */
+public interface AnalysisMetricsMXBean {
+    Map<String, Long> getPhaseCounts();
+
+    Map<String, Long> getPhaseTotalMillis();
+
+    Map<String, Long> getPhaseP99Micros();
+
+    Map<String, Long> getFailures();
+
+    Map<String, Long> getGauges();
+
+    String[] getSlowestMethods();
+
+    String getJson();
+
+    void reset();
+}
@@ -0,0 +1,180 @@
+package org.mapleir.jdaplugin;
+
+import club.bytecode.the.jda.FileContainer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How far the analysis of one container has got. Listeners are told about stage changes straight away and
+ * about counter updates at most every {@link #NOTIFY_INTERVAL_MS} ms, from whichever thread made progress.
+ */
+public class AnalysisProgress {
+    public interface Listener {
+        void progressChanged(AnalysisProgress progress);
+    }
+
+    public enum Stage {
+        QUEUED, PARSING, BUILDING, DONE, CANCELLED
+    }
+
+    public static final long NOTIFY_INTERVAL_MS = 100;
+
+    private final FileContainer container;
+    private final List<Listener> listeners;
+
+    private volatile Stage stage = Stage.QUEUED;
+    private volatile long stageStart = System.nanoTime();
+    private final AtomicLong lastNotify = new AtomicLong();
+
+    private final AtomicInteger totalClasses = new AtomicInteger();
+    private final AtomicInteger parsedClasses = new AtomicInteger();
+    private final AtomicLong totalMethods = new AtomicLong();
+    private final AtomicLong builtMethods = new AtomicLong();
+
+    AnalysisProgress(FileContainer container, List<Listener> listeners) {
+        this.container = container;
+        this.listeners = listeners;
+    }
+
+    void parsing(int classes) {
+        totalClasses.set(classes);
+        setStage(Stage.PARSING);
+    }
+
+    void classParsed() {
+        parsedClasses.incrementAndGet();
+        changed();
+    }
+
+    void building(long methods) {
+        totalMethods.set(methods);
+        setStage(Stage.BUILDING);
+    }
+
+    void methodsBuilt(int methods) {
+        builtMethods.addAndGet(methods);
+        changed();
+    }
+
+    void finish(boolean cancelled) {
+        setStage(cancelled ? Stage.CANCELLED : Stage.DONE);
+    }
+
+    private void setStage(Stage stage) {
+        this.stage = stage;
+        stageStart = System.nanoTime();
+        notifyListeners();
+    }
+
+    private void changed() {
+        long now = System.nanoTime();
+        long last = lastNotify.get();
+        if (now - last >= TimeUnit.MILLISECONDS.toNanos(NOTIFY_INTERVAL_MS) && lastNotify.compareAndSet(last, now)) {
+            notifyListeners();
+        }
+    }
+
+    private void notifyListeners() {
+        lastNotify.set(System.nanoTime());
+        for (Listener l : listeners) {
+            try {
+                l.progressChanged(this);
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public FileContainer getContainer() {
+        return container;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    public boolean isFinished() {
+        return stage == Stage.DONE || stage == Stage.CANCELLED;
+    }
+
+    public int getTotalClasses() {
+        return totalClasses.get();
+    }
+
+    public int getParsedClasses() {
+        return parsedClasses.get();
+    }
+
+    public long getTotalMethods() {
+        return totalMethods.get();
+    }
+
+    public long getBuiltMethods() {
+        return builtMethods.get();
+    }
+
+    /**
+     * @return rough overall completion in {@code [0, 1]}, parsing counts for a fifth
+     */
+    public double getFraction() {
+        switch (stage) {
+            case QUEUED:
+                return 0;
+            case PARSING:
+                return 0.2 * ratio(parsedClasses.get(), totalClasses.get());
+            case BUILDING:
+                return 0.2 + 0.8 * ratio(builtMethods.get(), totalMethods.get());
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * @return estimated time until the current stage finishes, from its throughput so far, or -1 if unknown
+     */
+    public long getEtaMillis() {
+        long done, total;
+        switch (stage) {
+            case PARSING:
+                done = parsedClasses.get();
+                total = totalClasses.get();
+                break;
+            case BUILDING:
+                done = builtMethods.get();
+                total = totalMethods.get();
+                break;
+            default:
+                return stage == Stage.QUEUED ? -1 : 0;
+        }
+        long elapsed = System.nanoTime() - stageStart;
+        if (done == 0 || elapsed < TimeUnit.MILLISECONDS.toNanos(500))
+            return -1;
+        return TimeUnit.NANOSECONDS.toMillis((long) ((double) elapsed / done * Math.max(0, total - done)));
+    }
+
+    private static double ratio(long done, long total) {
+        return total <= 0 ? 0 : Math.min(1, (double) done / total);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(container.name).append(": ");
+        switch (stage) {
+            case PARSING:
+                sb.append("parsing ").append(getParsedClasses()).append('/').append(getTotalClasses()).append(" classes");
+                break;
+            case BUILDING:
+                sb.append("building ").append(getBuiltMethods()).append('/').append(getTotalMethods()).append(" methods");
+                break;
+            default:
+                sb.append(stage.name().toLowerCase());
+        }
+        long eta = getEtaMillis();
+        if (eta > 0)
+            sb.append(", ").append(TimeUnit.MILLISECONDS.toSeconds(eta) + 1).append("s left");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,117 @@
+package org.mapleir.jdaplugin;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Bounded scheduler for per-container analysis jobs. At most {@code mapleir.analysis.jobs} containers are
+ * analysed at once, queued jobs run foreground-first then in submission order. Cancellation is cooperative,
+ * running jobs are interrupted and expected to bail out on their own.
+ */
+public class AnalysisScheduler {
+    public static final String JOBS_PROPERTY = "mapleir.analysis.jobs";
+
+    private static final int FOREGROUND = 0;
+    private static final int BACKGROUND = 1;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public AnalysisScheduler(Consumer<Boolean> busyListener) {
+        this(Math.max(1, Integer.getInteger(JOBS_PROPERTY, 2)), busyListener);
+    }
+
+    public AnalysisScheduler(int maxConcurrentJobs, Consumer<Boolean> busyListener) {
+        AtomicInteger threadId = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "MapleIR-analysis-" + threadId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }) {
+            @Override
+            protected void beforeExecute(Thread t, Runnable r) {
+                if (inFlight.getAndIncrement() == 0)
+                    busyListener.accept(true);
+            }
+
+            @Override
+            protected void afterExecute(Runnable r, Throwable t) {
+                if (inFlight.decrementAndGet() == 0 && getQueue().isEmpty())
+                    busyListener.accept(false);
+            }
+        };
+        executor.prestartAllCoreThreads();
+    }
+
+    public <T> Job<T> submit(Callable<T> task, boolean foreground) {
+        Job<T> job = new Job<>(task, foreground ? FOREGROUND : BACKGROUND, sequence.getAndIncrement());
+        executor.execute(job);
+        return job;
+    }
+
+    public void setForeground(Job<?> job, boolean foreground) {
+        int priority = foreground ? FOREGROUND : BACKGROUND;
+        if (job.priority == priority)
+            return;
+        // the queue only orders on insertion, so requeue
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        if (queue.remove(job)) {
+            job.priority = priority;
+            queue.add(job);
+        } else {
+            job.priority = priority;
+        }
+    }
+
+    public void cancel(Job<?> job) {
+        job.cancel(true);
+        executor.remove(job);
+    }
+
+    /**
+     * @return number of jobs waiting for a free slot
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return number of jobs currently running
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public boolean isIdle() {
+        return getQueueDepth() == 0 && getInFlight() == 0;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public static class Job<T> extends FutureTask<T> implements Comparable<Job<?>> {
+        private final long sequence;
+        private volatile int priority;
+
+        private Job(Callable<T> task, int priority, long sequence) {
+            super(task);
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        public boolean isForeground() {
+            return priority == FOREGROUND;
+        }
+
+        @Override
+        public int compareTo(Job<?> o) {
+            if (priority != o.priority)
+                return Integer.compare(priority, o.priority);
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.mapleir.jdaplugin;
+
+import org.mapleir.flowgraph.edges.FlowEdge;
+import org.mapleir.flowgraph.edges.ImmediateEdge;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+
+import java.util.*;
+
+/**
+ * The order the printers lay blocks out in: reverse postorder from the entry, with immediate (fallthrough)
+ * edges visited last so a block's fallthrough successor directly follows it. Same order as running an
+ * {@code ExtendedDfs} with immediate edges ordered last, but computed with an explicit stack over
+ * index arrays, indexed by the blocks' numeric ids, instead of recursion and per-block edge streams.
+ *
+ * Unreachable blocks aren't part of the layout.
+ */
+public class BlockLayout {
+    private final BasicBlock[] order;
+
+    public BlockLayout(ControlFlowGraph cfg) {
+        int n = cfg.vertices().size();
+        BasicBlock[] blocks = new BasicBlock[n];
+        // numeric ids are handed out by the graph and stay small, but blocks get removed, so map them down to 0..n-1
+        int maxId = -1;
+        for (BasicBlock b : cfg.vertices()) {
+            maxId = Math.max(maxId, b.getNumericId());
+        }
+        int[] ids = new int[maxId + 1];
+        Arrays.fill(ids, -1);
+        int edgeCount = 0;
+        int next = 0;
+        for (BasicBlock b : cfg.vertices()) {
+            ids[b.getNumericId()] = next;
+            blocks[next++] = b;
+            edgeCount += cfg.getEdges(b).size();
+        }
+
+        // successors in visiting order, compressed rows
+        int[] start = new int[n + 1];
+        int[] succ = new int[edgeCount];
+        int p = 0;
+        for (int i = 0; i < n; i++) {
+            start[i] = p;
+            Set<FlowEdge<BasicBlock>> edges = cfg.getEdges(blocks[i]);
+            for (FlowEdge<BasicBlock> e : edges) {
+                if (!(e instanceof ImmediateEdge))
+                    succ[p++] = id(ids, e.dst());
+            }
+            for (FlowEdge<BasicBlock> e : edges) {
+                if (e instanceof ImmediateEdge)
+                    succ[p++] = id(ids, e.dst());
+            }
+        }
+        start[n] = p;
+
+        boolean[] seen = new boolean[n];
+        int[] stack = new int[n];
+        int[] cursor = new int[n];
+        int[] post = new int[n];
+        int sp = 0, postCount = 0;
+        Iterator<BasicBlock> entries = cfg.getEntries().iterator();
+        int root = entries.hasNext() ? id(ids, entries.next()) : -1;
+        if (root >= 0) {
+            seen[root] = true;
+            stack[0] = root;
+            cursor[0] = start[root];
+            sp = 1;
+        }
+        while (sp > 0) {
+            int top = stack[sp - 1];
+            int c = cursor[sp - 1];
+            if (c < start[top + 1]) {
+                cursor[sp - 1] = c + 1;
+                int s = succ[c];
+                if (s >= 0 && !seen[s]) {
+                    seen[s] = true;
+                    stack[sp] = s;
+                    cursor[sp] = start[s];
+                    sp++;
+                }
+            } else {
+                post[postCount++] = top;
+                sp--;
+            }
+        }
+
+        order = new BasicBlock[postCount];
+        for (int i = 0; i < postCount; i++) {
+            order[i] = blocks[post[postCount - 1 - i]];
+        }
+    }
+
+    private static int id(int[] ids, BasicBlock b) {
+        int numericId = b.getNumericId();
+        return numericId >= 0 && numericId < ids.length ? ids[numericId] : -1;
+    }
+
+    public int size() {
+        return order.length;
+    }
+
+    public BasicBlock get(int i) {
+        return order[i];
+    }
+
+    public List<BasicBlock> getOrder() {
+        return Collections.unmodifiableList(Arrays.asList(order));
+    }
+}
@@ -0,0 +1,486 @@
+package org.mapleir.jdaplugin;
+
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Call graph over the methods of one container's classes. Virtual calls are resolved by class hierarchy
+ * analysis, dispatching on every concrete subtype of the receiver's static type, or in {@link Mode#RTA} only
+ * on the subtypes instantiated by code reachable from the entry points. Calls into library code aren't kept,
+ * lambdas count as calls to their implementation method.
+ *
+ * Call sites are resolved in parallel per method against a {@link ClassHierarchyIndex}, with resolutions shared
+ * between sites calling the same member. Edges are stored as compressed rows in both directions, so callers
+ * and callees are read straight out of int arrays.
+ */
+public class CallGraph {
+    public static final String MODE_PROPERTY = "mapleir.analysis.callgraph";
+    public static final String ENTRIES_PROPERTY = "mapleir.analysis.callgraph.entries";
+
+    public enum Mode {
+        NONE, CHA, RTA;
+
+        public static Mode fromSystemProperties() {
+            String mode = System.getProperty(MODE_PROPERTY, "none");
+            try {
+                return valueOf(mode.toUpperCase(Locale.ROOT));
+            } catch(IllegalArgumentException e) {
+                System.err.println("[MapleIR] Unknown call graph mode " + mode + ", expected none, cha or rta");
+                return NONE;
+            }
+        }
+    }
+
+    private static final int[] NO_TARGETS = new int[0];
+
+    private final Mode mode;
+    private final String[] owners;
+    private final String[] names;
+    private final String[] descs;
+    private final ClassHierarchyIndex hierarchy;
+    private final int[] calleeStart;
+    private final int[] callees;
+    private final int[] callerStart;
+    private final int[] callers;
+
+    private CallGraph(Mode mode, ClassHierarchyIndex hierarchy, String[] owners, String[] names, String[] descs, int[][] targets) {
+        this.mode = mode;
+        this.hierarchy = hierarchy;
+        this.owners = owners;
+        this.names = names;
+        this.descs = descs;
+        int n = targets.length;
+
+        calleeStart = new int[n + 1];
+        for (int i = 0; i < n; i++)
+            calleeStart[i + 1] = calleeStart[i] + targets[i].length;
+        callees = new int[calleeStart[n]];
+        int[] callerCounts = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(targets[i], 0, callees, calleeStart[i], targets[i].length);
+            for (int t : targets[i])
+                callerCounts[t + 1]++;
+        }
+
+        callerStart = new int[n + 1];
+        for (int i = 0; i < n; i++)
+            callerStart[i + 1] = callerStart[i] + callerCounts[i + 1];
+        callers = new int[callees.length];
+        int[] fill = Arrays.copyOf(callerStart, n);
+        for (int i = 0; i < n; i++) {
+            for (int t : targets[i])
+                callers[fill[t]++] = i;
+        }
+    }
+
+    /**
+     * @param classes all classes of the container
+     * @param mode {@link Mode#CHA} or {@link Mode#RTA}
+     */
+    public static CallGraph build(Collection<ClassNode> classes, Mode mode, ForkJoinPool pool) throws InterruptedException {
+        return build(Workers.invoke(pool, () -> ClassHierarchyIndex.of(classes)), mode, pool);
+    }
+
+    /**
+     * Builds the graph over the methods of a hierarchy built from parsed classes, method ids are shared with it.
+     * RTA starts from the entry points given by {@link #ENTRIES_PROPERTY}, see {@link #entryPoints}.
+     */
+    public static CallGraph build(ClassHierarchyIndex hierarchy, Mode mode, ForkJoinPool pool) throws InterruptedException {
+        String entries = System.getProperty(ENTRIES_PROPERTY, "");
+        return build(hierarchy, mode, entries.isEmpty() ? Collections.emptyList() : Arrays.asList(entries.split(",")), pool);
+    }
+
+    /**
+     * @param entryPoints RTA only, extra methods to start from, as {@link #find} queries
+     */
+    public static CallGraph build(ClassHierarchyIndex hierarchy, Mode mode, Collection<String> entryPoints, ForkJoinPool pool)
+            throws InterruptedException {
+        if (mode == Mode.NONE)
+            throw new IllegalArgumentException("no call graph mode");
+        int n = hierarchy.methodCount();
+        String[] owners = new String[n], names = new String[n], descs = new String[n];
+        for (int i = 0; i < n; i++) {
+            MethodNode mn = hierarchy.getMethodNode(i);
+            owners[i] = hierarchy.getName(hierarchy.getMethodOwner(i));
+            names[i] = mn.name;
+            descs[i] = mn.desc;
+        }
+
+        Resolver resolver = new Resolver(hierarchy, mode);
+        int[][] targets = new int[n][];
+        if (mode == Mode.RTA) {
+            boolean[] reachable = resolver.reach(entryPoints(hierarchy, entryPoints, owners, names, descs));
+            Workers.invoke(pool, () -> IntStream.range(0, n).parallel()
+                    .forEach(i -> targets[i] = reachable[i] ? resolver.resolveCalls(i) : NO_TARGETS));
+        } else {
+            Workers.invoke(pool, () -> IntStream.range(0, n).parallel().forEach(i -> targets[i] = resolver.resolveCalls(i)));
+        }
+        return new CallGraph(mode, hierarchy, owners, names, descs, targets);
+    }
+
+    /**
+     * RTA starts from every static initialiser, the {@code main} methods and the configured methods. A container
+     * without a {@code main} and nothing configured is taken to be a library, so its public API is added too.
+     */
+    private static int[] entryPoints(ClassHierarchyIndex hierarchy, Collection<String> configured, String[] owners,
+                                     String[] names, String[] descs) {
+        Set<Integer> entries = new TreeSet<>();
+        boolean hasMain = false;
+        for (int i = 0; i < names.length; i++) {
+            int access = hierarchy.getMethodNode(i).access;
+            if (names[i].equals("<clinit>")) {
+                entries.add(i);
+            } else if (names[i].equals("main") && descs[i].equals("([Ljava/lang/String;)V") && (access & Opcodes.ACC_STATIC) != 0) {
+                entries.add(i);
+                hasMain = true;
+            }
+        }
+        for (String query : configured) {
+            List<Integer> found = find(query.trim(), owners, names, descs);
+            if (found.isEmpty())
+                System.err.println("[MapleIR] Call graph entry point " + query.trim() + " not found");
+            entries.addAll(found);
+        }
+        if (!hasMain && configured.isEmpty()) {
+            for (int i = 0; i < names.length; i++) {
+                int owner = hierarchy.getMethodOwner(i);
+                if ((hierarchy.getAccess(owner) & Opcodes.ACC_PUBLIC) != 0
+                        && (hierarchy.getMethodNode(i).access & (Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED)) != 0)
+                    entries.add(i);
+            }
+        }
+        int[] result = new int[entries.size()];
+        int i = 0;
+        for (int e : entries)
+            result[i++] = e;
+        return result;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int methodCount() {
+        return owners.length;
+    }
+
+    public int edgeCount() {
+        return callees.length;
+    }
+
+    /**
+     * @return the method's id, or -1 if it isn't declared in the container
+     */
+    public int id(String owner, String name, String desc) {
+        return hierarchy.getMethod(owner, name, desc);
+    }
+
+    public ClassHierarchyIndex getHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * Finds methods by {@code name}, {@code owner.name} or {@code owner.name(desc)}, with owners in internal form.
+     */
+    public List<Integer> find(String query) {
+        return find(query, owners, names, descs);
+    }
+
+    private static List<Integer> find(String query, String[] owners, String[] names, String[] descs) {
+        int paren = query.indexOf('(');
+        String desc = paren >= 0 ? query.substring(paren) : null;
+        String qualified = paren >= 0 ? query.substring(0, paren) : query;
+        int dot = qualified.lastIndexOf('.');
+        String owner = dot >= 0 ? qualified.substring(0, dot) : null;
+        String name = qualified.substring(dot + 1);
+        List<Integer> result = new ArrayList<>();
+        for (int i = 0; i < owners.length; i++) {
+            if (names[i].equals(name) && (owner == null || owners[i].equals(owner)) && (desc == null || descs[i].equals(desc)))
+                result.add(i);
+        }
+        return result;
+    }
+
+    public String getOwner(int method) {
+        return owners[method];
+    }
+
+    public String getName(int method) {
+        return names[method];
+    }
+
+    public String getDesc(int method) {
+        return descs[method];
+    }
+
+    public String toString(int method) {
+        return owners[method] + '.' + names[method] + descs[method];
+    }
+
+    public int calleeCount(int method) {
+        return calleeStart[method + 1] - calleeStart[method];
+    }
+
+    public int callee(int method, int i) {
+        return callees[calleeStart[method] + i];
+    }
+
+    public int callerCount(int method) {
+        return callerStart[method + 1] - callerStart[method];
+    }
+
+    public int caller(int method, int i) {
+        return callers[callerStart[method] + i];
+    }
+
+    @Override
+    public String toString() {
+        return mode.name().toLowerCase(Locale.ROOT) + " call graph, " + methodCount() + " methods, " + edgeCount() + " edges";
+    }
+
+    private static final class Resolver {
+        final ClassHierarchyIndex hierarchy;
+        final Mode mode;
+        final Set<String> instantiated = ConcurrentHashMap.newKeySet();
+        final Map<String, int[]> resolved = new ConcurrentHashMap<>();
+        // RTA reachability state, only touched by the one thread running reach
+        final Map<Integer, Set<String>> virtualCalls = new HashMap<>();
+        boolean[] reachable;
+        int[] work;
+        int sp;
+
+        Resolver(ClassHierarchyIndex hierarchy, Mode mode) {
+            this.hierarchy = hierarchy;
+            this.mode = mode;
+        }
+
+        /**
+         * Walks the methods reachable from the entry points, calling virtual methods only on the classes
+         * instantiated by the methods reached so far. A class instantiated later also dispatches the calls seen
+         * before it, and its overrides of library methods become reachable, since the library may call them.
+         * Stops once neither the reachable methods nor the instantiated classes grow.
+         *
+         * @return which methods are reachable, by id
+         */
+        boolean[] reach(int[] entries) {
+            reachable = new boolean[hierarchy.methodCount()];
+            work = new int[16];
+            for (int e : entries)
+                reached(e);
+            while (sp > 0) {
+                MethodNode mn = hierarchy.getMethodNode(work[--sp]);
+                if (mn.instructions == null)
+                    continue;
+                for (AbstractInsnNode insn = mn.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                    if (insn.getOpcode() == Opcodes.NEW) {
+                        String name = ((TypeInsnNode) insn).desc;
+                        int type = hierarchy.id(name);
+                        if (instantiated.add(name) && type >= 0 && hierarchy.isApplicationClass(type))
+                            instantiate(type);
+                    } else if (insn instanceof MethodInsnNode) {
+                        MethodInsnNode min = (MethodInsnNode) insn;
+                        boolean virtual = min.getOpcode() == Opcodes.INVOKEVIRTUAL || min.getOpcode() == Opcodes.INVOKEINTERFACE;
+                        call(virtual, min.owner, min.name + min.desc);
+                    } else if (insn instanceof InvokeDynamicInsnNode) {
+                        Handle impl = lambdaImpl((InvokeDynamicInsnNode) insn);
+                        if (impl != null) {
+                            boolean virtual = impl.getTag() == Opcodes.H_INVOKEVIRTUAL || impl.getTag() == Opcodes.H_INVOKEINTERFACE;
+                            call(virtual, impl.getOwner(), impl.getName() + impl.getDesc());
+                        }
+                    }
+                }
+            }
+            work = null;
+            return reachable;
+        }
+
+        private void reached(int method) {
+            if (reachable[method])
+                return;
+            reachable[method] = true;
+            if (sp == work.length)
+                work = Arrays.copyOf(work, sp * 2);
+            work[sp++] = method;
+        }
+
+        private void call(boolean virtual, String owner, String selector) {
+            int type = hierarchy.id(owner);
+            if (type < 0)
+                return;
+            // virtual calls don't go through the resolution cache, the instantiated classes are still growing
+            int[] targets = !virtual ? resolve(false, owner, selector)
+                    : virtualCalls.computeIfAbsent(type, t -> new HashSet<>()).add(selector) ? resolveVirtual(type, selector)
+                    : NO_TARGETS;
+            for (int t : targets)
+                reached(t);
+        }
+
+        private void instantiate(int type) {
+            List<Integer> supertypes = new ArrayList<>();
+            for (int c = type; c >= 0; c = hierarchy.getSuperClass(c))
+                supertypes.add(c);
+            int classes = supertypes.size();
+            hierarchy.forEachInterface(type, supertypes::add);
+            boolean librarySupertype = hierarchy.hasLibrarySupertype(type);
+
+            for (int sup : supertypes) {
+                Set<String> selectors = virtualCalls.get(sup);
+                if (selectors == null)
+                    continue;
+                for (String selector : selectors) {
+                    int id = dispatch(type, selector);
+                    if (id >= 0)
+                        reached(id);
+                }
+            }
+            // methods overriding nothing in the container may override the library, which can call them
+            for (int i = 0; i < classes && hierarchy.isApplicationClass(supertypes.get(i)); i++) {
+                int c = supertypes.get(i);
+                ClassNode cn = hierarchy.getClassNode(c);
+                if (cn == null)
+                    continue;
+                for (MethodNode mn : cn.methods) {
+                    int id = hierarchy.getMethod(c, mn.name, mn.desc);
+                    String selector = mn.name + mn.desc;
+                    if (id >= 0 && hierarchy.overriddenCount(id) == 0 && !mn.name.startsWith("<")
+                            && (librarySupertype || ClassHierarchyIndex.isObjectMethod(selector)) && dispatch(type, selector) == id)
+                        reached(id);
+                }
+            }
+        }
+
+        int[] resolveCalls(int method) {
+            MethodNode mn = hierarchy.getMethodNode(method);
+            if (mn.instructions == null || mn.instructions.size() == 0)
+                return NO_TARGETS;
+            int[] targets = new int[8];
+            int count = 0;
+            for (AbstractInsnNode insn = mn.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                int[] found;
+                if (insn instanceof MethodInsnNode) {
+                    MethodInsnNode min = (MethodInsnNode) insn;
+                    boolean virtual = min.getOpcode() == Opcodes.INVOKEVIRTUAL || min.getOpcode() == Opcodes.INVOKEINTERFACE;
+                    found = resolve(virtual, min.owner, min.name + min.desc);
+                } else if (insn instanceof InvokeDynamicInsnNode) {
+                    found = lambdaTarget((InvokeDynamicInsnNode) insn);
+                } else {
+                    continue;
+                }
+                for (int t : found) {
+                    if (count == targets.length)
+                        targets = Arrays.copyOf(targets, count * 2);
+                    targets[count++] = t;
+                }
+            }
+            if (count == 0)
+                return NO_TARGETS;
+            Arrays.sort(targets, 0, count);
+            int unique = 1;
+            for (int i = 1; i < count; i++) {
+                if (targets[i] != targets[unique - 1])
+                    targets[unique++] = targets[i];
+            }
+            return Arrays.copyOf(targets, unique);
+        }
+
+        private int[] lambdaTarget(InvokeDynamicInsnNode indy) {
+            Handle impl = lambdaImpl(indy);
+            if (impl == null)
+                return NO_TARGETS;
+            boolean virtual = impl.getTag() == Opcodes.H_INVOKEVIRTUAL || impl.getTag() == Opcodes.H_INVOKEINTERFACE;
+            return resolve(virtual, impl.getOwner(), impl.getName() + impl.getDesc());
+        }
+
+        private static Handle lambdaImpl(InvokeDynamicInsnNode indy) {
+            if (!"java/lang/invoke/LambdaMetafactory".equals(indy.bsm.getOwner()) || indy.bsmArgs.length < 2
+                    || !(indy.bsmArgs[1] instanceof Handle))
+                return null;
+            return (Handle) indy.bsmArgs[1];
+        }
+
+        private int[] resolve(boolean virtual, String owner, String selector) {
+            String key = (virtual ? 'V' : 'D') + owner + '.' + selector;
+            int[] targets = resolved.get(key);
+            if (targets == null) {
+                int type = hierarchy.id(owner);
+                targets = type < 0 ? NO_TARGETS : virtual ? resolveVirtual(type, selector) : resolveDirect(type, selector);
+                resolved.put(key, targets);
+            }
+            return targets;
+        }
+
+        private int[] resolveDirect(int owner, String selector) {
+            for (int c = owner; c >= 0; c = hierarchy.getSuperClass(c)) {
+                int id = hierarchy.getMethod(c, selector);
+                if (id >= 0)
+                    return new int[]{id};
+            }
+            int id = findDefault(owner, selector, true);
+            return id >= 0 ? new int[]{id} : NO_TARGETS;
+        }
+
+        private int[] resolveVirtual(int owner, String selector) {
+            Set<Integer> targets = new TreeSet<>();
+            for (int type : hierarchy.getSubtypes(owner)) {
+                if (hierarchy.isApplicationClass(type) && isConcrete(type)) {
+                    int id = dispatch(type, selector);
+                    if (id >= 0)
+                        targets.add(id);
+                }
+            }
+            int[] result = new int[targets.size()];
+            int i = 0;
+            for (int t : targets)
+                result[i++] = t;
+            return result;
+        }
+
+        private boolean isConcrete(int type) {
+            if (mode == Mode.RTA)
+                return instantiated.contains(hierarchy.getName(type));
+            return (hierarchy.getAccess(type) & (Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT)) == 0;
+        }
+
+        /**
+         * @return the method a call on an instance of {@code type} ends up in, or -1 if it's not in the container
+         */
+        private int dispatch(int type, String selector) {
+            for (int c = type; c >= 0; c = hierarchy.getSuperClass(c)) {
+                int id = hierarchy.getMethod(c, selector);
+                if (id >= 0) {
+                    int access = hierarchy.getMethodNode(id).access;
+                    if ((access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) != 0)
+                        continue;
+                    return (access & Opcodes.ACC_ABSTRACT) == 0 ? id : -1;
+                }
+            }
+            return findDefault(type, selector, false);
+        }
+
+        /**
+         * Searches the interfaces of a class and its super classes for a (default) method.
+         */
+        private int findDefault(int type, String selector, boolean includeAbstract) {
+            if (hierarchy.isInterface(type)) {
+                int id = hierarchy.getMethod(type, selector);
+                if (id >= 0 && (includeAbstract || (hierarchy.getMethodNode(id).access & Opcodes.ACC_ABSTRACT) == 0))
+                    return id;
+            }
+            int[] found = {-1};
+            hierarchy.forEachInterface(type, itf -> {
+                if (found[0] >= 0)
+                    return;
+                int id = hierarchy.getMethod(itf, selector);
+                if (id >= 0 && (includeAbstract || (hierarchy.getMethodNode(id).access & Opcodes.ACC_ABSTRACT) == 0))
+                    found[0] = id;
+            });
+            return found[0];
+        }
+    }
+}
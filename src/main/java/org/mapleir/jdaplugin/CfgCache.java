@@ -0,0 +1,309 @@
+package org.mapleir.jdaplugin;
+
+import org.mapleir.ir.algorithms.BoissinotDestructor;
+import org.mapleir.ir.algorithms.LocalsReallocator;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.objectweb.asm.tree.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Printable (out of SSA, locals reallocated) cfgs shared by the IR, IL and DebugIL decompilers, so switching
+ * between them doesn't rebuild every method. Entries are keyed by the method's owner, name and descriptor, a
+ * fingerprint of its instructions and a variant naming the passes that were run on them, so a view opened on a
+ * fresh copy of a class still hits while a method modified in place doesn't. The cfgs are always built here
+ * from the method itself, never borrowed from analysis, so the output doesn't depend on what analysis got to.
+ * Things derived from a cached cfg, like its {@link ExceptionRangeIndex} and {@link BlockLayout}, are cached
+ * along with it.
+ *
+ * Holds at most {@code mapleir.cfgcache.size} methods, 512 by default.
+ */
+public class CfgCache {
+    public static final String SIZE_PROPERTY = "mapleir.cfgcache.size";
+
+    private static final CfgCache SHARED = new CfgCache(Integer.getInteger(SIZE_PROPERTY, 512));
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Cached> entries;
+    private final Map<ControlFlowGraph, Cached> byCfg = new IdentityHashMap<>();
+
+    public CfgCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, Cached>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Cached> eldest) {
+                if (size() <= CfgCache.this.capacity)
+                    return false;
+                byCfg.remove(eldest.getValue().cfg);
+                return true;
+            }
+        };
+    }
+
+    public static CfgCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param owner internal name of the class declaring {@code mn}
+     * @param variant identifies {@code ssaPasses}, cfgs are only shared between requests with the same variant
+     * @param ssaPasses run on the ssa form before it's destroyed, may be null
+     * @return the cfg, which callers must treat as read only
+     * @throws MethodBudget.OverBudgetException if the method is over the {@link MethodBudget}
+     */
+    public ControlFlowGraph get(String owner, MethodNode mn, String variant, Consumer<ControlFlowGraph> ssaPasses) {
+        Key key = new Key(owner, mn.name, mn.desc, fingerprint(mn), variant);
+        synchronized (this) {
+            Cached e = entries.get(key);
+            if (e != null)
+                return e.cfg;
+        }
+        ControlFlowGraph cfg = build(owner, mn, ssaPasses);
+        synchronized (this) {
+            Cached e = entries.get(key);
+            if (e != null)
+                return e.cfg; // somebody else won the race
+            Cached cached = new Cached(cfg);
+            entries.put(key, cached);
+            byCfg.put(cfg, cached);
+        }
+        return cfg;
+    }
+
+    /**
+     * @return the exception range index of a cfg, cached with it if the cfg came from this cache
+     */
+    public ExceptionRangeIndex ranges(ControlFlowGraph cfg) {
+        Cached cached = cachedFor(cfg);
+        if (cached == null)
+            return new ExceptionRangeIndex(cfg);
+        ExceptionRangeIndex ranges = cached.ranges;
+        if (ranges == null)
+            cached.ranges = ranges = new ExceptionRangeIndex(cfg); // racing builders produce equal indexes
+        return ranges;
+    }
+
+    /**
+     * @return the block layout of a cfg, cached with it if the cfg came from this cache
+     */
+    public BlockLayout layout(ControlFlowGraph cfg) {
+        Cached cached = cachedFor(cfg);
+        if (cached == null)
+            return new BlockLayout(cfg);
+        BlockLayout layout = cached.layout;
+        if (layout == null)
+            cached.layout = layout = new BlockLayout(cfg);
+        return layout;
+    }
+
+    private synchronized Cached cachedFor(ControlFlowGraph cfg) {
+        return byCfg.get(cfg);
+    }
+
+    private static ControlFlowGraph build(String owner, MethodNode mn, Consumer<ControlFlowGraph> ssaPasses) {
+        MethodBudget budget = MethodBudget.shared();
+        budget.checkSize(owner, mn);
+        long start = System.nanoTime();
+        ControlFlowGraph cfg = ControlFlowGraphBuilder.build(ASMAdaptor.wrapMethodNode(mn));
+        budget.elapsed(owner, mn, System.nanoTime() - start);
+        budget.checkBlocks(owner, mn, cfg.vertices().size());
+        if (ssaPasses != null) {
+            ssaPasses.accept(cfg);
+        }
+        BoissinotDestructor.leaveSSA(cfg);
+        LocalsReallocator.realloc(cfg);
+        return cfg;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        byCfg.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * SHA-256 over a method's code and exception table, with labels resolved to instruction indexes, to notice
+     * when it was changed after its cfg was cached.
+     */
+    public static byte[] fingerprint(MethodNode mn) {
+        CodeDigest d = new CodeDigest();
+        d.putInt(mn.access);
+        d.putInt(mn.maxLocals);
+        InsnList insns = mn.instructions;
+        if (insns != null) {
+            d.putInt(insns.size());
+            for (AbstractInsnNode insn = insns.getFirst(); insn != null; insn = insn.getNext()) {
+                d.putInt(insn.getType());
+                d.putInt(insn.getOpcode());
+                if (insn instanceof VarInsnNode) {
+                    d.putInt(((VarInsnNode) insn).var);
+                } else if (insn instanceof IntInsnNode) {
+                    d.putInt(((IntInsnNode) insn).operand);
+                } else if (insn instanceof IincInsnNode) {
+                    d.putInt(((IincInsnNode) insn).var);
+                    d.putInt(((IincInsnNode) insn).incr);
+                } else if (insn instanceof LdcInsnNode) {
+                    d.putConstant(((LdcInsnNode) insn).cst);
+                } else if (insn instanceof TypeInsnNode) {
+                    d.putString(((TypeInsnNode) insn).desc);
+                } else if (insn instanceof FieldInsnNode) {
+                    FieldInsnNode f = (FieldInsnNode) insn;
+                    d.putString(f.owner);
+                    d.putString(f.name);
+                    d.putString(f.desc);
+                } else if (insn instanceof MethodInsnNode) {
+                    MethodInsnNode m = (MethodInsnNode) insn;
+                    d.putString(m.owner);
+                    d.putString(m.name);
+                    d.putString(m.desc);
+                    d.putInt(m.itf ? 1 : 0);
+                } else if (insn instanceof InvokeDynamicInsnNode) {
+                    InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+                    d.putString(indy.name);
+                    d.putString(indy.desc);
+                    d.putConstant(indy.bsm);
+                    d.putInt(indy.bsmArgs.length);
+                    for (Object arg : indy.bsmArgs)
+                        d.putConstant(arg);
+                } else if (insn instanceof JumpInsnNode) {
+                    d.putInt(insns.indexOf(((JumpInsnNode) insn).label));
+                } else if (insn instanceof TableSwitchInsnNode) {
+                    TableSwitchInsnNode sw = (TableSwitchInsnNode) insn;
+                    d.putInt(sw.min);
+                    d.putInt(sw.max);
+                    d.putInt(insns.indexOf(sw.dflt));
+                    for (LabelNode l : sw.labels)
+                        d.putInt(insns.indexOf(l));
+                } else if (insn instanceof LookupSwitchInsnNode) {
+                    LookupSwitchInsnNode sw = (LookupSwitchInsnNode) insn;
+                    d.putInt(insns.indexOf(sw.dflt));
+                    d.putInt(sw.keys.size());
+                    for (int key : sw.keys)
+                        d.putInt(key);
+                    for (LabelNode l : sw.labels)
+                        d.putInt(insns.indexOf(l));
+                } else if (insn instanceof MultiANewArrayInsnNode) {
+                    d.putString(((MultiANewArrayInsnNode) insn).desc);
+                    d.putInt(((MultiANewArrayInsnNode) insn).dims);
+                }
+            }
+        }
+        if (mn.tryCatchBlocks != null) {
+            d.putInt(mn.tryCatchBlocks.size());
+            for (TryCatchBlockNode tc : mn.tryCatchBlocks) {
+                d.putInt(insns.indexOf(tc.start));
+                d.putInt(insns.indexOf(tc.end));
+                d.putInt(insns.indexOf(tc.handler));
+                d.putString(tc.type);
+            }
+        }
+        return d.md.digest();
+    }
+
+    private static final class CodeDigest {
+        final MessageDigest md;
+        final byte[] buf = new byte[8];
+
+        CodeDigest() {
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e); // every jre ships sha-256
+            }
+        }
+
+        void putInt(int v) {
+            for (int i = 0; i < 4; i++)
+                buf[i] = (byte) (v >>> (24 - 8 * i));
+            md.update(buf, 0, 4);
+        }
+
+        void putLong(long v) {
+            for (int i = 0; i < 8; i++)
+                buf[i] = (byte) (v >>> (56 - 8 * i));
+            md.update(buf, 0, 8);
+        }
+
+        void putString(String s) {
+            if (s == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            md.update(bytes);
+        }
+
+        // typed, so 1, 1L and "1" differ
+        void putConstant(Object cst) {
+            if (cst instanceof Integer) {
+                putInt('I');
+                putInt((Integer) cst);
+            } else if (cst instanceof Long) {
+                putInt('J');
+                putLong((Long) cst);
+            } else if (cst instanceof Float) {
+                putInt('F');
+                putInt(Float.floatToRawIntBits((Float) cst));
+            } else if (cst instanceof Double) {
+                putInt('D');
+                putLong(Double.doubleToRawLongBits((Double) cst));
+            } else {
+                putString(cst == null ? null : cst.getClass().getName());
+                putString(String.valueOf(cst));
+            }
+        }
+    }
+
+    private static final class Key {
+        final String owner;
+        final String name;
+        final String desc;
+        final byte[] fingerprint;
+        final String variant;
+
+        Key(String owner, String name, String desc, byte[] fingerprint, String variant) {
+            this.owner = owner;
+            this.name = name;
+            this.desc = desc;
+            this.fingerprint = fingerprint;
+            this.variant = variant;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return Arrays.equals(fingerprint, k.fingerprint) && Objects.equals(owner, k.owner) && name.equals(k.name)
+                    && desc.equals(k.desc) && variant.equals(k.variant);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = Objects.hashCode(owner);
+            h = 31 * h + name.hashCode();
+            h = 31 * h + desc.hashCode();
+            h = 31 * h + Arrays.hashCode(fingerprint);
+            return 31 * h + variant.hashCode();
+        }
+    }
+
+    private static final class Cached {
+        final ControlFlowGraph cfg;
+        volatile ExceptionRangeIndex ranges;
+        volatile BlockLayout layout;
+
+        Cached(ControlFlowGraph cfg) {
+            this.cfg = cfg;
+        }
+    }
+}
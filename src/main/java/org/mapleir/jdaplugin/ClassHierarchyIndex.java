@@ -0,0 +1,568 @@
+package org.mapleir.jdaplugin;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Class hierarchy of one container, interned into dense ids. The container's classes come first, followed by
+ * the library types they name as supertypes, whose own supertypes aren't known.
+ *
+ * Subclass tests are an interval check on a preorder numbering of the super class tree, interface tests a bit
+ * test on each type's set of (transitively) implemented interfaces, so both are O(1). Interfaces are numbered
+ * by how many classes implement them, which keeps the bitsets of most classes down to a word or two, and a
+ * class that implements nothing beyond its super class shares the super class's set. Methods of the container
+ * get dense ids as well, with the methods each one overrides and is overridden by.
+ */
+public class ClassHierarchyIndex {
+    private static final int[] NONE = new int[0];
+    // the library calls these on any object
+    private static final Set<String> OBJECT_METHODS = new HashSet<>(Arrays.asList("toString()Ljava/lang/String;",
+            "equals(Ljava/lang/Object;)Z", "hashCode()I", "finalize()V", "clone()Ljava/lang/Object;"));
+
+    /**
+     * Collects classes as they are parsed, from any number of threads.
+     */
+    public static final class Builder {
+        private final Queue<Entry> entries = new ConcurrentLinkedQueue<>();
+
+        public void add(ClassNode cn) {
+            entries.add(new Entry(cn.name, cn.superName, cn.interfaces.toArray(new String[0]), cn.access, cn));
+        }
+
+        /**
+         * Adds just the header of a class, its methods won't be indexed.
+         */
+        public void add(ClassReader cr) {
+            entries.add(new Entry(cr.getClassName(), cr.getSuperName(), cr.getInterfaces(), cr.getAccess(), null));
+        }
+
+        /**
+         * Overrides are worked out with a parallel stream, so call this inside the pool that should do the work.
+         */
+        public ClassHierarchyIndex build() {
+            List<Entry> list = new ArrayList<>(entries);
+            list.sort(Comparator.comparing(e -> e.name));
+            return new ClassHierarchyIndex(list);
+        }
+    }
+
+    private static final class Entry {
+        final String name;
+        final String superName;
+        final String[] interfaces;
+        final int access;
+        final ClassNode node;
+
+        Entry(String name, String superName, String[] interfaces, int access, ClassNode node) {
+            this.name = name;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.access = access;
+            this.node = node;
+        }
+    }
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final String[] names;
+    private final int applicationCount;
+    private final int[] access;
+    private final boolean[] isInterface;
+    private final int[] superIds;
+    private final int[] interfaceStart;
+    private final int[] interfaceIds;
+    private final int[] childStart;
+    private final int[] children;
+    // [pre, end] is the preorder range of a type's subclasses, itself included
+    private final int[] pre;
+    private final int[] end;
+    private final int[] interfaceRank;
+    private final int[] rankedInterfaces;
+    private final BitSet[] implemented;
+
+    private final ClassNode[] nodes;
+    private final Map<String, Integer> methodIds = new HashMap<>();
+    private final MethodNode[] methods;
+    private final int[] methodOwners;
+    private final int[] overriddenStart;
+    private final int[] overridden;
+    private final int[] overriderStart;
+    private final int[] overriders;
+
+    private ClassHierarchyIndex(List<Entry> entries) {
+        List<String> types = new ArrayList<>();
+        List<Entry> application = new ArrayList<>();
+        for (Entry e : entries) {
+            if (!ids.containsKey(e.name)) {
+                ids.put(e.name, types.size());
+                types.add(e.name);
+                application.add(e);
+            }
+        }
+        applicationCount = application.size();
+        Set<String> libraryInterfaces = new HashSet<>();
+        for (Entry e : application) {
+            if (e.superName != null)
+                intern(e.superName, types);
+            for (String itf : e.interfaces) {
+                intern(itf, types);
+                libraryInterfaces.add(itf);
+            }
+        }
+        int n = types.size();
+        names = types.toArray(new String[0]);
+        access = new int[n];
+        isInterface = new boolean[n];
+        superIds = new int[n];
+        Arrays.fill(superIds, -1);
+        nodes = new ClassNode[applicationCount];
+        interfaceStart = new int[n + 1];
+        for (int i = 0; i < applicationCount; i++) {
+            Entry e = application.get(i);
+            access[i] = e.access;
+            isInterface[i] = (e.access & Opcodes.ACC_INTERFACE) != 0;
+            superIds[i] = e.superName == null ? -1 : ids.get(e.superName);
+            nodes[i] = e.node;
+            interfaceStart[i + 1] = interfaceStart[i] + e.interfaces.length;
+        }
+        for (int i = applicationCount; i < n; i++) {
+            isInterface[i] = libraryInterfaces.contains(names[i]);
+            interfaceStart[i + 1] = interfaceStart[i];
+        }
+        interfaceIds = new int[interfaceStart[n]];
+        for (int i = 0; i < applicationCount; i++) {
+            String[] itfs = application.get(i).interfaces;
+            for (int j = 0; j < itfs.length; j++)
+                interfaceIds[interfaceStart[i] + j] = ids.get(itfs[j]);
+        }
+
+        // direct subtypes, by super class and by interface
+        int[] counts = new int[n + 1];
+        for (int i = 0; i < applicationCount; i++) {
+            if (superIds[i] >= 0)
+                counts[superIds[i] + 1]++;
+            for (int j = interfaceStart[i]; j < interfaceStart[i + 1]; j++)
+                counts[interfaceIds[j] + 1]++;
+        }
+        childStart = new int[n + 1];
+        for (int i = 0; i < n; i++)
+            childStart[i + 1] = childStart[i] + counts[i + 1];
+        children = new int[childStart[n]];
+        int[] fill = Arrays.copyOf(childStart, n);
+        for (int i = 0; i < applicationCount; i++) {
+            if (superIds[i] >= 0)
+                children[fill[superIds[i]]++] = i;
+            for (int j = interfaceStart[i]; j < interfaceStart[i + 1]; j++)
+                children[fill[interfaceIds[j]]++] = i;
+        }
+
+        pre = new int[n];
+        end = new int[n];
+        numberSubclasses();
+
+        int[] implementers = new int[n];
+        int interfaceCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (isInterface[i])
+                interfaceCount++;
+        }
+        for (int j = 0; j < interfaceIds.length; j++)
+            implementers[interfaceIds[j]]++;
+        Integer[] byPopularity = new Integer[interfaceCount];
+        for (int i = 0, k = 0; i < n; i++) {
+            if (isInterface[i])
+                byPopularity[k++] = i;
+        }
+        Arrays.sort(byPopularity, (a, b) -> implementers[b] != implementers[a] ? implementers[b] - implementers[a] : a - b);
+        interfaceRank = new int[n];
+        Arrays.fill(interfaceRank, -1);
+        rankedInterfaces = new int[interfaceCount];
+        for (int r = 0; r < interfaceCount; r++) {
+            rankedInterfaces[r] = byPopularity[r];
+            interfaceRank[byPopularity[r]] = r;
+        }
+        implemented = new BitSet[n];
+        byte[] state = new byte[n];
+        for (int i = 0; i < n; i++)
+            implemented(i, state);
+
+        int methodCount = 0;
+        for (ClassNode cn : nodes) {
+            if (cn != null)
+                methodCount += cn.methods.size();
+        }
+        methods = new MethodNode[methodCount];
+        methodOwners = new int[methodCount];
+        for (int i = 0, m = 0; i < applicationCount; i++) {
+            if (nodes[i] == null)
+                continue;
+            for (MethodNode mn : nodes[i].methods) {
+                methodIds.putIfAbsent(names[i] + '.' + mn.name + mn.desc, m);
+                methods[m] = mn;
+                methodOwners[m++] = i;
+            }
+        }
+        int[][] overrides = new int[methodCount][];
+        IntStream.range(0, methodCount).parallel().forEach(m -> overrides[m] = findOverridden(m));
+        overriddenStart = new int[methodCount + 1];
+        for (int m = 0; m < methodCount; m++)
+            overriddenStart[m + 1] = overriddenStart[m] + overrides[m].length;
+        overridden = new int[overriddenStart[methodCount]];
+        int[] overriderCounts = new int[methodCount + 1];
+        for (int m = 0; m < methodCount; m++) {
+            System.arraycopy(overrides[m], 0, overridden, overriddenStart[m], overrides[m].length);
+            for (int o : overrides[m])
+                overriderCounts[o + 1]++;
+        }
+        overriderStart = new int[methodCount + 1];
+        for (int m = 0; m < methodCount; m++)
+            overriderStart[m + 1] = overriderStart[m] + overriderCounts[m + 1];
+        overriders = new int[overridden.length];
+        int[] next = Arrays.copyOf(overriderStart, methodCount);
+        for (int m = 0; m < methodCount; m++) {
+            for (int o : overrides[m])
+                overriders[next[o]++] = m;
+        }
+    }
+
+    public static ClassHierarchyIndex of(Collection<ClassNode> classes) {
+        Builder builder = new Builder();
+        for (ClassNode cn : classes)
+            builder.add(cn);
+        return builder.build();
+    }
+
+    private void intern(String name, List<String> types) {
+        if (!ids.containsKey(name)) {
+            ids.put(name, types.size());
+            types.add(name);
+        }
+    }
+
+    private void numberSubclasses() {
+        int n = names.length;
+        int[] subStart = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            if (superIds[i] >= 0)
+                subStart[superIds[i] + 1]++;
+        }
+        for (int i = 0; i < n; i++)
+            subStart[i + 1] += subStart[i];
+        int[] subclasses = new int[subStart[n]];
+        int[] fill = Arrays.copyOf(subStart, n);
+        for (int i = 0; i < n; i++) {
+            if (superIds[i] >= 0)
+                subclasses[fill[superIds[i]]++] = i;
+        }
+
+        boolean[] visited = new boolean[n];
+        int[] stack = new int[n];
+        int[] cursor = new int[n];
+        int counter = 0;
+        // roots first, anything left over is on a super class cycle and gets numbered from wherever it's entered
+        for (int pass = 0; pass < 2; pass++) {
+            for (int root = 0; root < n; root++) {
+                if (visited[root] || (pass == 0 && superIds[root] >= 0))
+                    continue;
+                int sp = 0;
+                stack[sp++] = root;
+                visited[root] = true;
+                pre[root] = counter++;
+                cursor[root] = subStart[root];
+                while (sp > 0) {
+                    int t = stack[sp - 1];
+                    if (cursor[t] < subStart[t + 1]) {
+                        int s = subclasses[cursor[t]++];
+                        if (!visited[s]) {
+                            visited[s] = true;
+                            pre[s] = counter++;
+                            cursor[s] = subStart[s];
+                            stack[sp++] = s;
+                        }
+                    } else {
+                        end[t] = counter - 1;
+                        sp--;
+                    }
+                }
+            }
+        }
+    }
+
+    private BitSet implemented(int type, byte[] state) {
+        if (state[type] != 0)
+            return implemented[type] != null ? implemented[type] : new BitSet(); // in progress means a cycle
+        state[type] = 1;
+        BitSet inherited = superIds[type] >= 0 ? implemented(superIds[type], state) : null;
+        BitSet set = inherited;
+        for (int j = interfaceStart[type]; j < interfaceStart[type + 1]; j++) {
+            int itf = interfaceIds[j];
+            BitSet of = implemented(itf, state);
+            if (set == inherited)
+                set = inherited == null ? new BitSet() : (BitSet) inherited.clone();
+            if (interfaceRank[itf] >= 0) // not flagged as an interface, only in broken code
+                set.set(interfaceRank[itf]);
+            set.or(of);
+        }
+        implemented[type] = set != null ? set : new BitSet();
+        state[type] = 2;
+        return implemented[type];
+    }
+
+    private int[] findOverridden(int m) {
+        MethodNode mn = methods[m];
+        if ((mn.access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) != 0 || mn.name.charAt(0) == '<')
+            return NONE;
+        String selector = mn.name + mn.desc;
+        int owner = methodOwners[m];
+        List<Integer> result = new ArrayList<>(1);
+        for (int c = superIds[owner], steps = 0; c >= 0 && steps < names.length; c = superIds[c], steps++) {
+            int found = getMethod(c, selector);
+            if (found >= 0 && (methods[found].access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) == 0) {
+                result.add(found);
+                break;
+            }
+        }
+        BitSet itfs = implemented[owner];
+        for (int r = itfs.nextSetBit(0); r >= 0; r = itfs.nextSetBit(r + 1)) {
+            int found = getMethod(rankedInterfaces[r], selector);
+            if (found >= 0 && (methods[found].access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) == 0)
+                result.add(found);
+        }
+        if (result.isEmpty())
+            return NONE;
+        int[] array = new int[result.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = result.get(i);
+        return array;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public int applicationCount() {
+        return applicationCount;
+    }
+
+    /**
+     * @return the type's id, or -1 if it's neither in the container nor a supertype of one of its classes
+     */
+    public int id(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public String getName(int type) {
+        return names[type];
+    }
+
+    public boolean isApplicationClass(int type) {
+        return type < applicationCount;
+    }
+
+    /**
+     * @return the class's access flags, 0 for library types
+     */
+    public int getAccess(int type) {
+        return access[type];
+    }
+
+    public boolean isInterface(int type) {
+        return isInterface[type];
+    }
+
+    /**
+     * @return the super class's id, -1 for library types and {@code java/lang/Object}
+     */
+    public int getSuperClass(int type) {
+        return superIds[type];
+    }
+
+    public int interfaceCount(int type) {
+        return interfaceStart[type + 1] - interfaceStart[type];
+    }
+
+    public int getInterface(int type, int i) {
+        return interfaceIds[interfaceStart[type] + i];
+    }
+
+    /**
+     * @return number of classes that directly extend or implement the type
+     */
+    public int childCount(int type) {
+        return childStart[type + 1] - childStart[type];
+    }
+
+    public int getChild(int type, int i) {
+        return children[childStart[type] + i];
+    }
+
+    /**
+     * @return whether {@code sub} is {@code sup} or extends it, possibly indirectly
+     */
+    public boolean isSubclass(int sub, int sup) {
+        return pre[sup] <= pre[sub] && pre[sub] <= end[sup];
+    }
+
+    /**
+     * @return whether {@code sub} is assignable to {@code sup}, as far as the container's classes tell
+     */
+    public boolean isSubtype(int sub, int sup) {
+        if (sub == sup)
+            return true;
+        if (isInterface[sup])
+            return implemented[sub].get(interfaceRank[sup]);
+        return isSubclass(sub, sup);
+    }
+
+    public boolean isSubtype(String sub, String sup) {
+        if (sub.equals(sup))
+            return true;
+        int a = id(sub), b = id(sup);
+        return a >= 0 && b >= 0 && isSubtype(a, b);
+    }
+
+    /**
+     * Visits every interface the type implements, directly or through its supertypes, most widely implemented
+     * first.
+     */
+    public void forEachInterface(int type, IntConsumer consumer) {
+        BitSet set = implemented[type];
+        for (int r = set.nextSetBit(0); r >= 0; r = set.nextSetBit(r + 1))
+            consumer.accept(rankedInterfaces[r]);
+    }
+
+    /**
+     * @return the type and all its subtypes, nearest first
+     */
+    public int[] getSubtypes(int type) {
+        BitSet visited = new BitSet(names.length);
+        int[] queue = new int[8];
+        int head = 0, tail = 0;
+        queue[tail++] = type;
+        visited.set(type);
+        while (head < tail) {
+            int t = queue[head++];
+            for (int i = childStart[t]; i < childStart[t + 1]; i++) {
+                int c = children[i];
+                if (visited.get(c))
+                    continue;
+                visited.set(c);
+                if (tail == queue.length)
+                    queue = Arrays.copyOf(queue, tail * 2);
+                queue[tail++] = c;
+            }
+        }
+        return Arrays.copyOf(queue, tail);
+    }
+
+    /**
+     * @return the class as parsed, null for library types and classes added by header only
+     */
+    public ClassNode getClassNode(int type) {
+        return type < applicationCount ? nodes[type] : null;
+    }
+
+    public boolean declaresField(int type, String name, String desc) {
+        ClassNode cn = getClassNode(type);
+        if (cn == null)
+            return false;
+        for (FieldNode fn : cn.fields) {
+            if (fn.name.equals(name) && fn.desc.equals(desc))
+                return true;
+        }
+        return false;
+    }
+
+    public int methodCount() {
+        return methods.length;
+    }
+
+    /**
+     * @return id of the method declared in the type, or -1
+     */
+    public int getMethod(int type, String name, String desc) {
+        return getMethod(type, name + desc);
+    }
+
+    public int getMethod(int type, String selector) {
+        Integer id = methodIds.get(names[type] + '.' + selector);
+        return id == null ? -1 : id;
+    }
+
+    public int getMethod(String owner, String name, String desc) {
+        Integer id = methodIds.get(owner + '.' + name + desc);
+        return id == null ? -1 : id;
+    }
+
+    public MethodNode getMethodNode(int method) {
+        return methods[method];
+    }
+
+    public int getMethodOwner(int method) {
+        return methodOwners[method];
+    }
+
+    /**
+     * @return number of methods this one overrides or implements: the nearest in its super classes and those of
+     * its interfaces
+     */
+    public int overriddenCount(int method) {
+        return overriddenStart[method + 1] - overriddenStart[method];
+    }
+
+    public int getOverridden(int method, int i) {
+        return overridden[overriddenStart[method] + i];
+    }
+
+    /**
+     * @return whether the type extends or implements something outside the container other than Object
+     */
+    public boolean hasLibrarySupertype(int type) {
+        for (int c = type; c >= 0; c = superIds[c]) {
+            if (!isApplicationClass(c) && !names[c].equals("java/lang/Object"))
+                return true;
+        }
+        BitSet set = implemented[type];
+        for (int r = set.nextSetBit(0); r >= 0; r = set.nextSetBit(r + 1)) {
+            if (!isApplicationClass(rankedInterfaces[r]))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the method may be called by the library as an override of one of its methods: it overrides
+     * nothing in the container and is either one of Object's methods or declared in a type with a library supertype
+     */
+    public boolean mayOverrideLibrary(int method) {
+        MethodNode mn = methods[method];
+        return (mn.access & Opcodes.ACC_STATIC) == 0 && !mn.name.startsWith("<") && overriddenCount(method) == 0
+                && (isObjectMethod(mn.name + mn.desc) || hasLibrarySupertype(methodOwners[method]));
+    }
+
+    public static boolean isObjectMethod(String selector) {
+        return OBJECT_METHODS.contains(selector);
+    }
+
+    public int overriderCount(int method) {
+        return overriderStart[method + 1] - overriderStart[method];
+    }
+
+    public int getOverrider(int method, int i) {
+        return overriders[overriderStart[method] + i];
+    }
+
+    @Override
+    public String toString() {
+        return applicationCount + " classes, " + (names.length - applicationCount) + " library supertypes, "
+                + rankedInterfaces.length + " interfaces, " + methods.length + " methods, " + overridden.length + " overrides";
+    }
+}
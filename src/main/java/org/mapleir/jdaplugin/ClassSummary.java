@@ -0,0 +1,363 @@
+package org.mapleir.jdaplugin;
+
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.code.CodeUnit;
+import org.mapleir.ir.code.Expr;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.expr.ConstantExpr;
+import org.mapleir.ir.code.expr.FieldLoadExpr;
+import org.mapleir.ir.code.expr.invoke.InitialisedObjectExpr;
+import org.mapleir.ir.code.expr.invoke.InvocationExpr;
+import org.mapleir.ir.code.stmt.FieldStoreStmt;
+import org.mapleir.stdlib.util.JavaDesc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * The parts of a class' IR that search needs: its constants and the members it references, each tagged with
+ * the index of the method it occurs in. Summaries are small enough to keep for every class and to persist.
+ */
+public final class ClassSummary {
+    public static final byte INVOKE_STATIC = 0;
+    public static final byte INVOKE_VIRTUAL = 1;
+    public static final byte INVOKE_INTERFACE = 2;
+    public static final byte INVOKE_SPECIAL = 3;
+    public static final byte INVOKE_DYNAMIC = 4;
+    public static final byte FIELD_GET = 5;
+    public static final byte FIELD_PUT = 6;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_INT = 1;
+    private static final byte TAG_LONG = 2;
+    private static final byte TAG_FLOAT = 3;
+    private static final byte TAG_DOUBLE = 4;
+    private static final byte TAG_STRING = 5;
+    private static final byte TAG_OTHER = 6; // stored by its string form
+
+    public final String name;
+    public final String[] methodNames;
+    public final String[] methodDescs;
+
+    public final Object[] constants;
+    public final int[] constantMethods;
+
+    public final byte[] refKinds;
+    public final String[] refOwners;
+    public final String[] refNames;
+    public final String[] refDescs;
+    public final int[] refMethods;
+
+    private ClassSummary(String name, String[] methodNames, String[] methodDescs, Object[] constants, int[] constantMethods,
+                         byte[] refKinds, String[] refOwners, String[] refNames, String[] refDescs, int[] refMethods) {
+        this.name = name;
+        this.methodNames = methodNames;
+        this.methodDescs = methodDescs;
+        this.constants = constants;
+        this.constantMethods = constantMethods;
+        this.refKinds = refKinds;
+        this.refOwners = refOwners;
+        this.refNames = refNames;
+        this.refDescs = refDescs;
+        this.refMethods = refMethods;
+    }
+
+    public int constantCount() {
+        return constants.length;
+    }
+
+    public int refCount() {
+        return refKinds.length;
+    }
+
+    public static JavaDesc.DescType descType(byte refKind) {
+        return refKind == FIELD_GET || refKind == FIELD_PUT ? JavaDesc.DescType.FIELD : JavaDesc.DescType.METHOD;
+    }
+
+    /**
+     * @param methods the methods of the class, in declaration order
+     * @param cfgs    ssa-form cfgs of {@code methods}, null where the cfg could not be built
+     */
+    public static ClassSummary create(String name, List<MethodNode> methods, List<ControlFlowGraph> cfgs) {
+        Builder b = new Builder(name, methods.size());
+        for (int i = 0; i < methods.size(); i++) {
+            MethodNode m = methods.get(i);
+            b.methodNames[i] = m.getName();
+            b.methodDescs[i] = m.getDesc();
+            ControlFlowGraph cfg = cfgs.get(i);
+            if (cfg == null)
+                continue;
+            for (BasicBlock block : cfg.vertices()) {
+                for (Stmt stmt : block) {
+                    if (stmt instanceof FieldStoreStmt) {
+                        FieldStoreStmt fss = (FieldStoreStmt) stmt;
+                        b.addRef(FIELD_PUT, fss.getOwner(), fss.getName(), fss.getDesc(), i);
+                    }
+                    for (CodeUnit cu : stmt.enumerateExecutionOrder()) {
+                        if (cu instanceof Expr) {
+                            b.visit((Expr) cu, i);
+                        }
+                    }
+                }
+            }
+        }
+        return b.build();
+    }
+
+    static final class Builder {
+        final String name;
+        final String[] methodNames;
+        final String[] methodDescs;
+        final List<Object> constants = new ArrayList<>();
+        final List<Integer> constantMethods = new ArrayList<>();
+        final List<Byte> refKinds = new ArrayList<>();
+        final List<String> refOwners = new ArrayList<>();
+        final List<String> refNames = new ArrayList<>();
+        final List<String> refDescs = new ArrayList<>();
+        final List<Integer> refMethods = new ArrayList<>();
+
+        Builder(String name, int methodCount) {
+            this.name = name;
+            methodNames = new String[methodCount];
+            methodDescs = new String[methodCount];
+        }
+
+        void visit(Expr e, int method) {
+            if (e instanceof ConstantExpr) {
+                addConstant(((ConstantExpr) e).getConstant(), method);
+            } else if (e instanceof InvocationExpr) {
+                InvocationExpr ie = (InvocationExpr) e;
+                addRef(invokeKind(ie.getCallType()), ie.getOwner(), ie.getName(), ie.getDesc(), method);
+            } else if (e instanceof InitialisedObjectExpr) {
+                InitialisedObjectExpr ioe = (InitialisedObjectExpr) e;
+                addRef(INVOKE_SPECIAL, ioe.getOwner(), "<init>", ioe.getDesc(), method);
+            } else if (e instanceof FieldLoadExpr) {
+                FieldLoadExpr fle = (FieldLoadExpr) e;
+                addRef(FIELD_GET, fle.getOwner(), fle.getName(), fle.getDesc(), method);
+            }
+        }
+
+        void addConstant(Object cst, int method) {
+            constants.add(normalise(cst));
+            constantMethods.add(method);
+        }
+
+        void addRef(byte kind, String owner, String name, String desc, int method) {
+            refKinds.add(kind);
+            refOwners.add(owner == null ? "" : owner);
+            refNames.add(name == null ? "" : name);
+            refDescs.add(desc == null ? "" : desc);
+            refMethods.add(method);
+        }
+
+        ClassSummary build() {
+            byte[] kinds = new byte[refKinds.size()];
+            for (int i = 0; i < kinds.length; i++)
+                kinds[i] = refKinds.get(i);
+            return new ClassSummary(name, methodNames, methodDescs, constants.toArray(), toIntArray(constantMethods),
+                    kinds, refOwners.toArray(new String[0]), refNames.toArray(new String[0]), refDescs.toArray(new String[0]),
+                    toIntArray(refMethods));
+        }
+    }
+
+    private static byte invokeKind(InvocationExpr.CallType callType) {
+        switch (callType) {
+            case STATIC:
+                return INVOKE_STATIC;
+            case INTERFACE:
+                return INVOKE_INTERFACE;
+            case SPECIAL:
+                return INVOKE_SPECIAL;
+            case DYNAMIC:
+                return INVOKE_DYNAMIC;
+            default:
+                return INVOKE_VIRTUAL;
+        }
+    }
+
+    private static Object normalise(Object cst) {
+        if (cst == null || cst instanceof String || cst instanceof Integer || cst instanceof Long
+                || cst instanceof Float || cst instanceof Double)
+            return cst;
+        if (cst instanceof Byte || cst instanceof Short)
+            return ((Number) cst).intValue();
+        return String.valueOf(cst);
+    }
+
+    private static int[] toIntArray(List<Integer> list) {
+        int[] arr = new int[list.size()];
+        for (int i = 0; i < arr.length; i++)
+            arr[i] = list.get(i);
+        return arr;
+    }
+
+    // ---- serialization: a string table followed by methods, constants and refs, strings as utf-16 ----
+
+    public byte[] serialize() {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(64 + constants.length * 8 + refKinds.length * 16);
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            Map<String, Integer> strings = new LinkedHashMap<>();
+            intern(strings, name);
+            for (int i = 0; i < methodNames.length; i++) {
+                intern(strings, methodNames[i]);
+                intern(strings, methodDescs[i]);
+            }
+            for (int i = 0; i < refKinds.length; i++) {
+                intern(strings, refOwners[i]);
+                intern(strings, refNames[i]);
+                intern(strings, refDescs[i]);
+            }
+            out.writeInt(strings.size());
+            for (String s : strings.keySet()) {
+                out.writeInt(s.length());
+                out.writeChars(s);
+            }
+
+            out.writeInt(strings.get(name));
+            out.writeInt(methodNames.length);
+            for (int i = 0; i < methodNames.length; i++) {
+                out.writeInt(strings.get(methodNames[i]));
+                out.writeInt(strings.get(methodDescs[i]));
+            }
+
+            out.writeInt(constants.length);
+            for (int i = 0; i < constants.length; i++) {
+                Object cst = constants[i];
+                if (cst == null) {
+                    out.writeByte(TAG_NULL);
+                } else if (cst instanceof Integer) {
+                    out.writeByte(TAG_INT);
+                    out.writeInt((Integer) cst);
+                } else if (cst instanceof Long) {
+                    out.writeByte(TAG_LONG);
+                    out.writeLong((Long) cst);
+                } else if (cst instanceof Float) {
+                    out.writeByte(TAG_FLOAT);
+                    out.writeFloat((Float) cst);
+                } else if (cst instanceof Double) {
+                    out.writeByte(TAG_DOUBLE);
+                    out.writeDouble((Double) cst);
+                } else {
+                    String s = String.valueOf(cst);
+                    out.writeByte(cst instanceof String ? TAG_STRING : TAG_OTHER);
+                    out.writeInt(s.length());
+                    out.writeChars(s);
+                }
+                out.writeInt(constantMethods[i]);
+            }
+
+            out.writeInt(refKinds.length);
+            for (int i = 0; i < refKinds.length; i++) {
+                out.writeByte(refKinds[i]);
+                out.writeInt(strings.get(refOwners[i]));
+                out.writeInt(strings.get(refNames[i]));
+                out.writeInt(strings.get(refDescs[i]));
+                out.writeInt(refMethods[i]);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // can't happen with an in-memory stream
+        }
+        return bos.toByteArray();
+    }
+
+    private static void intern(Map<String, Integer> strings, String s) {
+        if (!strings.containsKey(s))
+            strings.put(s, strings.size());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the buffer doesn't contain a well-formed summary
+     */
+    public static ClassSummary deserialize(ByteBuffer buf) {
+        try {
+            String[] strings = new String[checkCount(buf, buf.getInt())];
+            for (int i = 0; i < strings.length; i++)
+                strings[i] = readChars(buf);
+
+            String name = strings[buf.getInt()];
+            int methodCount = checkCount(buf, buf.getInt());
+            String[] methodNames = new String[methodCount];
+            String[] methodDescs = new String[methodCount];
+            for (int i = 0; i < methodCount; i++) {
+                methodNames[i] = strings[buf.getInt()];
+                methodDescs[i] = strings[buf.getInt()];
+            }
+
+            int constantCount = checkCount(buf, buf.getInt());
+            Object[] constants = new Object[constantCount];
+            int[] constantMethods = new int[constantCount];
+            for (int i = 0; i < constantCount; i++) {
+                byte tag = buf.get();
+                switch (tag) {
+                    case TAG_NULL:
+                        constants[i] = null;
+                        break;
+                    case TAG_INT:
+                        constants[i] = buf.getInt();
+                        break;
+                    case TAG_LONG:
+                        constants[i] = buf.getLong();
+                        break;
+                    case TAG_FLOAT:
+                        constants[i] = buf.getFloat();
+                        break;
+                    case TAG_DOUBLE:
+                        constants[i] = buf.getDouble();
+                        break;
+                    case TAG_STRING:
+                    case TAG_OTHER:
+                        constants[i] = readChars(buf);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("bad constant tag " + tag);
+                }
+                constantMethods[i] = checkMethod(buf.getInt(), methodCount);
+            }
+
+            int refCount = checkCount(buf, buf.getInt());
+            byte[] refKinds = new byte[refCount];
+            String[] refOwners = new String[refCount];
+            String[] refNames = new String[refCount];
+            String[] refDescs = new String[refCount];
+            int[] refMethods = new int[refCount];
+            for (int i = 0; i < refCount; i++) {
+                refKinds[i] = buf.get();
+                if (refKinds[i] < INVOKE_STATIC || refKinds[i] > FIELD_PUT)
+                    throw new IllegalArgumentException("bad ref kind " + refKinds[i]);
+                refOwners[i] = strings[buf.getInt()];
+                refNames[i] = strings[buf.getInt()];
+                refDescs[i] = strings[buf.getInt()];
+                refMethods[i] = checkMethod(buf.getInt(), methodCount);
+            }
+            return new ClassSummary(name, methodNames, methodDescs, constants, constantMethods,
+                    refKinds, refOwners, refNames, refDescs, refMethods);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("truncated or corrupt summary", e);
+        }
+    }
+
+    private static String readChars(ByteBuffer buf) {
+        char[] chars = new char[checkCount(buf, buf.getInt())];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = buf.getChar();
+        return new String(chars);
+    }
+
+    private static int checkCount(ByteBuffer buf, int count) {
+        if (count < 0 || count > buf.remaining())
+            throw new IllegalArgumentException("bad count " + count);
+        return count;
+    }
+
+    private static int checkMethod(int method, int methodCount) {
+        if (method < 0 || method >= methodCount)
+            throw new IllegalArgumentException("bad method index " + method);
+        return method;
+    }
+}
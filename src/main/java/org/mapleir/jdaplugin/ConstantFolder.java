@@ -0,0 +1,324 @@
+package org.mapleir.jdaplugin;
+
+import org.mapleir.ir.code.Expr;
+import org.mapleir.ir.code.expr.*;
+import org.mapleir.ir.code.stmt.ConditionalJumpStmt;
+import org.objectweb.asm.Type;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Folds trees of arithmetic, negation, numeric casts and comparisons over constants with plain Java operators
+ * rather than the evaluator's reflectively generated functors. The same operations back the evaluator's
+ * {@link PrecompiledFunctorFactory}. Anything not handled here is left to the {@code ExpressionEvaluator}.
+ *
+ * Results are memoized by a structural hash of the tree (operators, types and constant bit patterns, two
+ * independent 64-bit hashes), since obfuscators repeat the same opaque arithmetic throughout a jar. The memo is
+ * a fixed size direct-mapped table of {@code mapleir.fold.memo.size} entries, 4096 by default.
+ */
+public class ConstantFolder {
+    public static final String MEMO_SIZE_PROPERTY = "mapleir.fold.memo.size";
+
+    private final LongAdder folded = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+    private final LongAdder memoHits = new LongAdder();
+    // racy on purpose: entries are immutable, a lost store only costs a recomputation
+    private final Memo[] memo;
+
+    public ConstantFolder() {
+        this(Integer.getInteger(MEMO_SIZE_PROPERTY, 4096));
+    }
+
+    /**
+     * @param memoSize rounded up to a power of two, 0 disables the memo
+     */
+    public ConstantFolder(int memoSize) {
+        memo = new Memo[memoSize <= 0 ? 0 : Integer.highestOneBit(Math.max(1, memoSize - 1)) << 1];
+    }
+
+    /**
+     * @return constant equivalent to {@code e}, or null if it can't be folded here
+     */
+    public ConstantExpr fold(Expr e) {
+        if (!isOperation(e) || !isClosed(e))
+            return null;
+        Object result = null;
+        Memo m = null;
+        long h1 = 0, h2 = 0;
+        int slot = 0;
+        if (memo.length > 0) {
+            h1 = hash(e, 0x9E3779B97F4A7C15L);
+            h2 = hash(e, 0xC2B2AE3D27D4EB4FL);
+            slot = (int) (h1 ^ (h1 >>> 32)) & (memo.length - 1);
+            m = memo[slot];
+        }
+        if (m != null && m.h1 == h1 && m.h2 == h2) {
+            memoHits.increment();
+            result = m.value;
+        } else {
+            result = compute(e);
+            if (result != null && memo.length > 0)
+                memo[slot] = new Memo(h1, h2, result);
+        }
+        if (result == null) {
+            deferred.increment();
+            return null;
+        }
+        folded.increment();
+        return new ConstantExpr(result, e.getType());
+    }
+
+    private static boolean isOperation(Expr e) {
+        return e instanceof ArithmeticExpr || e instanceof NegationExpr || e instanceof CastExpr
+                || e instanceof ComparisonExpr;
+    }
+
+    // only constants below, so the value doesn't depend on any local
+    private static boolean isClosed(Expr e) {
+        if (e instanceof ArithmeticExpr) {
+            ArithmeticExpr ae = (ArithmeticExpr) e;
+            return isClosed(ae.getLeft()) && isClosed(ae.getRight());
+        } else if (e instanceof NegationExpr) {
+            return isClosed(((NegationExpr) e).getExpression());
+        } else if (e instanceof CastExpr) {
+            return isClosed(((CastExpr) e).getExpression());
+        } else if (e instanceof ComparisonExpr) {
+            ComparisonExpr ce = (ComparisonExpr) e;
+            return isClosed(ce.getLeft()) && isClosed(ce.getRight());
+        }
+        return isNumber(e);
+    }
+
+    private static long hash(Expr e, long h) {
+        if (e instanceof ConstantExpr) {
+            Object cst = ((ConstantExpr) e).getConstant();
+            if (cst instanceof Integer)
+                return mix(mix(h, 'I'), (Integer) cst);
+            if (cst instanceof Long)
+                return mix(mix(h, 'J'), (Long) cst);
+            if (cst instanceof Float)
+                return mix(mix(h, 'F'), Float.floatToRawIntBits((Float) cst));
+            return mix(mix(h, 'D'), Double.doubleToRawLongBits((Double) cst));
+        }
+        h = mix(h, e.getType().getSort());
+        if (e instanceof ArithmeticExpr) {
+            ArithmeticExpr ae = (ArithmeticExpr) e;
+            h = mix(h, 'A' + 31 * ae.getOperator().ordinal());
+            return hash(ae.getRight(), hash(ae.getLeft(), h));
+        } else if (e instanceof NegationExpr) {
+            return hash(((NegationExpr) e).getExpression(), mix(h, 'N'));
+        } else if (e instanceof CastExpr) {
+            return hash(((CastExpr) e).getExpression(), mix(h, 'C'));
+        } else {
+            ComparisonExpr ce = (ComparisonExpr) e;
+            h = mix(h, 'P' + 31 * ce.getComparisonType().ordinal());
+            return hash(ce.getRight(), hash(ce.getLeft(), h));
+        }
+    }
+
+    private static long mix(long h, long v) {
+        h = (h ^ v) * 0xFF51AFD7ED558CCDL;
+        return h ^ (h >>> 33);
+    }
+
+    private static boolean isNumber(Expr e) {
+        if (!(e instanceof ConstantExpr))
+            return false;
+        Object cst = ((ConstantExpr) e).getConstant();
+        return cst instanceof Integer || cst instanceof Long || cst instanceof Float || cst instanceof Double;
+    }
+
+    private static Object value(Expr e) {
+        return e instanceof ConstantExpr ? ((ConstantExpr) e).getConstant() : compute(e);
+    }
+
+    // null if some part can't be folded here
+    private static Object compute(Expr e) {
+        if (e instanceof ArithmeticExpr) {
+            ArithmeticExpr ae = (ArithmeticExpr) e;
+            return arithmetic(ae.getOperator(), e.getType(), value(ae.getLeft()), value(ae.getRight()));
+        } else if (e instanceof NegationExpr) {
+            return negate(e.getType(), value(((NegationExpr) e).getExpression()));
+        } else if (e instanceof CastExpr) {
+            return cast(e.getType(), value(((CastExpr) e).getExpression()));
+        } else if (e instanceof ComparisonExpr) {
+            ComparisonExpr ce = (ComparisonExpr) e;
+            return compare(ce.getComparisonType(), value(ce.getLeft()), value(ce.getRight()));
+        }
+        return null;
+    }
+
+    static Object arithmetic(ArithmeticExpr.Operator op, Type type, Object left, Object right) {
+        if (!(left instanceof Number) || !(right instanceof Number))
+            return null;
+        switch (type.getSort()) {
+            case Type.INT: {
+                if (!(left instanceof Integer) || !(right instanceof Integer))
+                    return null;
+                int a = (Integer) left, b = (Integer) right;
+                switch (op) {
+                    case ADD: return a + b;
+                    case SUB: return a - b;
+                    case MUL: return a * b;
+                    case DIV: return b == 0 ? null : a / b;
+                    case REM: return b == 0 ? null : a % b;
+                    case SHL: return a << b;
+                    case SHR: return a >> b;
+                    case USHR: return a >>> b;
+                    case OR: return a | b;
+                    case AND: return a & b;
+                    case XOR: return a ^ b;
+                }
+                return null;
+            }
+            case Type.LONG: {
+                if (!(left instanceof Long) || !(right instanceof Long || right instanceof Integer))
+                    return null;
+                long a = (Long) left, b = ((Number) right).longValue();
+                switch (op) {
+                    case ADD: return a + b;
+                    case SUB: return a - b;
+                    case MUL: return a * b;
+                    case DIV: return b == 0 ? null : a / b;
+                    case REM: return b == 0 ? null : a % b;
+                    case SHL: return a << (int) b;
+                    case SHR: return a >> (int) b;
+                    case USHR: return a >>> (int) b;
+                    case OR: return a | b;
+                    case AND: return a & b;
+                    case XOR: return a ^ b;
+                }
+                return null;
+            }
+            case Type.FLOAT: {
+                if (!(left instanceof Float) || !(right instanceof Float))
+                    return null;
+                float a = (Float) left, b = (Float) right;
+                switch (op) {
+                    case ADD: return a + b;
+                    case SUB: return a - b;
+                    case MUL: return a * b;
+                    case DIV: return a / b;
+                    case REM: return a % b;
+                    default: return null;
+                }
+            }
+            case Type.DOUBLE: {
+                if (!(left instanceof Double) || !(right instanceof Double))
+                    return null;
+                double a = (Double) left, b = (Double) right;
+                switch (op) {
+                    case ADD: return a + b;
+                    case SUB: return a - b;
+                    case MUL: return a * b;
+                    case DIV: return a / b;
+                    case REM: return a % b;
+                    default: return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    static Object negate(Type type, Object v) {
+        switch (type.getSort()) {
+            case Type.INT: return v instanceof Integer ? -(Integer) v : null;
+            case Type.LONG: return v instanceof Long ? -(Long) v : null;
+            case Type.FLOAT: return v instanceof Float ? -(Float) v : null;
+            case Type.DOUBLE: return v instanceof Double ? -(Double) v : null;
+        }
+        return null;
+    }
+
+    static Object cast(Type type, Object o) {
+        if (!(o instanceof Integer || o instanceof Long || o instanceof Float || o instanceof Double))
+            return null;
+        Number v = (Number) o;
+        // narrowing to byte/short/char is left to the evaluator, which knows how it wants those represented
+        switch (type.getSort()) {
+            case Type.INT: return v.intValue();
+            case Type.LONG: return v.longValue();
+            case Type.FLOAT: return v.floatValue();
+            case Type.DOUBLE: return v.doubleValue();
+        }
+        return null;
+    }
+
+    static Object compare(ComparisonExpr.ValueComparisonType type, Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            return Long.compare((Long) left, (Long) right);
+        }
+        double a, b;
+        if (left instanceof Float && right instanceof Float) {
+            a = (Float) left;
+            b = (Float) right;
+        } else if (left instanceof Double && right instanceof Double) {
+            a = (Double) left;
+            b = (Double) right;
+        } else {
+            return null;
+        }
+        if (Double.isNaN(a) || Double.isNaN(b)) {
+            // fcmpl/dcmpl give -1, fcmpg/dcmpg give 1
+            switch (type) {
+                case LT: return -1;
+                case GT: return 1;
+                default: return null;
+            }
+        }
+        return a < b ? -1 : a > b ? 1 : 0;
+    }
+
+    /**
+     * Conditional jumps only compare ints (the rest goes through lcmp/fcmp/dcmp first) or references.
+     */
+    static Boolean branch(ConditionalJumpStmt.ComparisonType type, Object left, Object right) {
+        if (!(left instanceof Integer) || !(right instanceof Integer))
+            return null;
+        int a = (Integer) left, b = (Integer) right;
+        switch (type) {
+            case EQ: return a == b;
+            case NE: return a != b;
+            case LT: return a < b;
+            case GE: return a >= b;
+            case GT: return a > b;
+            case LE: return a <= b;
+        }
+        return null;
+    }
+
+    /**
+     * @return number of expressions folded here, including memo hits
+     */
+    public long getFolded() {
+        return folded.sum();
+    }
+
+    /**
+     * @return number of constant expressions of a handled shape left to the evaluator, e.g. division by zero
+     */
+    public long getDeferred() {
+        return deferred.sum();
+    }
+
+    public long getMemoHits() {
+        return memoHits.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d folded (%d from the memo), %d deferred", getFolded(), getMemoHits(), getDeferred());
+    }
+
+    private static final class Memo {
+        final long h1;
+        final long h2;
+        final Object value;
+
+        Memo(long h1, long h2, Object value) {
+            this.h1 = h1;
+            this.h2 = h2;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package org.mapleir.jdaplugin;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index over the constants of a container. Distinct constants are interned by their string form
+ * (which is what constant search has always matched on) and indexed by trigram, numeric constants are
+ * additionally kept sorted by value for range queries. Classes can be added and removed incrementally,
+ * removed values are tombstoned and the index compacts itself once they dominate.
+ */
+public class ConstantIndex {
+    public enum Match {
+        SUBSTRING, PREFIX, EXACT
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // value id -> string form, null once the value is no longer used by any class
+    private final List<String> texts = new ArrayList<>();
+    // value id -> class name -> number of occurrences
+    private final List<Map<String, Integer>> occurrences = new ArrayList<>();
+    // typed key (see key()) -> value id, so "5" and 5 are different values with the same text
+    private final Map<String, Integer> ids = new HashMap<>();
+    // trigram -> ascending value ids, may contain dead ids
+    private final Map<Long, IntList> trigrams = new HashMap<>();
+    private final NavigableMap<Long, Integer> integral = new TreeMap<>();
+    // floats are kept apart from doubles, 0.1f and 0.1 print the same but aren't the same value
+    private final NavigableMap<Double, Integer> floats = new TreeMap<>();
+    private final NavigableMap<Double, Integer> doubles = new TreeMap<>();
+    private int deadValues;
+
+    public void add(ClassSummary summary) {
+        lock.writeLock().lock();
+        try {
+            for (Object cst : summary.constants) {
+                String text = String.valueOf(cst);
+                Integer id = ids.get(key(cst, text));
+                if (id == null) {
+                    id = intern(text, cst);
+                }
+                occurrences.get(id).merge(summary.name, 1, Integer::sum);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(ClassSummary summary) {
+        lock.writeLock().lock();
+        try {
+            for (Object cst : summary.constants) {
+                String text = String.valueOf(cst);
+                String key = key(cst, text);
+                Integer id = ids.get(key);
+                if (id == null)
+                    continue;
+                Map<String, Integer> occ = occurrences.get(id);
+                if (occ.remove(summary.name) != null && occ.isEmpty()) {
+                    ids.remove(key);
+                    texts.set(id, null);
+                    if (isIntegral(cst)) {
+                        integral.remove(((Number) cst).longValue(), id);
+                    } else if (isFloating(cst)) {
+                        floating(cst).remove(((Number) cst).doubleValue(), id);
+                    }
+                    deadValues++;
+                }
+            }
+            if (deadValues > 1024 && deadValues > texts.size() / 2) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int intern(String text, Object cst) {
+        int id = texts.size();
+        texts.add(text);
+        occurrences.add(new HashMap<>(4));
+        ids.put(key(cst, text), id);
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            trigrams.computeIfAbsent(trigram(text, i), k -> new IntList()).addIfLast(id);
+        }
+        if (isIntegral(cst)) {
+            integral.put(((Number) cst).longValue(), id);
+        } else if (isFloating(cst)) {
+            floating(cst).put(((Number) cst).doubleValue(), id);
+        }
+        return id;
+    }
+
+    private static boolean isIntegral(Object cst) {
+        return cst instanceof Integer || cst instanceof Long;
+    }
+
+    private static boolean isFloating(Object cst) {
+        return cst instanceof Float || cst instanceof Double;
+    }
+
+    private NavigableMap<Double, Integer> floating(Object cst) {
+        return cst instanceof Float ? floats : doubles;
+    }
+
+    private static String key(Object cst, String text) {
+        return (isIntegral(cst) ? 'I' : cst instanceof Float ? 'F' : cst instanceof Double ? 'D' : 'S') + text;
+    }
+
+    private void compact() {
+        List<String> oldTexts = new ArrayList<>(texts);
+        List<Map<String, Integer>> oldOccurrences = new ArrayList<>(occurrences);
+        Map<Integer, Object> numeric = new HashMap<>();
+        for (Map.Entry<Long, Integer> e : integral.entrySet())
+            numeric.put(e.getValue(), e.getKey());
+        for (Map.Entry<Double, Integer> e : floats.entrySet())
+            numeric.put(e.getValue(), e.getKey().floatValue());
+        for (Map.Entry<Double, Integer> e : doubles.entrySet())
+            numeric.put(e.getValue(), e.getKey());
+        texts.clear();
+        occurrences.clear();
+        ids.clear();
+        trigrams.clear();
+        integral.clear();
+        floats.clear();
+        doubles.clear();
+        deadValues = 0;
+        for (int i = 0; i < oldTexts.size(); i++) {
+            String text = oldTexts.get(i);
+            if (text == null)
+                continue;
+            int id = intern(text, numeric.get(i));
+            occurrences.set(id, oldOccurrences.get(i));
+        }
+    }
+
+    /**
+     * @return class name -> number of matching constants in that class
+     */
+    public Map<String, Integer> find(String needle, Match match) {
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> result = new HashMap<>();
+            if (match == Match.EXACT) {
+                for (char type : new char[]{'S', 'I', 'F', 'D'}) {
+                    Integer id = ids.get(type + needle);
+                    if (id != null)
+                        collect(id, result);
+                }
+                return result;
+            }
+            if (needle.length() < 3) {
+                // too short for trigrams, but there are far fewer distinct values than constants
+                for (int id = 0; id < texts.size(); id++) {
+                    if (matches(texts.get(id), needle, match))
+                        collect(id, result);
+                }
+                return result;
+            }
+            IntList[] lists = new IntList[needle.length() - 2];
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = trigrams.get(trigram(needle, i));
+                if (lists[i] == null)
+                    return result;
+            }
+            Arrays.sort(lists, Comparator.comparingInt(l -> l.size));
+            IntList smallest = lists[0];
+            candidates:
+            for (int i = 0; i < smallest.size; i++) {
+                int id = smallest.data[i];
+                for (int j = 1; j < lists.length; j++) {
+                    if (!lists[j].contains(id))
+                        continue candidates;
+                }
+                if (matches(texts.get(id), needle, match))
+                    collect(id, result);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return class name -> number of numeric constants within {@code [from, to]}
+     */
+    public Map<String, Integer> findInRange(double from, double to) {
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> result = new HashMap<>();
+            if (from > to)
+                return result;
+            long lo = from <= Long.MIN_VALUE ? Long.MIN_VALUE : (long) Math.ceil(from);
+            long hi = to >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) Math.floor(to);
+            if (lo <= hi) {
+                for (int id : integral.subMap(lo, true, hi, true).values())
+                    collect(id, result);
+            }
+            for (int id : floats.subMap(from, true, to, true).values())
+                collect(id, result);
+            for (int id : doubles.subMap(from, true, to, true).values())
+                collect(id, result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int distinctValues() {
+        lock.readLock().lock();
+        try {
+            return ids.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void collect(int id, Map<String, Integer> result) {
+        for (Map.Entry<String, Integer> e : occurrences.get(id).entrySet())
+            result.merge(e.getKey(), e.getValue(), Integer::sum);
+    }
+
+    private static boolean matches(String text, String needle, Match match) {
+        if (text == null)
+            return false;
+        return match == Match.PREFIX ? text.startsWith(needle) : text.contains(needle);
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+}
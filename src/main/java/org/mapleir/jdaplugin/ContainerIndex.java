@@ -0,0 +1,103 @@
+package org.mapleir.jdaplugin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Searchable facts about the classes of one {@link club.bytecode.the.jda.FileContainer}, built during analysis
+ * (or restored from the {@link AnalysisDiskCache}) independently of whether the IR is still resident.
+ * The content hash of each class is kept too, so the index can be carried over when the container is reopened.
+ */
+public class ContainerIndex {
+    private final Map<String, ClassSummary> summaries = new ConcurrentHashMap<>();
+    private final Map<String, String> contentHashes = new ConcurrentHashMap<>();
+    private final ConstantIndex constants = new ConstantIndex();
+    private final SymbolIndex symbols = new SymbolIndex();
+    private volatile ClassHierarchyIndex hierarchy;
+
+    public synchronized void add(ClassSummary summary) {
+        ClassSummary old = summaries.put(summary.name, summary);
+        if (old != null) {
+            constants.remove(old);
+        }
+        constants.add(summary);
+        symbols.add(summary);
+    }
+
+    public synchronized void remove(String className) {
+        contentHashes.remove(className);
+        ClassSummary old = summaries.remove(className);
+        if (old != null) {
+            constants.remove(old);
+            symbols.remove(className);
+        }
+    }
+
+    /**
+     * Removes every class not in {@code classNames}.
+     *
+     * @return number of classes removed
+     */
+    public synchronized int retainAll(Set<String> classNames) {
+        int removed = 0;
+        for (String name : new ArrayList<>(contentHashes.keySet())) {
+            if (!classNames.contains(name)) {
+                remove(name);
+                removed++;
+            }
+        }
+        for (String name : new ArrayList<>(summaries.keySet())) {
+            if (!classNames.contains(name)) {
+                remove(name);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public void setContentHash(String className, String hash) {
+        contentHashes.put(className, hash);
+    }
+
+    public String getContentHash(String className) {
+        return contentHashes.get(className);
+    }
+
+    public boolean contains(String className) {
+        return summaries.containsKey(className);
+    }
+
+    public ClassSummary get(String className) {
+        return summaries.get(className);
+    }
+
+    public Collection<ClassSummary> summaries() {
+        return summaries.values();
+    }
+
+    public ConstantIndex getConstants() {
+        return constants;
+    }
+
+    public SymbolIndex getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return the hierarchy of the container's classes, or null before it's been parsed
+     */
+    public ClassHierarchyIndex getHierarchy() {
+        return hierarchy;
+    }
+
+    public void setHierarchy(ClassHierarchyIndex hierarchy) {
+        this.hierarchy = hierarchy;
+    }
+
+    public int size() {
+        return summaries.size();
+    }
+}
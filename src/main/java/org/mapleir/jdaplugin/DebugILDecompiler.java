@@ -3,10 +3,7 @@ package org.mapleir.jdaplugin;
 import club.bytecode.the.jda.FileContainer;
 import club.bytecode.the.jda.api.JDANamespace;
 import club.bytecode.the.jda.decompilers.JDADecompiler;
-import org.mapleir.ir.algorithms.BoissinotDestructor;
-import org.mapleir.ir.algorithms.LocalsReallocator;
 import org.mapleir.ir.cfg.ControlFlowGraph;
-import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
 import org.mapleir.ir.printer.ClassPrinter;
 import org.mapleir.ir.printer.FieldNodePrinter;
 import org.mapleir.ir.printer.MethodNodePrinter;
@@ -16,25 +13,40 @@ import org.mapleir.stdlib.util.TabbedStringWriter;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
 
+import java.util.ArrayList;
+
 public class DebugILDecompiler extends JDADecompiler implements MapleComponent {
     @Override
     public String decompileClassNode(FileContainer container, ClassNode cn) {
-        TabbedStringWriter sw = new TabbedStringWriter();
-        sw.setTabString("  ");
+        MaplePlugin.touch(container, cn.name);
+        // the class printer writes line by line, the text is only put together once at the end
+        LineWriter lw = new LineWriter(new ArrayList<>(), "  ");
+        TabbedStringWriter sw = lw.asTabbedWriter();
         IPropertyDictionary settings = PropertyHelper.createDictionary();
         final FieldNodePrinter fieldPrinter = new FieldNodePrinter(sw, settings);
+        // the printer can't fall back per method, so over-budget methods are left out instead of failing the class
         final MethodNodePrinter methodPrinter = new MethodNodePrinter(sw, settings) {
+            @Override
+            public void print(MethodNode mn) {
+                if (mn.instructions != null && mn.instructions.size() > 0) {
+                    try {
+                        getCfg(mn);
+                    } catch(MethodBudget.OverBudgetException e) {
+                        sw.newline().print("// MapleIR: over budget, not shown: " + e.getMessage());
+                        return;
+                    }
+                }
+                super.print(mn);
+            }
+
             @Override
             protected ControlFlowGraph getCfg(MethodNode mn) {
-                ControlFlowGraph cfg = ControlFlowGraphBuilder.build(ASMAdaptor.wrapMethodNode(mn));
-                BoissinotDestructor.leaveSSA(cfg);
-                LocalsReallocator.realloc(cfg);
-                return cfg;
+                return CfgCache.shared().get(cn.name, mn, "ir", null);
             }
         };
         ClassPrinter cp = new ClassPrinter(sw, settings, fieldPrinter, methodPrinter);
         cp.print(cn);
-        return sw.toString();
+        return String.join("\n", lw.finish());
     }
 
     @Override
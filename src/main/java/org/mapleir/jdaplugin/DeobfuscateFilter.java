@@ -2,8 +2,8 @@ package org.mapleir.jdaplugin;
 
 import club.bytecode.the.jda.decompilers.filter.DecompileFilter;
 import org.mapleir.asm.ClassHelper;
+import org.mapleir.asm.MethodNode;
 import org.mapleir.deob.intraproc.eval.ExpressionEvaluator;
-import org.mapleir.deob.intraproc.eval.impl.ReflectiveFunctorFactory;
 import org.mapleir.deob.passes.DeadCodeEliminationPass;
 import org.mapleir.ir.algorithms.BoissinotDestructor;
 import org.mapleir.ir.algorithms.LocalsReallocator;
@@ -14,63 +14,357 @@ import org.mapleir.ir.code.CodeUnit;
 import org.mapleir.ir.code.Expr;
 import org.mapleir.ir.code.Stmt;
 import org.mapleir.ir.code.expr.ArithmeticExpr;
+import org.mapleir.ir.code.expr.PhiExpr;
+import org.mapleir.ir.code.expr.VarExpr;
+import org.mapleir.ir.code.stmt.copy.AbstractCopyStmt;
 import org.mapleir.ir.codegen.ControlFlowGraphDumper;
+import org.mapleir.ir.locals.Local;
+import org.mapleir.ir.locals.LocalsPool;
+import org.mapleir.ir.locals.VersionedLocal;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Methods are simplified in parallel on the {@link Workers} pool, each thread with its own evaluator, and
+ * written back to the class in declaration order once they're all done.
+ */
 public class DeobfuscateFilter implements DecompileFilter, MapleComponent {
-    private final ExpressionEvaluator expressionEvaluator = new ExpressionEvaluator(new ReflectiveFunctorFactory());
-    private final DeadCodeEliminationPass deadCodeEliminationPass = new DeadCodeEliminationPass();
+    public static final int MAX_ROUNDS = 16;
+
+    private static final ConstantFolder FOLDER = new ConstantFolder();
+
+    private final ThreadLocal<ExpressionEvaluator> expressionEvaluator = ThreadLocal.withInitial(() -> new ExpressionEvaluator(new PrecompiledFunctorFactory()));
+    private final ThreadLocal<DeadCodeEliminationPass> deadCodeEliminationPass = ThreadLocal.withInitial(DeadCodeEliminationPass::new);
+
+    private final AtomicLong classesProcessed = new AtomicLong();
+    private final AtomicLong methodsProcessed = new AtomicLong();
+    private final AtomicLong methodsFailed = new AtomicLong();
+    private final AtomicLong methodsSkipped = new AtomicLong();
+    private final AtomicLong processNanos = new AtomicLong();
+    private final AtomicLong rewrites = new AtomicLong();
+    private final AtomicLong rounds = new AtomicLong();
+    private final AtomicLong roundLimitHits = new AtomicLong();
 
     @Override
     public void process(ClassNode cn) {
         if (cn == null)
             return;
+        long start = System.nanoTime();
         org.mapleir.asm.ClassNode wrappedCn = ClassHelper.create(cn);
-        for (org.mapleir.asm.MethodNode mn : wrappedCn.getMethods()) {
+        List<MethodNode> methods = new ArrayList<>(wrappedCn.getMethods());
+        ControlFlowGraph[] cfgs = new ControlFlowGraph[methods.size()];
+        try {
+            Workers.invoke(Workers.shared(), () -> IntStream.range(0, cfgs.length).parallel().forEach(i -> cfgs[i] = transform(methods.get(i))));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // the dumper rewrites the shared ClassNode, so that part stays sequential and in order
+        for (int i = 0; i < cfgs.length; i++) {
+            if (cfgs[i] == null)
+                continue;
+            try {
+                (new ControlFlowGraphDumper(cfgs[i], methods.get(i))).dump();
+                methodsProcessed.incrementAndGet();
+            } catch(Exception e) {
+                failed(methods.get(i), e);
+            }
+        }
+        classesProcessed.incrementAndGet();
+        processNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    /**
+     * Processes many classes at once, classes are spread over the pool as well as their methods.
+     */
+    public void process(Collection<ClassNode> classes) {
+        long start = System.nanoTime();
+        long methodsBefore = methodsProcessed.get();
+        try {
+            Workers.invoke(Workers.shared(), () -> classes.parallelStream().forEach(this::process));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.printf("[MapleIR] Deobfuscated %d classes (%d methods) in %d ms\n", classes.size(),
+                methodsProcessed.get() - methodsBefore, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private ControlFlowGraph transform(MethodNode mn) {
+        MethodBudget budget = MethodBudget.shared();
+        String owner = mn.owner.getName();
+        try {
+            budget.checkSize(owner, mn.node);
+            MethodBudget.Deadline deadline = budget.deadline(owner, mn.node);
+            long start = System.nanoTime();
             ControlFlowGraph cfg = ControlFlowGraphBuilder.build(mn);
-            simplifyArithmetic(cfg);
-            killDeadCode(cfg);
+            budget.checkBlocks(owner, mn.node, cfg.vertices().size());
+            deadline.check();
+            simplify(cfg, true, deadline);
             BoissinotDestructor.leaveSSA(cfg);
             LocalsReallocator.realloc(cfg);
-            (new ControlFlowGraphDumper(cfg, mn)).dump();
-            System.out.println("Processed " + mn);
+            AnalysisMetrics.shared().record(AnalysisMetrics.Phase.DEOBFUSCATE, System.nanoTime() - start, owner + "." + mn.getName() + mn.getDesc());
+            return cfg;
+        } catch(MethodBudget.OverBudgetException e) {
+            methodsSkipped.incrementAndGet();
+            return null; // left as is
+        } catch(Exception e) {
+            failed(mn, e);
+            return null;
         }
     }
 
+    private void failed(MethodNode mn, Exception e) {
+        methodsFailed.incrementAndGet();
+        AnalysisMetrics.shared().failed(AnalysisMetrics.Phase.DEOBFUSCATE);
+        System.err.println("[MapleIR] Failed to deobfuscate " + mn + ", leaving it as is:");
+        e.printStackTrace();
+    }
+
     /**
      * @param cfg ssa-form cfg
      */
     public void simplifyArithmetic(ControlFlowGraph cfg) {
+        simplify(cfg, false);
+    }
+
+    /**
+     * Folds and simplifies expressions until nothing changes. Statements are revisited only when a value they
+     * use was rewritten, found through the ssa def-use chains. Optionally alternates with dead code
+     * elimination, which can expose more folding, for at most {@link #MAX_ROUNDS} rounds. Only the first round
+     * visits every statement, later ones start from the users of the phis dead code elimination changed.
+     *
+     * @param cfg ssa-form cfg
+     * @return number of expressions rewritten
+     */
+    public int simplify(ControlFlowGraph cfg, boolean killDeadCode) {
+        return simplify(cfg, killDeadCode, MethodBudget.Deadline.NONE);
+    }
+
+    /**
+     * @throws MethodBudget.OverBudgetException when the deadline passes, leaving the cfg partially simplified
+     */
+    public int simplify(ControlFlowGraph cfg, boolean killDeadCode, MethodBudget.Deadline deadline) {
+        Worklist work = new Worklist(cfg, allStmts(cfg));
+        int rewritten = 0;
+        for (int round = 0; ; round++) {
+            if (round == MAX_ROUNDS) {
+                roundLimitHits.incrementAndGet();
+                break;
+            }
+            deadline.check();
+            rounds.incrementAndGet();
+            rewritten += propagate(cfg, work, deadline);
+            if (!killDeadCode)
+                break;
+            Map<AbstractCopyStmt, Integer> phis = phiArities(cfg);
+            if (deadCodeEliminationPass.get().process(cfg) == 0)
+                break;
+            // in ssa form a def in code that dce found unreachable can only be used by phis, and dce only
+            // deletes other defs once nothing uses them, so the phis that lost arguments or were replaced by
+            // copies are the only defs whose users can fold further
+            for (Map.Entry<AbstractCopyStmt, Integer> phi : phis.entrySet()) {
+                AbstractCopyStmt stmt = phi.getKey();
+                if (stmt.getBlock() != null && arity(stmt) == phi.getValue())
+                    continue;
+                Local local = stmt.getVariable().getLocal();
+                AbstractCopyStmt def = cfg.getLocals().defs.get(local);
+                if (def != null && def.getBlock() != null)
+                    work.add(def);
+                work.addUsers(local);
+            }
+            if (work.isEmpty())
+                break;
+        }
+        rewrites.addAndGet(rewritten);
+        return rewritten;
+    }
+
+    private int propagate(ControlFlowGraph cfg, Worklist work, MethodBudget.Deadline deadline) {
+        int rewritten = 0;
+        while (!work.isEmpty() && work.visits-- > 0) {
+            if ((work.visits & 255) == 0)
+                deadline.check();
+            Stmt stmt = work.poll();
+            if (stmt.getBlock() == null)
+                continue; // removed by an earlier rewrite
+            int n = simplifyStmt(cfg, stmt);
+            if (n == 0)
+                continue;
+            rewritten += n;
+            if (stmt instanceof AbstractCopyStmt)
+                work.addUsers(((AbstractCopyStmt) stmt).getVariable().getLocal());
+        }
+        return rewritten;
+    }
+
+    // phi copies sit at the top of their blocks
+    private static Map<AbstractCopyStmt, Integer> phiArities(ControlFlowGraph cfg) {
+        Map<AbstractCopyStmt, Integer> phis = new IdentityHashMap<>();
         for (BasicBlock block : cfg.vertices()) {
             for (Stmt stmt : block) {
-                for(CodeUnit cu : stmt.enumerateExecutionOrder()) {
-                    if(cu instanceof Expr) {
-                        Expr e = (Expr) cu;
-                        CodeUnit par = e.getParent();
-                        if(par != null) {
-
-                            Expr val = expressionEvaluator.eval(cfg.getLocals(), e);
-                            if(val != null && !val.equivalent(e)) {
-                                cfg.writeAt(par, e, val);
-                            } else if(e instanceof ArithmeticExpr) {
-                                val = expressionEvaluator.simplifyArithmetic(cfg.getLocals(), (ArithmeticExpr)e);
-
-                                if (val != null) {
-                                    cfg.writeAt(par, e, val);
-                                }
-                            }
+                int arity = stmt instanceof AbstractCopyStmt ? arity((AbstractCopyStmt) stmt) : -1;
+                if (arity < 0)
+                    break;
+                phis.put((AbstractCopyStmt) stmt, arity);
+            }
+        }
+        return phis;
+    }
+
+    private static int arity(AbstractCopyStmt stmt) {
+        Expr e = stmt.getExpression();
+        return e instanceof PhiExpr ? ((PhiExpr) e).getArgumentCount() : -1;
+    }
+
+    /**
+     * Statements left to simplify over all rounds, with one visit budget for the whole method.
+     */
+    private static final class Worklist {
+        private final LocalsPool pool;
+        private final Deque<Stmt> work;
+        private final Set<Stmt> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+        // every rewrite makes an expression simpler, but bound the work in case the evaluator disagrees
+        long visits;
+
+        Worklist(ControlFlowGraph cfg, List<Stmt> stmts) {
+            pool = cfg.getLocals();
+            work = new ArrayDeque<>(stmts);
+            queued.addAll(stmts);
+            visits = (long) stmts.size() * MAX_ROUNDS;
+        }
+
+        boolean isEmpty() {
+            return work.isEmpty();
+        }
+
+        Stmt poll() {
+            Stmt stmt = work.poll();
+            queued.remove(stmt);
+            return stmt;
+        }
+
+        void add(Stmt stmt) {
+            if (queued.add(stmt))
+                work.add(stmt);
+        }
+
+        void addUsers(Local local) {
+            Set<VarExpr> uses = local instanceof VersionedLocal ? pool.uses.get(local) : null;
+            if (uses == null)
+                return;
+            for (VarExpr use : new ArrayList<>(uses)) {
+                Stmt user = use.getRootParent();
+                if (user != null)
+                    add(user);
+            }
+        }
+    }
+
+    private int simplifyStmt(ControlFlowGraph cfg, Stmt stmt) {
+        ExpressionEvaluator evaluator = expressionEvaluator.get();
+        int rewritten = 0;
+        for(CodeUnit cu : stmt.enumerateExecutionOrder()) {
+            if(cu instanceof Expr) {
+                Expr e = (Expr) cu;
+                CodeUnit par = e.getParent();
+                if(par != null) {
+
+                    Expr val = FOLDER.fold(e);
+                    if (val == null)
+                        val = evaluator.eval(cfg.getLocals(), e);
+                    if(val != null && !val.equivalent(e)) {
+                        cfg.writeAt(par, e, val);
+                        rewritten++;
+                    } else if(e instanceof ArithmeticExpr) {
+                        val = evaluator.simplifyArithmetic(cfg.getLocals(), (ArithmeticExpr)e);
+
+                        if (val != null) {
+                            cfg.writeAt(par, e, val);
+                            rewritten++;
                         }
                     }
                 }
             }
         }
+        return rewritten;
+    }
+
+    private static List<Stmt> allStmts(ControlFlowGraph cfg) {
+        List<Stmt> stmts = new ArrayList<>();
+        for (BasicBlock block : cfg.vertices()) {
+            stmts.addAll(block);
+        }
+        return stmts;
     }
 
     /**
      * @param cfg ssa-form cfg
      */
     public void killDeadCode(ControlFlowGraph cfg) {
-        deadCodeEliminationPass.process(cfg);
+        deadCodeEliminationPass.get().process(cfg);
+    }
+
+    public long getClassesProcessed() {
+        return classesProcessed.get();
+    }
+
+    public long getMethodsProcessed() {
+        return methodsProcessed.get();
+    }
+
+    public long getMethodsFailed() {
+        return methodsFailed.get();
+    }
+
+    /**
+     * @return number of methods left alone because they went over the {@link MethodBudget}
+     */
+    public long getMethodsSkipped() {
+        return methodsSkipped.get();
+    }
+
+    public long getRewrites() {
+        return rewrites.get();
+    }
+
+    public long getRounds() {
+        return rounds.get();
+    }
+
+    /**
+     * @return number of times simplification stopped at {@link #MAX_ROUNDS} without reaching a fixpoint
+     */
+    public long getRoundLimitHits() {
+        return roundLimitHits.get();
+    }
+
+    public static ConstantFolder getFolder() {
+        return FOLDER;
+    }
+
+    public long getProcessMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(processNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d classes, %d methods, %d failed, %d over budget, %d rewrites in %d rounds (%d hit the limit), %d ms",
+                getClassesProcessed(), getMethodsProcessed(), getMethodsFailed(), getMethodsSkipped(), getRewrites(), getRounds(),
+                getRoundLimitHits(), getProcessMillis());
+    }
+
+    public void registerGauges(AnalysisMetrics metrics) {
+        metrics.registerGauge("deob.classes", this::getClassesProcessed);
+        metrics.registerGauge("deob.methods", this::getMethodsProcessed);
+        metrics.registerGauge("deob.failed", this::getMethodsFailed);
+        metrics.registerGauge("deob.skipped", this::getMethodsSkipped);
+        metrics.registerGauge("deob.rewrites", this::getRewrites);
+        metrics.registerGauge("deob.rounds", this::getRounds);
+        metrics.registerGauge("deob.roundLimitHits", this::getRoundLimitHits);
     }
 
     @Override
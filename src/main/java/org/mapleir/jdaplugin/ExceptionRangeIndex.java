@@ -0,0 +1,59 @@
+package org.mapleir.jdaplugin;
+
+import org.mapleir.flowgraph.ExceptionRange;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+
+import java.util.*;
+
+/**
+ * The exception ranges covering each block of a cfg, and the ranges each handler block handles. Built in one
+ * pass over the blocks of each range instead of asking every range about every block, so it's linear in the
+ * size of the exception table rather than blocks times ranges. Per-block lists keep the order of
+ * {@link ControlFlowGraph#getRanges()}.
+ *
+ * The index is a snapshot, it has to be rebuilt if the cfg's ranges change.
+ */
+public class ExceptionRangeIndex {
+    private final Map<BasicBlock, List<ExceptionRange<BasicBlock>>> covering = new IdentityHashMap<>();
+    private final Map<BasicBlock, List<ExceptionRange<BasicBlock>>> handled = new IdentityHashMap<>();
+
+    public ExceptionRangeIndex(ControlFlowGraph cfg) {
+        for (ExceptionRange<BasicBlock> range : cfg.getRanges()) {
+            for (BasicBlock b : range.getNodes()) {
+                add(covering, b, range);
+            }
+            add(handled, range.getHandler(), range);
+        }
+    }
+
+    private static void add(Map<BasicBlock, List<ExceptionRange<BasicBlock>>> map, BasicBlock b, ExceptionRange<BasicBlock> range) {
+        List<ExceptionRange<BasicBlock>> ranges = map.get(b);
+        if (ranges == null) {
+            map.put(b, ranges = new ArrayList<>(2));
+        } else if (ranges.get(ranges.size() - 1) == range) {
+            return; // block listed twice in one range
+        }
+        ranges.add(range);
+    }
+
+    /**
+     * @return the ranges {@code b} is protected by, innermost (first in the table) first
+     */
+    public List<ExceptionRange<BasicBlock>> getCovering(BasicBlock b) {
+        List<ExceptionRange<BasicBlock>> ranges = covering.get(b);
+        return ranges == null ? Collections.emptyList() : ranges;
+    }
+
+    /**
+     * @return the ranges whose handler is {@code b}
+     */
+    public List<ExceptionRange<BasicBlock>> getHandled(BasicBlock b) {
+        List<ExceptionRange<BasicBlock>> ranges = handled.get(b);
+        return ranges == null ? Collections.emptyList() : ranges;
+    }
+
+    public boolean isHandler(BasicBlock b) {
+        return handled.containsKey(b);
+    }
+}
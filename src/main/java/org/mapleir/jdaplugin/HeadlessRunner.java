@@ -0,0 +1,376 @@
+package org.mapleir.jdaplugin;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Command line mode, deobfuscates jars (or class directories) without the GUI and optionally exports the IL
+ * and IR of every class alongside it. With {@code --analyze} each input also goes through the plugin's
+ * {@link AnalysisManager} analysis (ir, index and call graph if enabled), so its phases can be timed headless.
+ * JDA still has to be on the class path since the decompilers and the filter are built on its API.
+ */
+public class HeadlessRunner {
+    private static final String USAGE = String.join("\n",
+            "usage: java -cp jda.jar:mapleir-jdaplugin.jar org.mapleir.jdaplugin.MaplePlugin [options] <jar|dir>...",
+            "  -o <jar|dir>  output, written as a jar if it ends with .jar (required)",
+            "  -j <n>        number of worker threads",
+            "  --no-deob     don't run the deobfuscator, only export",
+            "  --stream      rewrite jars entry by entry to bound memory use",
+            "  --analyze     run the plugin's analysis (ir, index, call graph) over each input as well",
+            "  --metrics <f> write analysis metrics as JSON to <f>",
+            "  --il          write the MapleIL of each class as <class>.il",
+            "  --ir          write the MapleIR of each class as <class>.ir");
+
+    private final List<Path> inputs = new ArrayList<>();
+    private Path output;
+    private boolean deobfuscate = true;
+    private boolean exportIL;
+    private boolean exportIR;
+    private boolean stream;
+    private boolean analyze;
+    private Path metricsFile;
+
+    private DeobfuscateFilter filter;
+    private ILDecompiler ilDecompiler;
+    private IRDecompiler irDecompiler;
+    private AnalysisManager analysis;
+
+    private final AtomicLong classCount = new AtomicLong();
+    private final AtomicLong methodCount = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong analysisFailures = new AtomicLong();
+
+    public static int run(String[] args) {
+        HeadlessRunner runner = new HeadlessRunner();
+        try {
+            if (!runner.parse(args)) {
+                System.err.println(USAGE);
+                return 2;
+            }
+        } catch(IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+        try {
+            return runner.run();
+        } catch(Exception e) {
+            System.err.println("[MapleIR] Batch run failed:");
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    private boolean parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-o":
+                    output = Paths.get(value(args, ++i, arg));
+                    break;
+                case "-j":
+                    try {
+                        int jobs = Integer.parseInt(value(args, ++i, arg));
+                        if (jobs < 1)
+                            throw new NumberFormatException();
+                        System.setProperty(Workers.PARALLELISM_PROPERTY, String.valueOf(jobs));
+                    } catch(NumberFormatException e) {
+                        throw new IllegalArgumentException("-j expects a positive number");
+                    }
+                    break;
+                case "--no-deob":
+                    deobfuscate = false;
+                    break;
+                case "--metrics":
+                    metricsFile = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--stream":
+                    stream = true;
+                    break;
+                case "--analyze":
+                    analyze = true;
+                    break;
+                case "--il":
+                    exportIL = true;
+                    break;
+                case "--ir":
+                    exportIR = true;
+                    break;
+                case "-h":
+                case "--help":
+                    return false;
+                default:
+                    if (arg.startsWith("-"))
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    inputs.add(Paths.get(arg));
+            }
+        }
+        if (analyze && stream)
+            throw new IllegalArgumentException("--analyze reads whole inputs, it can't be combined with --stream");
+        return output != null && !inputs.isEmpty();
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length)
+            throw new IllegalArgumentException(option + " expects a value");
+        return args[i];
+    }
+
+    private int run() throws IOException, InterruptedException {
+        if (exportIL || exportIR) {
+            ilDecompiler = new ILDecompiler();
+            irDecompiler = new IRDecompiler();
+        }
+        filter = new DeobfuscateFilter();
+        filter.registerGauges(AnalysisMetrics.shared());
+        if (analyze)
+            analysis = new AnalysisManager(Workers.shared(), false, busy -> {});
+
+        long start = System.nanoTime();
+        long peakHeap;
+        try (HeapSampler heap = new HeapSampler(); OutputSink out = OutputSink.open(output)) {
+            for (Path input : inputs) {
+                process(input, out);
+            }
+            peakHeap = heap.getPeak();
+        }
+        double seconds = Math.max(1, System.nanoTime() - start) / 1e9;
+        System.out.printf("[MapleIR] Processed %d classes (%d methods) from %d inputs in %.1f s using %d workers\n",
+                classCount.get(), methodCount.get(), inputs.size(), seconds, Workers.parallelism());
+        System.out.printf("[MapleIR] %.0f classes/s, %.0f methods/s, peak heap %d MB\n",
+                classCount.get() / seconds, methodCount.get() / seconds, peakHeap >> 20);
+        if (deobfuscate)
+            System.out.println("[MapleIR] Deobfuscator: " + filter);
+        List<AnalysisMetrics.Outlier> slowest = AnalysisMetrics.shared().getSlowest();
+        for (int i = 0; i < Math.min(5, slowest.size()); i++) {
+            System.out.println("[MapleIR] Slow method: " + slowest.get(i));
+        }
+        if (metricsFile != null)
+            AnalysisMetrics.shared().dump(metricsFile);
+        if (failures.get() > 0)
+            System.out.println("[MapleIR] " + failures + " classes failed and were copied unchanged");
+        if (analysisFailures.get() > 0)
+            System.out.println("[MapleIR] Analysis of " + analysisFailures + " inputs didn't complete");
+        return failures.get() > 0 || analysisFailures.get() > 0 || filter.getMethodsFailed() > 0 ? 1 : 0;
+    }
+
+    private void process(Path input, OutputSink out) throws IOException, InterruptedException {
+        if (stream && !Files.isDirectory(input)) {
+            processStreaming(input, out);
+            return;
+        }
+        long start = System.nanoTime();
+        Map<String, byte[]> entries = read(input);
+        if (analysis != null)
+            analyze(input, entries); // before the deobfuscator, on what the GUI would have opened
+        List<String> classFiles = entries.keySet().stream().filter(n -> n.endsWith(".class")).collect(Collectors.toList());
+
+        ClassNode[] classes = new ClassNode[classFiles.size()];
+        ClassHierarchyIndex.Builder headers = new ClassHierarchyIndex.Builder();
+        Workers.invoke(Workers.shared(), () -> IntStream.range(0, classes.length).parallel().forEach(i -> {
+            try {
+                ClassNode cn = new ClassNode();
+                new ClassReader(entries.get(classFiles.get(i))).accept(cn, ClassReader.SKIP_FRAMES);
+                classes[i] = cn;
+                headers.add(cn);
+            } catch(Exception e) {
+                System.err.println("[MapleIR] Failed to read " + classFiles.get(i) + ": " + e);
+            }
+        }));
+
+        ClassHierarchyIndex hierarchy = Workers.invoke(Workers.shared(), headers::build);
+        List<ClassNode> parsed = Arrays.stream(classes).filter(Objects::nonNull).collect(Collectors.toList());
+        if (deobfuscate) {
+            filter.process(parsed);
+        }
+
+        Map<String, byte[]> results = new ConcurrentHashMap<>();
+        Workers.invoke(Workers.shared(), () -> IntStream.range(0, classes.length).parallel().forEach(i -> {
+            if (classes[i] != null)
+                transform(classFiles.get(i), classes[i], hierarchy, results);
+        }));
+
+        // entries keep the order they had in the input
+        for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+            String name = e.getKey();
+            byte[] data = results.getOrDefault(name, e.getValue());
+            out.write(name, data);
+            if (!name.endsWith(".class"))
+                continue;
+            String base = name.substring(0, name.length() - ".class".length());
+            for (String ext : new String[]{".il", ".ir"}) {
+                byte[] text = results.get(base + ext);
+                if (text != null)
+                    out.write(base + ext, text);
+            }
+        }
+        classCount.addAndGet(parsed.size());
+        for (ClassNode cn : parsed)
+            methodCount.addAndGet(cn.methods.size());
+        failures.addAndGet(classFiles.size() - results.keySet().stream().filter(n -> n.endsWith(".class")).count());
+        System.out.printf("[MapleIR] %s: %d classes in %d ms\n", input, parsed.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void analyze(Path input, Map<String, byte[]> entries) throws InterruptedException {
+        MemoryFileContainer fc = new MemoryFileContainer(input, entries);
+        if (analysis.analyze(fc)) {
+            ContainerIndex index = analysis.getIndex(fc);
+            CallGraph callGraph = analysis.getCallGraph(fc);
+            System.out.printf("[MapleIR] %s: indexed %d classes, %d symbols%s\n", input, index.size(),
+                    index.getSymbols().symbolCount(), callGraph != null ? ", " + callGraph : "");
+        } else {
+            analysisFailures.incrementAndGet();
+        }
+        analysis.unload(fc);
+    }
+
+    private void processStreaming(Path input, OutputSink out) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        long classesBefore = classCount.get();
+        try (ZipFile zip = new ZipFile(input.toFile())) {
+            ClassHierarchyIndex hierarchy = StreamingRewriter.readHeaders(zip);
+            new StreamingRewriter(Workers.shared(), 4 * Workers.parallelism()).rewrite(zip, (name, data, result) -> {
+                if (!name.endsWith(".class")) {
+                    result.put(name, data);
+                    return;
+                }
+                Map<String, byte[]> outputs = new HashMap<>();
+                try {
+                    ClassNode cn = new ClassNode();
+                    new ClassReader(data).accept(cn, ClassReader.SKIP_FRAMES);
+                    if (deobfuscate) {
+                        filter.process(cn);
+                    }
+                    transform(name, cn, hierarchy, outputs);
+                    classCount.incrementAndGet();
+                    methodCount.addAndGet(cn.methods.size());
+                } catch(Exception e) {
+                    System.err.println("[MapleIR] Failed to read " + name + ": " + e);
+                }
+                if (!outputs.containsKey(name))
+                    failures.incrementAndGet();
+                String base = name.substring(0, name.length() - ".class".length());
+                result.put(name, outputs.getOrDefault(name, data));
+                for (String ext : new String[]{".il", ".ir"}) {
+                    if (outputs.containsKey(base + ext))
+                        result.put(base + ext, outputs.get(base + ext));
+                }
+            }, out);
+        }
+        System.out.printf("[MapleIR] %s: streamed %d classes in %d ms\n", input, classCount.get() - classesBefore,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void transform(String file, ClassNode cn, ClassHierarchyIndex hierarchy, Map<String, byte[]> results) {
+        try {
+            ClassWriter cw = new HierarchyClassWriter(ClassWriter.COMPUTE_FRAMES, hierarchy);
+            cn.accept(cw);
+            results.put(file, cw.toByteArray());
+        } catch(Exception e) {
+            System.err.println("[MapleIR] Failed to write " + file + ": " + e);
+        }
+        String base = file.substring(0, file.length() - ".class".length());
+        try {
+            if (exportIL)
+                results.put(base + ".il", ilDecompiler.decompileClassNode(null, cn).getBytes(StandardCharsets.UTF_8));
+            if (exportIR)
+                results.put(base + ".ir", irDecompiler.decompileClassNode(null, cn).getBytes(StandardCharsets.UTF_8));
+        } catch(Exception e) {
+            System.err.println("[MapleIR] Failed to export " + file + ": " + e);
+        }
+    }
+
+    private static Map<String, byte[]> read(Path input) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        if (Files.isDirectory(input)) {
+            try (Stream<Path> files = Files.walk(input)) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile).sorted()::iterator) {
+                    entries.put(input.relativize(file).toString().replace('\\', '/'), Files.readAllBytes(file));
+                }
+            }
+            return entries;
+        }
+        try (ZipFile zip = new ZipFile(input.toFile())) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                if (entry.isDirectory())
+                    continue;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    entries.put(entry.getName(), readFully(in));
+                }
+            }
+        }
+        return entries;
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(Math.max(32, in.available()));
+        byte[] chunk = new byte[8192];
+        int n;
+        while ((n = in.read(chunk)) > 0) {
+            buf.write(chunk, 0, n);
+        }
+        return buf.toByteArray();
+    }
+
+    /**
+     * Samples the used heap on a daemon thread. The pools' own peak usages can't just be added up, they peak at
+     * different times.
+     */
+    private static final class HeapSampler implements AutoCloseable {
+        private static final long INTERVAL_MILLIS = 20;
+
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicLong peak = new AtomicLong();
+        private final Thread thread;
+
+        HeapSampler() {
+            thread = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    sample();
+                    try {
+                        Thread.sleep(INTERVAL_MILLIS);
+                    } catch(InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "MapleIR-heap-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void sample() {
+            peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+        }
+
+        long getPeak() {
+            sample();
+            return peak.get();
+        }
+
+        @Override
+        public void close() {
+            thread.interrupt();
+        }
+    }
+}
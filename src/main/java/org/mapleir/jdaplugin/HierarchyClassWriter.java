@@ -0,0 +1,97 @@
+package org.mapleir.jdaplugin;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ClassWriter that computes frames from a {@link ClassHierarchyIndex} instead of loading the classes being written.
+ * Classes missing from it are looked up on the system class path, anything that can't be found is assumed to
+ * extend {@code java/lang/Object}.
+ */
+public class HierarchyClassWriter extends ClassWriter {
+    public static final class Header {
+        public final String superName;
+        public final boolean isInterface;
+
+        public Header(String superName, boolean isInterface) {
+            this.superName = superName;
+            this.isInterface = isInterface;
+        }
+
+        public static Header of(ClassReader cr) {
+            return new Header(cr.getSuperName(), (cr.getAccess() & Opcodes.ACC_INTERFACE) != 0);
+        }
+    }
+
+    private static final Header MISSING = new Header(null, false);
+    private static final Map<String, Header> classPath = new ConcurrentHashMap<>();
+
+    private final ClassHierarchyIndex hierarchy;
+
+    public HierarchyClassWriter(int flags, ClassHierarchyIndex hierarchy) {
+        super(flags);
+        this.hierarchy = hierarchy;
+    }
+
+    @Override
+    protected String getCommonSuperClass(String type1, String type2) {
+        int id1 = known(type1), id2 = known(type2);
+        if (id1 >= 0 && id2 >= 0 && !hierarchy.isInterface(id1) && !hierarchy.isInterface(id2)) {
+            if (hierarchy.isSubclass(id1, id2))
+                return type2;
+            if (hierarchy.isSubclass(id2, id1))
+                return type1;
+        }
+        Header h1 = lookup(type1), h2 = lookup(type2);
+        if (h1 == null || h2 == null || h1.isInterface || h2.isInterface)
+            return "java/lang/Object";
+        // both walks stop on a super class cycle, which obfuscated code can have
+        Set<String> ancestors = new HashSet<>();
+        for (String t = type1; t != null && ancestors.add(t); t = superName(t)) {
+        }
+        Set<String> seen = new HashSet<>();
+        for (String t = type2; t != null && seen.add(t); t = superName(t)) {
+            if (ancestors.contains(t))
+                return t;
+        }
+        return "java/lang/Object";
+    }
+
+    private String superName(String type) {
+        Header h = lookup(type);
+        return h == null ? null : h.superName;
+    }
+
+    private int known(String type) {
+        int id = hierarchy.id(type);
+        return id >= 0 && hierarchy.isApplicationClass(id) ? id : -1;
+    }
+
+    private Header lookup(String type) {
+        int id = known(type);
+        if (id >= 0) {
+            int superId = hierarchy.getSuperClass(id);
+            return new Header(superId >= 0 ? hierarchy.getName(superId) : null, hierarchy.isInterface(id));
+        }
+        Header h = classPath.computeIfAbsent(type, HierarchyClassWriter::load);
+        return h == MISSING ? null : h;
+    }
+
+    private static Header load(String type) {
+        try (InputStream in = ClassLoader.getSystemResourceAsStream(type + ".class")) {
+            if (in != null)
+                return Header.of(new ClassReader(in));
+        } catch(IOException e) {
+            // treated as missing
+        }
+        return MISSING;
+    }
+}
@@ -1,16 +1,12 @@
 package org.mapleir.jdaplugin;
 
+import club.bytecode.the.jda.FileContainer;
 import club.bytecode.the.jda.decompilers.bytecode.*;
 import club.bytecode.the.jda.gui.fileviewer.BytecodeTokenizer;
 import club.bytecode.the.jda.settings.JDADecompilerSettings;
-import com.google.common.collect.Iterators;
 import org.mapleir.flowgraph.ExceptionRange;
-import org.mapleir.flowgraph.edges.ImmediateEdge;
-import org.mapleir.ir.algorithms.BoissinotDestructor;
-import org.mapleir.ir.algorithms.LocalsReallocator;
 import org.mapleir.ir.cfg.BasicBlock;
 import org.mapleir.ir.cfg.ControlFlowGraph;
-import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
 import org.mapleir.ir.code.Expr;
 import org.mapleir.ir.code.Opcode;
 import org.mapleir.ir.code.Stmt;
@@ -20,9 +16,6 @@ import org.mapleir.ir.code.expr.invoke.InitialisedObjectExpr;
 import org.mapleir.ir.code.expr.invoke.InvocationExpr;
 import org.mapleir.ir.code.stmt.*;
 import org.mapleir.ir.code.stmt.copy.AbstractCopyStmt;
-import org.mapleir.stdlib.collections.graph.FastGraphEdge;
-import org.mapleir.stdlib.collections.graph.algorithms.ExtendedDfs;
-import org.mapleir.stdlib.util.TabbedStringWriter;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
@@ -31,9 +24,28 @@ import java.lang.reflect.Modifier;
 import java.util.*;
 
 public class ILDecompiler extends BytecodeDecompiler implements MapleComponent {
+    final ParallelMethods<ControlFlowGraph> parallel = new ParallelMethods<>();
+
     public ILDecompiler() {
         settings.registerSetting(new JDADecompilerSettings.SettingsEntry("kill-dead-code", "Eliminate dead code", true));
         settings.registerSetting(new JDADecompilerSettings.SettingsEntry("simplify-arithmetic", "Simplify and deobfuscate constant arithmetic", true));
+        settings.registerSetting(new JDADecompilerSettings.SettingsEntry("parallel-methods", "Decompile methods in parallel", true));
+    }
+
+    @Override
+    public String decompileClassNode(FileContainer container, ClassNode cn) {
+        MaplePlugin.touch(container, cn.name);
+        if (!settings.getEntry("parallel-methods").getBool()) {
+            return super.decompileClassNode(container, cn);
+        }
+        boolean simplify = settings.getEntry("simplify-arithmetic").getBool();
+        boolean kill = settings.getEntry("kill-dead-code").getBool();
+        return parallel.decompile(cn, mn -> {
+            ControlFlowGraph cfg = ILInstructionPrinter.getCfg(cn.name, mn, simplify, kill);
+            CfgCache.shared().ranges(cfg);
+            CfgCache.shared().layout(cfg);
+            return cfg;
+        }, () -> super.decompileClassNode(container, cn));
     }
 
     @Override
@@ -48,73 +60,79 @@ public class ILDecompiler extends BytecodeDecompiler implements MapleComponent {
 }
 
 class ILMethodDecompiler extends MethodNodeDecompiler {
+    private final String owner;
+
     public ILMethodDecompiler(BytecodeDecompiler parent, PrefixedStringBuilder sb, MethodNode mn, ClassNode cn) {
         super(parent, sb, mn, cn);
         printDetailedMetadata = false;
+        owner = cn.name;
     }
 
     @Override
     protected InstructionPrinter getInstructionPrinter(MethodNode m, TypeAndName[] args) {
-        return new ILInstructionPrinter(this, m, args);
+        return new ILInstructionPrinter(this, m, args, owner);
     }
 }
 
 class ILInstructionPrinter extends InstructionPrinter {
-    DeobfuscateFilter deobfuscator = new DeobfuscateFilter();
+    private static final DeobfuscateFilter deobfuscator = new DeobfuscateFilter();
+    private final String owner;
 
-    public ILInstructionPrinter(MethodNodeDecompiler parent, MethodNode m, TypeAndName[] args) {
+    public ILInstructionPrinter(MethodNodeDecompiler parent, MethodNode m, TypeAndName[] args, String owner) {
         super(parent, m, args);
+        this.owner = owner;
     }
 
     @Override
     public ArrayList<String> createPrint() {
-        ControlFlowGraph cfg = ControlFlowGraphBuilder.build(ASMAdaptor.wrapMethodNode(mNode));
-        if (parent.getParent().getSettings().getEntry("simplify-arithmetic").getBool()) {
-            deobfuscator.simplifyArithmetic(cfg);
-        }
-        if (parent.getParent().getSettings().getEntry("kill-dead-code").getBool()) {
-            deobfuscator.killDeadCode(cfg);
+        ControlFlowGraph cfg = ((ILDecompiler) parent.getParent()).parallel.take(mNode);
+        if (cfg == null) {
+            boolean simplify = parent.getParent().getSettings().getEntry("simplify-arithmetic").getBool();
+            boolean kill = parent.getParent().getSettings().getEntry("kill-dead-code").getBool();
+            try {
+                cfg = getCfg(owner, mNode, simplify, kill);
+            } catch(MethodBudget.OverBudgetException e) {
+                return MethodBudget.fallbackPrint(e, super.createPrint());
+            }
         }
-        BoissinotDestructor.leaveSSA(cfg);
-        LocalsReallocator.realloc(cfg);
 
-        TabbedStringWriter sw = new TabbedStringWriter();
+        LineWriter sw = new LineWriter();
         printCode(sw, cfg);
-        return new ArrayList<>(Arrays.asList(sw.toString().split(System.lineSeparator())));
+        return sw.finish();
     }
 
-    private void printCode(TabbedStringWriter sw, ControlFlowGraph cfg) {
-        List<BasicBlock> verticesInOrder = new ExtendedDfs<BasicBlock>(cfg, ExtendedDfs.TOPO) {
-            @Override
-            protected Iterable<? extends FastGraphEdge<BasicBlock>> order(Set<? extends FastGraphEdge<BasicBlock>> edges) {
-                // Java 11 has Predicate.not... so FunCTiONAl
-                return () -> Iterators.concat(
-                        // visit immediate edges last, so (topoorder = reverse postorder) will have immediates first
-                        edges.stream().filter(e -> !(e instanceof ImmediateEdge)).iterator(),
-                        edges.stream().filter(ImmediateEdge.class::isInstance).iterator());
+    static ControlFlowGraph getCfg(String owner, MethodNode mn, boolean simplify, boolean kill) {
+        return CfgCache.shared().get(owner, mn, "il" + (simplify ? "+simplify" : "") + (kill ? "+kill" : ""), ssa -> {
+            if (simplify) {
+                deobfuscator.simplify(ssa, kill, MethodBudget.shared().deadline(owner, mn));
+            } else if (kill) {
+                deobfuscator.killDeadCode(ssa);
             }
-        }.run(cfg.getEntries().iterator().next()).getTopoOrder();
-        for (BasicBlock b : verticesInOrder) {
-            printBlock(sw, b);
+        });
+    }
+
+    private void printCode(LineWriter sw, ControlFlowGraph cfg) {
+        ExceptionRangeIndex ranges = CfgCache.shared().ranges(cfg);
+        BlockLayout layout = CfgCache.shared().layout(cfg);
+        for (int i = 0; i < layout.size(); i++) {
+            printBlock(sw, layout.get(i), ranges);
         }
     }
 
-    private void printBlock(TabbedStringWriter sw, BasicBlock b) {
+    private void printBlock(LineWriter sw, BasicBlock b, ExceptionRangeIndex ranges) {
         sw.print(b.getDisplayName()).print(":");
         int handlerCount = 0;
-        for (ExceptionRange<BasicBlock> erange : b.getGraph().getRanges()) {
-            if (erange.containsVertex(b)) {
-                if (handlerCount++ > 0) sw.newline();
-                else sw.print(" ");
-                sw.print("// Exception handler: Block ").print(erange.getHandler().getDisplayName()).print(" [");
-                int typeCount = 0;
-                for (Type exceptionType : erange.getTypes()) {
-                    sw.print(exceptionType.getClassName());
-                    if (++typeCount != erange.getTypes().size())
-                        sw.print(", ");
-                }
-                sw.print("]");
+        for (ExceptionRange<BasicBlock> erange : ranges.getCovering(b)) {
+            if (handlerCount++ > 0) sw.newline();
+            else sw.print(" ");
+            sw.print("// Exception handler: Block ").print(erange.getHandler().getDisplayName()).print(" [");
+            int typeCount = 0;
+            for (Type exceptionType : erange.getTypes()) {
+                sw.print(exceptionType.getClassName());
+                if (++typeCount != erange.getTypes().size())
+                    sw.print(", ");
             }
+            sw.print("]");
         }
         sw.tab();
         for (Stmt stmt : b) {
@@ -126,7 +144,7 @@ class ILInstructionPrinter extends InstructionPrinter {
     }
 
 
-    public void printStmt(TabbedStringWriter sw, Stmt stmt) {
+    public void printStmt(LineWriter sw, Stmt stmt) {
         int opcode = stmt.getOpcode();
 
         switch (opcode) {
@@ -285,7 +303,7 @@ class ILInstructionPrinter extends InstructionPrinter {
         }
     }
 
-    private void printExpr(TabbedStringWriter sw, Expr e) {
+    private void printExpr(LineWriter sw, Expr e) {
         int opcode = e.getOpcode();
 
         switch (opcode) {
@@ -0,0 +1,144 @@
+package org.mapleir.jdaplugin;
+
+import org.mapleir.asm.MethodNode;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heap budget shared by every {@link ManagedIRCache}. CFGs are charged by their estimated footprint and the
+ * least recently used ones are evicted, across all open containers, once the budget is exceeded. Evicted
+ * CFGs are rebuilt by the owning cache when they're asked for again.
+ *
+ * The budget is {@code mapleir.ircache.budget.mb} megabytes, a quarter of the max heap by default, and
+ * {@code 0} disables eviction.
+ */
+public class IRCacheBudget {
+    public static final String BUDGET_PROPERTY = "mapleir.ircache.budget.mb";
+
+    private static final IRCacheBudget SHARED = new IRCacheBudget(Long.getLong(BUDGET_PROPERTY,
+            Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024)) * 1024 * 1024);
+
+    private final long budgetBytes;
+    private final LinkedHashMap<Key, Long> lru = new LinkedHashMap<>(256, 0.75f, true);
+    private long usedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    public IRCacheBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public static IRCacheBudget shared() {
+        return SHARED;
+    }
+
+    void hit(ManagedIRCache cache, MethodNode m) {
+        hits.incrementAndGet();
+        synchronized (this) {
+            lru.get(new Key(cache, m));
+        }
+    }
+
+    void miss(boolean rebuild) {
+        misses.incrementAndGet();
+        if (rebuild)
+            rebuilds.incrementAndGet();
+    }
+
+    void admit(ManagedIRCache cache, MethodNode m, long weight) {
+        Key key = new Key(cache, m);
+        List<Key> victims = new ArrayList<>();
+        synchronized (this) {
+            Long old = lru.put(key, weight);
+            usedBytes += weight - (old == null ? 0 : old);
+            if (budgetBytes > 0) {
+                Iterator<Map.Entry<Key, Long>> it = lru.entrySet().iterator();
+                while (usedBytes > budgetBytes && it.hasNext()) {
+                    Map.Entry<Key, Long> eldest = it.next();
+                    if (eldest.getKey().equals(key))
+                        break; // never evict what we just admitted
+                    usedBytes -= eldest.getValue();
+                    victims.add(eldest.getKey());
+                    it.remove();
+                }
+            }
+        }
+        // evict outside our lock, the caches take their own
+        for (Key victim : victims) {
+            victim.cache.evict(victim.method);
+            evictions.incrementAndGet();
+        }
+    }
+
+    synchronized void release(ManagedIRCache cache) {
+        Iterator<Map.Entry<Key, Long>> it = lru.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Long> e = it.next();
+            if (e.getKey().cache == cache) {
+                usedBytes -= e.getValue();
+                it.remove();
+            }
+        }
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getResidentCount() {
+        return lru.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getRebuilds() {
+        return rebuilds.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d cfgs, ~%d/%d MB, %d hits, %d misses, %d evictions, %d rebuilds", getResidentCount(),
+                getUsedBytes() >> 20, budgetBytes >> 20, getHits(), getMisses(), getEvictions(), getRebuilds());
+    }
+
+    private static final class Key {
+        final ManagedIRCache cache;
+        final MethodNode method;
+
+        Key(ManagedIRCache cache, MethodNode method) {
+            this.cache = cache;
+            this.method = method;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return cache == k.cache && method == k.method;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(cache) + System.identityHashCode(method);
+        }
+    }
+}
@@ -1,18 +1,35 @@
 package org.mapleir.jdaplugin;
 
+import club.bytecode.the.jda.FileContainer;
 import club.bytecode.the.jda.decompilers.bytecode.*;
-import org.mapleir.ir.algorithms.BoissinotDestructor;
-import org.mapleir.ir.algorithms.LocalsReallocator;
+import club.bytecode.the.jda.settings.JDADecompilerSettings;
+import org.mapleir.flowgraph.ExceptionRange;
+import org.mapleir.ir.cfg.BasicBlock;
 import org.mapleir.ir.cfg.ControlFlowGraph;
-import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.stdlib.util.TabbedStringWriter;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
 
 public class IRDecompiler extends BytecodeDecompiler implements MapleComponent {
+    final ParallelMethods<ArrayList<String>> parallel = new ParallelMethods<>();
+
+    public IRDecompiler() {
+        settings.registerSetting(new JDADecompilerSettings.SettingsEntry("parallel-methods", "Decompile methods in parallel", true));
+    }
+
+    @Override
+    public String decompileClassNode(FileContainer container, ClassNode cn) {
+        MaplePlugin.touch(container, cn.name);
+        if (!settings.getEntry("parallel-methods").getBool()) {
+            return super.decompileClassNode(container, cn);
+        }
+        return parallel.decompile(cn, mn -> IRInstructionPrinter.print(cn.name, mn),
+                () -> super.decompileClassNode(container, cn));
+    }
+
     @Override
     protected MethodNodeDecompiler getMethodNodeDecompiler(PrefixedStringBuilder sb, ClassNode cn, Iterator<MethodNode> it) {
         return new IRMethodDecompiler(this, sb, it.next(), cn);
@@ -25,28 +42,51 @@ public class IRDecompiler extends BytecodeDecompiler implements MapleComponent {
 }
 
 class IRMethodDecompiler extends MethodNodeDecompiler {
+    private final String owner;
+
     public IRMethodDecompiler(BytecodeDecompiler parent, PrefixedStringBuilder sb, MethodNode mn, ClassNode cn) {
         super(parent, sb, mn, cn);
         printDetailedMetadata = false;
+        owner = cn.name;
     }
 
     @Override
     protected InstructionPrinter getInstructionPrinter(MethodNode m, TypeAndName[] args) {
-        return new IRInstructionPrinter(this, m, args);
+        return new IRInstructionPrinter(this, m, args, owner);
     }
 }
 
 class IRInstructionPrinter extends InstructionPrinter {
-    public IRInstructionPrinter(MethodNodeDecompiler parent, MethodNode m, TypeAndName[] args) {
+    private final String owner;
+
+    public IRInstructionPrinter(MethodNodeDecompiler parent, MethodNode m, TypeAndName[] args, String owner) {
         super(parent, m, args);
+        this.owner = owner;
     }
 
     @Override
     public ArrayList<String> createPrint() {
-        ControlFlowGraph cfg = ControlFlowGraphBuilder.build(ASMAdaptor.wrapMethodNode(mNode));
-        BoissinotDestructor.leaveSSA(cfg);
-        LocalsReallocator.realloc(cfg);
-        String result = cfg.toString();
-        return new ArrayList<>(Arrays.asList(result.split(System.lineSeparator())));
+        ArrayList<String> lines = ((IRDecompiler) parent.getParent()).parallel.take(mNode);
+        if (lines != null)
+            return lines;
+        try {
+            return print(owner, mNode);
+        } catch(MethodBudget.OverBudgetException e) {
+            return MethodBudget.fallbackPrint(e, super.createPrint());
+        }
+    }
+
+    // what ControlFlowGraph.toString prints, written line by line instead of into one string that's split again
+    static ArrayList<String> print(String owner, MethodNode mn) {
+        ControlFlowGraph cfg = CfgCache.shared().get(owner, mn, "ir", null);
+        LineWriter lw = new LineWriter();
+        TabbedStringWriter sw = lw.asTabbedWriter();
+        for (ExceptionRange<BasicBlock> r : cfg.getRanges()) {
+            sw.print(r.toString()).newline();
+        }
+        for (BasicBlock b : cfg.vertices()) {
+            ControlFlowGraph.blockToString(sw, cfg, b, 0);
+        }
+        return lw.finish();
     }
 }
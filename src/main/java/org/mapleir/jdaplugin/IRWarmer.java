@@ -0,0 +1,204 @@
+package org.mapleir.jdaplugin;
+
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Builds the IR and summaries of the classes of one container that aren't indexed yet. Classes are handed
+ * out most-recently-touched first, so whatever the user is looking at gets built before the rest.
+ */
+public class IRWarmer {
+    private final ManagedIRCache irCache;
+    private final ContainerIndex index;
+    private final AnalysisDiskCache diskCache;
+    private final Map<ClassNode, String> cacheKeys;
+    private final AtomicBoolean cancelled;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final PriorityBlockingQueue<Entry> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong touches = new AtomicLong();
+    private volatile AnalysisProgress progress;
+
+    public IRWarmer(Collection<ClassNode> pending, ManagedIRCache irCache, ContainerIndex index, AnalysisDiskCache diskCache,
+                    Map<ClassNode, String> cacheKeys, AtomicBoolean cancelled) {
+        this.irCache = irCache;
+        this.index = index;
+        this.diskCache = diskCache;
+        this.cacheKeys = cacheKeys;
+        this.cancelled = cancelled;
+        long seq = 0;
+        for (ClassNode cn : pending) {
+            Entry e = new Entry(cn, seq++);
+            entries.put(cn.getName(), e);
+            queue.add(e);
+        }
+    }
+
+    /**
+     * @param progress told about every method built from now on
+     */
+    public void setProgress(AnalysisProgress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * @return number of methods in the classes still to be built
+     */
+    public long remainingMethods() {
+        long n = 0;
+        for (Entry e : entries.values())
+            n += e.cn.getMethods().size();
+        return n;
+    }
+
+    /**
+     * Moves the class to the front of the queue if it hasn't been built yet.
+     */
+    public void touch(String className) {
+        Entry e = entries.get(className);
+        if (e != null && !e.claimed.get() && queue.remove(e)) {
+            e.priority = -touches.incrementAndGet();
+            queue.add(e);
+        }
+    }
+
+    /**
+     * @return number of classes not built yet, including those in progress
+     */
+    public int remaining() {
+        return entries.size();
+    }
+
+    /**
+     * @return names of the classes not fully indexed yet, including those in progress
+     */
+    public Set<String> pending() {
+        return new HashSet<>(entries.keySet());
+    }
+
+    /**
+     * Drains the queue with {@code loops} concurrent workers, leaving the rest of the pool to foreground work.
+     * Each worker builds its class's methods one after another, so the work never spreads past those workers.
+     */
+    public void warm(ForkJoinPool pool, int loops) throws InterruptedException {
+        Workers.invoke(pool, () -> {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < loops; i++) {
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    Entry e;
+                    while (!cancelled.get() && (e = queue.poll()) != null) {
+                        process(e, false);
+                    }
+                }).fork());
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        });
+    }
+
+    /**
+     * Builds everything that is left using the whole pool, waiting for classes other workers are busy with.
+     */
+    public void forceAll(ForkJoinPool pool) throws InterruptedException {
+        forceAll(pool, () -> false);
+    }
+
+    /**
+     * Like {@link #forceAll(ForkJoinPool)}, but stops starting new classes once {@code stop} says so. Classes
+     * already being built are finished, so nothing is left half indexed.
+     */
+    public void forceAll(ForkJoinPool pool, BooleanSupplier stop) throws InterruptedException {
+        Workers.invoke(pool, () -> new ArrayList<>(entries.values()).parallelStream().forEach(e -> {
+            if (cancelled.get() || stop.getAsBoolean())
+                return;
+            if (e.claimed.get()) {
+                e.done.join();
+            } else {
+                queue.remove(e);
+                process(e, true);
+            }
+        }));
+    }
+
+    /**
+     * @param splitMethods build the methods of the class in parallel as well
+     */
+    private void process(Entry e, boolean splitMethods) {
+        if (!e.claimed.compareAndSet(false, true)) {
+            e.done.join();
+            return;
+        }
+        try {
+            ClassNode cn = e.cn;
+            List<MethodNode> methods = cn.getMethods();
+            ControlFlowGraph[] cfgs = new ControlFlowGraph[methods.size()];
+            AtomicBoolean incomplete = new AtomicBoolean();
+            // huge classes are common in obfuscated code, so split per method too when the whole pool is ours
+            IntStream methodIds = IntStream.range(0, cfgs.length);
+            (splitMethods ? methodIds.parallel() : methodIds).forEach(i -> {
+                if (cancelled.get())
+                    return;
+                MethodNode m = methods.get(i);
+                try {
+                    cfgs[i] = irCache.getFor(m);
+                } catch(MethodBudget.OverBudgetException ex) {
+                    // already logged, the summary just won't cover this method
+                    incomplete.set(true);
+                } catch(Exception ex) {
+                    incomplete.set(true);
+                    System.err.println("[MapleIR] Failed to build IR for " + m.getJavaDesc() + ":");
+                    ex.printStackTrace();
+                }
+                AnalysisProgress p = progress;
+                if (p != null)
+                    p.methodsBuilt(1);
+            });
+            if (cancelled.get())
+                return;
+            AnalysisMetrics metrics = AnalysisMetrics.shared();
+            long start = System.nanoTime();
+            ClassSummary summary = ClassSummary.create(cn.getName(), methods, Arrays.asList(cfgs));
+            index.add(summary);
+            long indexed = System.nanoTime();
+            metrics.record(AnalysisMetrics.Phase.INDEX, indexed - start);
+            String key = cacheKeys.get(cn);
+            // a summary missing methods would be served from the cache for good, even once they can be built
+            if (key != null && !incomplete.get()) {
+                diskCache.write(key, summary);
+                metrics.record(AnalysisMetrics.Phase.CACHE_WRITE, System.nanoTime() - indexed);
+            }
+        } finally {
+            entries.remove(e.cn.getName());
+            e.done.complete(null);
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        final ClassNode cn;
+        final long sequence;
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        volatile long priority;
+
+        Entry(ClassNode cn, long sequence) {
+            this.cn = cn;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            if (priority != o.priority)
+                return Long.compare(priority, o.priority);
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+}
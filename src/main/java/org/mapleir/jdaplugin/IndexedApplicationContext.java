@@ -0,0 +1,57 @@
+package org.mapleir.jdaplugin;
+
+import org.mapleir.app.client.ApplicationContext;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.objectweb.asm.Opcodes;
+
+import java.util.*;
+
+/**
+ * Entry points answered from the container's {@link ClassHierarchyIndex} instead of walking MapleIR's class tree
+ * for every method: static initialisers, {@code main} methods and the methods the library may call as overrides
+ * of its own. Computed once, on first use.
+ */
+public class IndexedApplicationContext implements ApplicationContext {
+    private final ClassHierarchyIndex hierarchy;
+    private final Map<org.objectweb.asm.tree.MethodNode, MethodNode> methods = new IdentityHashMap<>();
+    private volatile Set<MethodNode> entryPoints;
+
+    /**
+     * @param classes the wrappers of the classes the index was built from
+     */
+    public IndexedApplicationContext(ClassHierarchyIndex hierarchy, Iterable<ClassNode> classes) {
+        this.hierarchy = hierarchy;
+        for (ClassNode cn : classes) {
+            for (MethodNode mn : cn.getMethods())
+                methods.put(mn.node, mn);
+        }
+    }
+
+    @Override
+    public Set<MethodNode> getEntryPoints() {
+        Set<MethodNode> result = entryPoints;
+        if (result == null) {
+            synchronized (this) {
+                if ((result = entryPoints) == null)
+                    entryPoints = result = Collections.unmodifiableSet(computeEntryPoints());
+            }
+        }
+        return result;
+    }
+
+    private Set<MethodNode> computeEntryPoints() {
+        Set<MethodNode> result = new HashSet<>();
+        for (int i = 0; i < hierarchy.methodCount(); i++) {
+            org.objectweb.asm.tree.MethodNode mn = hierarchy.getMethodNode(i);
+            boolean main = mn.name.equals("main") && mn.desc.equals("([Ljava/lang/String;)V")
+                    && (mn.access & Opcodes.ACC_STATIC) != 0;
+            if (main || mn.name.equals("<clinit>") || hierarchy.mayOverrideLibrary(i)) {
+                MethodNode wrapped = methods.get(mn);
+                if (wrapped != null)
+                    result.add(wrapped);
+            }
+        }
+        return result;
+    }
+}
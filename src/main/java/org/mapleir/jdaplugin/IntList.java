@@ -0,0 +1,33 @@
+package org.mapleir.jdaplugin;
+
+import java.util.Arrays;
+
+/**
+ * Growable int array for the postings lists of the search indexes. Fields are read directly by the indexes.
+ */
+final class IntList {
+    int[] data = new int[2];
+    int size;
+
+    void add(int v) {
+        if (size == data.length)
+            data = Arrays.copyOf(data, size * 2);
+        data[size++] = v;
+    }
+
+    /**
+     * Adds the value unless it was just added, which keeps a list built in ascending order free of duplicates.
+     */
+    void addIfLast(int v) {
+        if (size > 0 && data[size - 1] == v)
+            return;
+        add(v);
+    }
+
+    /**
+     * @return whether the list, which must be sorted, holds the value
+     */
+    boolean contains(int v) {
+        return Arrays.binarySearch(data, 0, size, v) >= 0;
+    }
+}
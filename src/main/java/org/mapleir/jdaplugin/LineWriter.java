@@ -0,0 +1,167 @@
+package org.mapleir.jdaplugin;
+
+import org.mapleir.stdlib.util.TabbedStringWriter;
+
+import java.util.ArrayList;
+
+/**
+ * Drop-in for {@link TabbedStringWriter} in the printers that collects finished lines as it goes, rather than
+ * building a whole-method string that's split up again afterwards. Indentation works the same way: a new line
+ * starts with the indentation in effect when the previous one was ended. The line buffer is borrowed from a
+ * per-thread pool and returned by {@link #finish()}. Printers that only take a {@link TabbedStringWriter} can
+ * write through {@link #asTabbedWriter()}.
+ */
+public class LineWriter {
+    private static final String TAB = defaultTab();
+    // don't keep the buffer of a pathological line around
+    private static final int MAX_POOLED_CAPACITY = 1 << 16;
+    private static final ThreadLocal<StringBuilder> POOL = new ThreadLocal<>();
+
+    private final ArrayList<String> lines;
+    private final String tab;
+    private StringBuilder line;
+    private int tabs;
+
+    public LineWriter() {
+        this(new ArrayList<>());
+    }
+
+    public LineWriter(ArrayList<String> lines) {
+        this(lines, TAB);
+    }
+
+    public LineWriter(ArrayList<String> lines, String tab) {
+        this.lines = lines;
+        this.tab = tab;
+        line = POOL.get();
+        if (line != null) {
+            POOL.set(null);
+            line.setLength(0);
+        } else {
+            line = new StringBuilder(256);
+        }
+    }
+
+    private static String defaultTab() {
+        String s = new TabbedStringWriter().tab().newline().toString();
+        return s.substring(s.indexOf('\n') + 1);
+    }
+
+    public LineWriter print(CharSequence s) {
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == '\n') {
+                line.append(s, start, i > start && s.charAt(i - 1) == '\r' ? i - 1 : i);
+                newline();
+                start = i + 1;
+            }
+        }
+        line.append(s, start, s.length());
+        return this;
+    }
+
+    public LineWriter print(char c) {
+        if (c == '\n')
+            return newline();
+        line.append(c);
+        return this;
+    }
+
+    public LineWriter newline() {
+        lines.add(line.toString());
+        line.setLength(0);
+        for (int i = 0; i < tabs; i++)
+            line.append(tab);
+        return this;
+    }
+
+    public LineWriter tab() {
+        tabs++;
+        return this;
+    }
+
+    public LineWriter untab() {
+        if (tabs > 0)
+            tabs--;
+        return this;
+    }
+
+    /**
+     * @return a writer for MapleIR's own printers that writes through to this one
+     */
+    public TabbedStringWriter asTabbedWriter() {
+        return new TabbedStringWriter() {
+            @Override
+            public TabbedStringWriter print(CharSequence s) {
+                LineWriter.this.print(s);
+                return this;
+            }
+
+            @Override
+            public TabbedStringWriter print(char c) {
+                LineWriter.this.print(c);
+                return this;
+            }
+
+            @Override
+            public TabbedStringWriter newline() {
+                LineWriter.this.newline();
+                return this;
+            }
+
+            @Override
+            public TabbedStringWriter tab() {
+                LineWriter.this.tab();
+                return this;
+            }
+
+            @Override
+            public TabbedStringWriter untab() {
+                LineWriter.this.untab();
+                return this;
+            }
+        };
+    }
+
+    /**
+     * Ends the last line and gives the buffer back. Trailing empty lines are dropped, like
+     * {@link String#split} did.
+     *
+     * @return the lines written
+     */
+    public ArrayList<String> finish() {
+        boolean empty = lines.isEmpty() && line.length() == 0;
+        lines.add(line.toString());
+        if (line.capacity() <= MAX_POOLED_CAPACITY) {
+            POOL.set(line);
+        }
+        line = null;
+        trimTrailingEmpty(lines, empty);
+        return lines;
+    }
+
+    /**
+     * Splits printed text into lines without a regex or intermediate array. Both {@code \n} and {@code \r\n}
+     * end a line, since the MapleIR printers use the platform line separator; otherwise the result is the same as
+     * {@code text.split("\r?\n")}.
+     */
+    public static ArrayList<String> split(String text) {
+        ArrayList<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int end; (end = text.indexOf('\n', start)) >= 0; start = end + 1) {
+            lines.add(text.substring(start, end > start && text.charAt(end - 1) == '\r' ? end - 1 : end));
+        }
+        lines.add(text.substring(start));
+        trimTrailingEmpty(lines, text.isEmpty());
+        return lines;
+    }
+
+    private static void trimTrailingEmpty(ArrayList<String> lines, boolean keepOne) {
+        if (keepOne)
+            return; // "".split(...) is [""]
+        int n = lines.size();
+        while (n > 0 && lines.get(n - 1).isEmpty())
+            n--;
+        lines.subList(n, lines.size()).clear();
+    }
+}
@@ -0,0 +1,237 @@
+package org.mapleir.jdaplugin;
+
+import club.bytecode.the.jda.util.BytecodeUtils;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.context.IRCache;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.code.CodeUnit;
+import org.mapleir.ir.code.Stmt;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * IRCache that can be shared between the analysis workers, the background warmer and the GUI. CFGs are built
+ * outside the lock on first demand, keyed by the application's own {@link MethodNode}s, and may be evicted
+ * under memory pressure by the {@link IRCacheBudget}, in which case they're rebuilt on the next request.
+ */
+public class ManagedIRCache extends IRCache {
+    // rough per-object costs, only used to weigh cfgs against each other and the budget
+    private static final long BLOCK_BYTES = 256;
+    private static final long CODE_UNIT_BYTES = 96;
+    private static final long EDGE_BYTES = 48;
+    private static final int SLOWEST = 5;
+
+    private final IRCacheBudget budget;
+    private final Set<MethodNode> evicted = ConcurrentHashMap.newKeySet();
+    private final AnalysisMetrics.Outliers slowest = new AnalysisMetrics.Outliers(SLOWEST);
+
+    public ManagedIRCache() {
+        this(IRCacheBudget.shared());
+    }
+
+    public ManagedIRCache(IRCacheBudget budget) {
+        super(ManagedIRCache::build);
+        this.budget = budget;
+    }
+
+    /**
+     * @throws MethodBudget.OverBudgetException if the method is over the {@link MethodBudget}
+     */
+    public static ControlFlowGraph build(MethodNode m) {
+        return build(m, null);
+    }
+
+    /**
+     * @param slowest also told how long the cfg took to build, may be null
+     */
+    private static ControlFlowGraph build(MethodNode m, AnalysisMetrics.Outliers slowest) {
+        AnalysisMetrics metrics = AnalysisMetrics.shared();
+        MethodBudget budget = MethodBudget.shared();
+        String owner = m.owner.getName();
+        budget.checkSize(owner, m.node);
+        long start = System.nanoTime();
+        org.objectweb.asm.tree.MethodNode inlined = BytecodeUtils.applyJsrInlineAdapter(m.node);
+        long inlinedAt = System.nanoTime();
+        metrics.record(AnalysisMetrics.Phase.JSR_INLINE, inlinedAt - start);
+        try {
+            ControlFlowGraph cfg = ControlFlowGraphBuilder.build(new MethodNode(inlined, m.owner));
+            long built = System.nanoTime();
+            String method = owner + "." + m.getName() + m.getDesc();
+            metrics.record(AnalysisMetrics.Phase.CFG_BUILD, built - inlinedAt, method);
+            if (slowest != null)
+                slowest.offer(AnalysisMetrics.Phase.CFG_BUILD, built - inlinedAt, method);
+            budget.elapsed(owner, m.node, built - start);
+            budget.checkBlocks(owner, m.node, cfg.vertices().size());
+            return cfg;
+        } catch(MethodBudget.OverBudgetException e) {
+            throw e;
+        } catch(RuntimeException e) {
+            metrics.failed(AnalysisMetrics.Phase.CFG_BUILD);
+            throw e;
+        }
+    }
+
+    @Override
+    public ControlFlowGraph getFor(MethodNode m) {
+        ControlFlowGraph cfg = getIfPresent(m);
+        if (cfg != null) {
+            budget.hit(this, m);
+            return cfg;
+        }
+        budget.miss(evicted.remove(m));
+        cfg = build(m, slowest);
+        synchronized (this) {
+            ControlFlowGraph existing = get(m);
+            if (existing != null)
+                return existing; // somebody else won the race
+            put(m, cfg);
+        }
+        budget.admit(this, m, estimateFootprint(cfg));
+        return cfg;
+    }
+
+    public synchronized ControlFlowGraph getIfPresent(MethodNode m) {
+        return get(m);
+    }
+
+    /**
+     * @return the methods of this cache's container that took longest to build, slowest first
+     */
+    public List<AnalysisMetrics.Outlier> getSlowest() {
+        return slowest.get();
+    }
+
+    @Override
+    public ControlFlowGraph getNonNull(MethodNode m) {
+        return getFor(m);
+    }
+
+    // the map itself is a plain HashMap, so every accessor MapleIR might use takes the lock, and iteration goes
+    // over a copy taken under it rather than a live view that concurrent puts and evictions would break
+
+    @Override
+    public synchronized ControlFlowGraph get(Object key) {
+        return super.get(key);
+    }
+
+    @Override
+    public synchronized ControlFlowGraph getOrDefault(Object key, ControlFlowGraph defaultValue) {
+        return super.getOrDefault(key, defaultValue);
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return super.containsKey(key);
+    }
+
+    @Override
+    public synchronized boolean containsValue(Object value) {
+        return super.containsValue(value);
+    }
+
+    @Override
+    public synchronized ControlFlowGraph put(MethodNode key, ControlFlowGraph value) {
+        return super.put(key, value);
+    }
+
+    @Override
+    public synchronized ControlFlowGraph putIfAbsent(MethodNode key, ControlFlowGraph value) {
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    public synchronized void putAll(Map<? extends MethodNode, ? extends ControlFlowGraph> m) {
+        super.putAll(m);
+    }
+
+    @Override
+    public synchronized ControlFlowGraph computeIfAbsent(MethodNode key, Function<? super MethodNode, ? extends ControlFlowGraph> mappingFunction) {
+        return super.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public synchronized ControlFlowGraph remove(Object key) {
+        return super.remove(key);
+    }
+
+    @Override
+    public synchronized boolean remove(Object key, Object value) {
+        return super.remove(key, value);
+    }
+
+    @Override
+    public synchronized void clear() {
+        super.clear();
+    }
+
+    @Override
+    public synchronized int size() {
+        return super.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return super.isEmpty();
+    }
+
+    @Override
+    public synchronized Set<MethodNode> keySet() {
+        return Collections.unmodifiableSet(new HashSet<>(super.keySet()));
+    }
+
+    @Override
+    public synchronized Collection<ControlFlowGraph> values() {
+        return Collections.unmodifiableList(new ArrayList<>(super.values()));
+    }
+
+    @Override
+    public synchronized Set<Map.Entry<MethodNode, ControlFlowGraph>> entrySet() {
+        Set<Map.Entry<MethodNode, ControlFlowGraph>> copy = new HashSet<>();
+        for (Map.Entry<MethodNode, ControlFlowGraph> e : super.entrySet())
+            copy.add(new AbstractMap.SimpleImmutableEntry<>(e));
+        return Collections.unmodifiableSet(copy);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super MethodNode, ? super ControlFlowGraph> action) {
+        for (Map.Entry<MethodNode, ControlFlowGraph> e : entrySet())
+            action.accept(e.getKey(), e.getValue());
+    }
+
+    void evict(MethodNode m) {
+        synchronized (this) {
+            if (remove(m) == null)
+                return;
+        }
+        evicted.add(m);
+    }
+
+    /**
+     * Drops every cfg and returns their share of the budget, for when the container is closed.
+     */
+    public void release() {
+        budget.release(this);
+        synchronized (this) {
+            clear();
+        }
+        evicted.clear();
+    }
+
+    public static long estimateFootprint(ControlFlowGraph cfg) {
+        long bytes = 0;
+        for (BasicBlock b : cfg.vertices()) {
+            bytes += BLOCK_BYTES + EDGE_BYTES * cfg.getEdges(b).size();
+            for (Stmt stmt : b) {
+                for (CodeUnit ignored : stmt.enumerateExecutionOrder()) {
+                    bytes += CODE_UNIT_BYTES;
+                }
+            }
+        }
+        return bytes;
+    }
+}
@@ -8,7 +8,6 @@ import club.bytecode.the.jda.decompilers.Decompilers;
 import club.bytecode.the.jda.decompilers.filter.DecompileFilters;
 import org.mapleir.jdaplugin.gui.AboutDialog;
 import org.mapleir.jdaplugin.gui.GuiIntegration;
-import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 public class MaplePlugin implements JDAPlugin {
     private static MaplePlugin instance;
@@ -24,13 +23,23 @@ public class MaplePlugin implements JDAPlugin {
     }
 
     public static void main(String[] args) {
-        throw new NotImplementedException();
+        System.exit(HeadlessRunner.run(args));
     }
 
     public static MaplePlugin getInstance() {
         return instance;
     }
 
+    /**
+     * Tells the analysis manager the user is looking at a class, if there is one, which there isn't headless.
+     * Called by the decompilers whenever a class is shown, so switching tabs or containers is seen here.
+     */
+    static void touch(FileContainer container, String className) {
+        MaplePlugin plugin = instance;
+        if (plugin != null)
+            plugin.analysisEngine.touch(container, className);
+    }
+
     @Override
     public String getName() {
         return "MapleIR";
@@ -46,7 +55,9 @@ public class MaplePlugin implements JDAPlugin {
         Decompilers.registerDecompiler(new IRDecompiler());
         Decompilers.registerDecompiler(new DebugILDecompiler());
         Decompilers.registerDecompiler(new ILDecompiler());
-        DecompileFilters.registerFilter(new DeobfuscateFilter());
+        DeobfuscateFilter deobfuscateFilter = new DeobfuscateFilter();
+        deobfuscateFilter.registerGauges(AnalysisMetrics.shared());
+        DecompileFilters.registerFilter(deobfuscateFilter);
         System.out.println("MapleIR decompilers registered");
     }
 
@@ -0,0 +1,37 @@
+package org.mapleir.jdaplugin;
+
+import club.bytecode.the.jda.FileContainer;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * A container over entries already read into memory, so the {@link AnalysisManager} can run without JDA's GUI
+ * having opened anything: batch runs and benchmarks.
+ */
+public class MemoryFileContainer extends FileContainer {
+    private final Map<String, byte[]> files;
+
+    public MemoryFileContainer(Path path, Map<String, byte[]> files) {
+        super(path.toFile());
+        this.name = path.getFileName().toString();
+        this.files = files;
+    }
+
+    @Override
+    public Map<String, byte[]> getFiles() {
+        return files;
+    }
+
+    @Override
+    public ClassNode loadClassFile(String file) {
+        byte[] bytes = files.get(file);
+        if (bytes == null)
+            return null;
+        ClassNode cn = new ClassNode();
+        new ClassReader(bytes).accept(cn, ClassReader.SKIP_FRAMES);
+        return cn;
+    }
+}
@@ -0,0 +1,218 @@
+package org.mapleir.jdaplugin;
+
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-method limits so one pathological method can't stall analysis, the deobfuscator or a decompiler tab.
+ * Size limits are checked before any work is done and the block count right after the cfg is built. Building
+ * the cfg itself can't be interrupted, so a method whose build overran the time limit is only remembered and
+ * skipped the next time, while our own passes check a {@link Deadline} as they go.
+ *
+ * Methods that went over budget stay skipped until {@link #retry} exempts them from the limits.
+ */
+public class MethodBudget {
+    public static final String INSTRUCTIONS_PROPERTY = "mapleir.budget.instructions";
+    public static final String HANDLERS_PROPERTY = "mapleir.budget.handlers";
+    public static final String BLOCKS_PROPERTY = "mapleir.budget.blocks";
+    public static final String MILLIS_PROPERTY = "mapleir.budget.millis";
+
+    private static final MethodBudget SHARED = new MethodBudget(
+            Integer.getInteger(INSTRUCTIONS_PROPERTY, 100000),
+            Integer.getInteger(HANDLERS_PROPERTY, 5000),
+            Integer.getInteger(BLOCKS_PROPERTY, 20000),
+            Long.getLong(MILLIS_PROPERTY, 30000));
+
+    public static class OverBudgetException extends RuntimeException {
+        public final String method;
+
+        public OverBudgetException(String method, String reason) {
+            super(method + ": " + reason);
+            this.method = method;
+        }
+    }
+
+    private final int maxInstructions;
+    private final int maxHandlers;
+    private final int maxBlocks;
+    private final long maxNanos;
+
+    // method -> why it was skipped
+    private final Map<String, String> skipped = new ConcurrentHashMap<>();
+    private final Set<String> exempt = ConcurrentHashMap.newKeySet();
+    private final AtomicLong exceeded = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Limits that are zero or negative aren't enforced.
+     */
+    public MethodBudget(int maxInstructions, int maxHandlers, int maxBlocks, long maxMillis) {
+        this.maxInstructions = maxInstructions;
+        this.maxHandlers = maxHandlers;
+        this.maxBlocks = maxBlocks;
+        this.maxNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+    }
+
+    public static MethodBudget shared() {
+        return SHARED;
+    }
+
+    public static String key(String owner, MethodNode mn) {
+        return owner + "." + mn.name + mn.desc;
+    }
+
+    /**
+     * @return the owner class of a {@link #key}, neither internal class names nor method names may contain dots
+     */
+    public static String owner(String key) {
+        return key.substring(0, key.lastIndexOf('.', key.indexOf('(')));
+    }
+
+    /**
+     * @throws OverBudgetException if the method is too big to start on, or went over budget before
+     */
+    public void checkSize(String owner, MethodNode mn) {
+        String key = key(owner, mn);
+        if (exempt.contains(key))
+            return;
+        String reason = skipped.get(key);
+        if (reason == null) {
+            int insns = mn.instructions == null ? 0 : mn.instructions.size();
+            int handlers = mn.tryCatchBlocks == null ? 0 : mn.tryCatchBlocks.size();
+            if (maxInstructions > 0 && insns > maxInstructions) {
+                reason = insns + " instructions, limit " + maxInstructions;
+            } else if (maxHandlers > 0 && handlers > maxHandlers) {
+                reason = handlers + " exception handlers, limit " + maxHandlers;
+            }
+            if (reason == null)
+                return;
+            skip(key, reason);
+        }
+        rejected.incrementAndGet();
+        throw new OverBudgetException(key, reason);
+    }
+
+    /**
+     * @throws OverBudgetException if the built cfg has too many blocks
+     */
+    public void checkBlocks(String owner, MethodNode mn, int blocks) {
+        String key = key(owner, mn);
+        if (maxBlocks > 0 && blocks > maxBlocks && !exempt.contains(key)) {
+            String reason = blocks + " blocks, limit " + maxBlocks;
+            skip(key, reason);
+            rejected.incrementAndGet();
+            throw new OverBudgetException(key, reason);
+        }
+    }
+
+    /**
+     * Remembers a method whose (uninterruptible) work took longer than the time limit, the result is kept.
+     */
+    public void elapsed(String owner, MethodNode mn, long nanos) {
+        String key = key(owner, mn);
+        if (maxNanos > 0 && nanos > maxNanos && !exempt.contains(key)) {
+            skip(key, TimeUnit.NANOSECONDS.toMillis(nanos) + " ms, limit " + TimeUnit.NANOSECONDS.toMillis(maxNanos) + " ms");
+        }
+    }
+
+    public Deadline deadline(String owner, MethodNode mn) {
+        String key = key(owner, mn);
+        if (maxNanos <= 0 || exempt.contains(key))
+            return Deadline.NONE;
+        return new Deadline(this, key, System.nanoTime() + maxNanos);
+    }
+
+    private void skip(String key, String reason) {
+        if (skipped.put(key, reason) == null) {
+            exceeded.incrementAndGet();
+            System.out.println("[MapleIR] Over budget, skipping " + key + " (" + reason + ")");
+        }
+    }
+
+    public boolean isSkipped(String owner, MethodNode mn) {
+        return skipped.containsKey(key(owner, mn));
+    }
+
+    /**
+     * @return skipped methods and why, sorted by method
+     */
+    public Map<String, String> getSkipped() {
+        return new TreeMap<>(skipped);
+    }
+
+    /**
+     * Lifts the limits for a skipped method, the next request for it does the full work however long it takes.
+     */
+    public void retry(String key) {
+        exempt.add(key);
+        skipped.remove(key);
+    }
+
+    public void retryAll() {
+        for (String key : skipped.keySet())
+            retry(key);
+    }
+
+    /**
+     * @return number of distinct methods that went over budget
+     */
+    public long getExceeded() {
+        return exceeded.get();
+    }
+
+    /**
+     * @return number of requests refused because of the budget
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getSkippedCount() {
+        return skipped.size();
+    }
+
+    /**
+     * What the IL and IR printers show instead of a method that's over budget: the plain bytecode listing.
+     */
+    static ArrayList<String> fallbackPrint(OverBudgetException e, List<String> raw) {
+        ArrayList<String> lines = new ArrayList<>(raw == null ? 1 : raw.size() + 1);
+        lines.add("// MapleIR: over budget (" + e.getMessage() + "), showing bytecode. Retry it from the MapleIR menu.");
+        if (raw != null)
+            lines.addAll(raw);
+        return lines;
+    }
+
+    public static final class Deadline {
+        public static final Deadline NONE = new Deadline(null, null, Long.MAX_VALUE);
+
+        private final MethodBudget budget;
+        private final String method;
+        private final long deadline;
+
+        private Deadline(MethodBudget budget, String method, long deadline) {
+            this.budget = budget;
+            this.method = method;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @throws OverBudgetException once the time is up
+         */
+        public void check() {
+            if (budget != null && System.nanoTime() - deadline > 0) {
+                String reason = "over " + TimeUnit.NANOSECONDS.toMillis(budget.maxNanos) + " ms";
+                budget.skip(method, reason);
+                budget.rejected.incrementAndGet();
+                throw new OverBudgetException(method, reason);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.mapleir.jdaplugin;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Where headless runs write their output, either a jar or a directory tree.
+ */
+public interface OutputSink extends Closeable {
+    void write(String name, byte[] data) throws IOException;
+
+    static OutputSink open(Path path) throws IOException {
+        return path.toString().endsWith(".jar") ? new Jar(path) : new Directory(path);
+    }
+
+    class Jar implements OutputSink {
+        private final JarOutputStream out;
+        private final Set<String> written = new HashSet<>();
+
+        public Jar(Path path) throws IOException {
+            if (path.getParent() != null)
+                Files.createDirectories(path.getParent());
+            out = new JarOutputStream(new FileOutputStream(path.toFile()));
+        }
+
+        @Override
+        public synchronized void write(String name, byte[] data) throws IOException {
+            if (!written.add(name)) {
+                System.err.println("[MapleIR] Skipping duplicate entry " + name);
+                return;
+            }
+            out.putNextEntry(new ZipEntry(name));
+            out.write(data);
+            out.closeEntry();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+
+    class Directory implements OutputSink {
+        private final Path root;
+
+        public Directory(Path root) throws IOException {
+            this.root = Files.createDirectories(root);
+        }
+
+        @Override
+        public void write(String name, byte[] data) throws IOException {
+            Path file = root.resolve(name).normalize();
+            if (!file.startsWith(root))
+                throw new IOException("Entry outside of output directory: " + name);
+            Files.createDirectories(file.getParent());
+            Files.write(file, data);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
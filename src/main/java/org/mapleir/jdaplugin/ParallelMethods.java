@@ -0,0 +1,73 @@
+package org.mapleir.jdaplugin;
+
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Does the expensive per-method part of decompiling a class on a fork-join pool ahead of JDA's
+ * sequential, declaration-ordered printing, which then just picks up the results. Since the printers run the
+ * same code either way, the output is identical to the sequential path. Called from a pool worker the methods
+ * are forked into that pool, otherwise they run on the {@link Workers} pool.
+ */
+class ParallelMethods<T> {
+    private final ThreadLocal<Map<MethodNode, T>> results = new ThreadLocal<>();
+
+    /**
+     * @param work per-method computation, must be safe to run concurrently for different methods
+     * @param print the sequential decompilation, run on the calling thread
+     */
+    String decompile(ClassNode cn, Function<MethodNode, T> work, Supplier<String> print) {
+        List<MethodNode> methods = cn.methods.stream()
+                .filter(mn -> mn.instructions != null && mn.instructions.size() > 0)
+                .collect(Collectors.toList());
+        if (methods.size() < 2)
+            return print.get();
+
+        Map<MethodNode, T> prefetched = new IdentityHashMap<>();
+        List<ForkJoinTask<?>> tasks = methods.stream().map(mn -> ForkJoinTask.adapt(() -> {
+            T result;
+            try {
+                result = work.apply(mn);
+            } catch(Exception e) {
+                return; // the sequential path will hit (and report) it again
+            }
+            synchronized (prefetched) {
+                prefetched.put(mn, result);
+            }
+        })).collect(Collectors.toList());
+        if (ForkJoinTask.inForkJoinPool()) {
+            // already on a worker, e.g. a batch run: fork into its pool and help with the joins rather than
+            // parking the worker on a nested submit
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            try {
+                Workers.invoke(Workers.shared(), () -> ForkJoinTask.invokeAll(tasks));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        results.set(prefetched);
+        try {
+            return print.get();
+        } finally {
+            results.remove();
+        }
+    }
+
+    /**
+     * @return the prefetched result for a method of the class being decompiled on this thread, or null
+     */
+    T take(MethodNode mn) {
+        Map<MethodNode, T> prefetched = results.get();
+        return prefetched == null ? null : prefetched.remove(mn);
+    }
+}
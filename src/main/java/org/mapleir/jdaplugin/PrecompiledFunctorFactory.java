@@ -0,0 +1,78 @@
+package org.mapleir.jdaplugin;
+
+import org.mapleir.deob.intraproc.eval.EvaluationFactory;
+import org.mapleir.deob.intraproc.eval.EvaluationFunctor;
+import org.mapleir.deob.intraproc.eval.impl.ReflectiveFunctorFactory;
+import org.mapleir.ir.code.expr.ArithmeticExpr;
+import org.mapleir.ir.code.expr.ComparisonExpr;
+import org.mapleir.ir.code.stmt.ConditionalJumpStmt;
+import org.objectweb.asm.Type;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Evaluator functors backed by {@link ConstantFolder}'s switch operations instead of generated and reflectively
+ * invoked classes. Operand kinds those don't handle (byte/short/char narrowing, reference comparisons, division
+ * by zero) go to the fallback factory, whose functor is only built the first time it's needed.
+ */
+public class PrecompiledFunctorFactory implements EvaluationFactory {
+    private final EvaluationFactory fallback;
+
+    public PrecompiledFunctorFactory() {
+        this(new ReflectiveFunctorFactory());
+    }
+
+    public PrecompiledFunctorFactory(EvaluationFactory fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public EvaluationFunctor<Boolean> branch(Type lt, Type rt, ConditionalJumpStmt.ComparisonType type) {
+        return functor(args -> args.length == 2 ? ConstantFolder.branch(type, args[0], args[1]) : null,
+                () -> fallback.branch(lt, rt, type));
+    }
+
+    @Override
+    public EvaluationFunctor<Number> compare(Type lt, Type rt, ComparisonExpr.ValueComparisonType type) {
+        return functor(args -> args.length == 2 ? (Number) ConstantFolder.compare(type, args[0], args[1]) : null,
+                () -> fallback.compare(lt, rt, type));
+    }
+
+    @Override
+    public EvaluationFunctor<Number> cast(Type from, Type to) {
+        return functor(args -> args.length == 1 ? (Number) ConstantFolder.cast(to, args[0]) : null,
+                () -> fallback.cast(from, to));
+    }
+
+    @Override
+    public EvaluationFunctor<Number> negate(Type t) {
+        return functor(args -> args.length == 1 ? (Number) ConstantFolder.negate(t, args[0]) : null,
+                () -> fallback.negate(t));
+    }
+
+    @Override
+    public EvaluationFunctor<Number> arithmetic(Type t1, Type t2, Type rt, ArithmeticExpr.Operator op) {
+        return functor(args -> args.length == 2 ? (Number) ConstantFolder.arithmetic(op, rt, args[0], args[1]) : null,
+                () -> fallback.arithmetic(t1, t2, rt, op));
+    }
+
+    private static <T> EvaluationFunctor<T> functor(Function<Object[], T> op, Supplier<EvaluationFunctor<T>> slow) {
+        return new EvaluationFunctor<T>() {
+            private volatile EvaluationFunctor<T> compiled;
+
+            @Override
+            public T eval(Object... args)
+                    throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+                T result = op.apply(args);
+                if (result != null)
+                    return result;
+                EvaluationFunctor<T> f = compiled;
+                if (f == null)
+                    compiled = f = slow.get();
+                return f.eval(args);
+            }
+        };
+    }
+}
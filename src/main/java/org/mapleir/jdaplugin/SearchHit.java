@@ -0,0 +1,32 @@
+package org.mapleir.jdaplugin;
+
+import club.bytecode.the.jda.FileContainer;
+import club.bytecode.the.jda.gui.fileviewer.ViewerFile;
+
+import java.util.List;
+
+/**
+ * One class matching a search, with the number of matches in it and the methods they occur in.
+ */
+public class SearchHit {
+    public final FileContainer container;
+    public final String className;
+    public final int hits;
+    public final List<String> locations;
+
+    public SearchHit(FileContainer container, String className, int hits, List<String> locations) {
+        this.container = container;
+        this.className = className;
+        this.hits = hits;
+        this.locations = locations;
+    }
+
+    public ViewerFile toViewerFile() {
+        return new ViewerFile(container, className + ".class");
+    }
+
+    @Override
+    public String toString() {
+        return className + " (" + hits + (hits == 1 ? " hit" : " hits") + " in " + String.join(", ", locations) + ")";
+    }
+}
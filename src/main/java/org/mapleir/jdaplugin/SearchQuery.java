@@ -0,0 +1,115 @@
+package org.mapleir.jdaplugin;
+
+import org.mapleir.stdlib.util.JavaDesc;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.regex.Pattern;
+
+/**
+ * A search over the {@link ContainerIndex} of each open container. Implementations report every matching
+ * site; {@link AnalysisManager#search(SearchQuery, int, java.util.function.Consumer)} folds them per class.
+ */
+public interface SearchQuery {
+    interface Sink {
+        void hit(String className, int methodIndex);
+    }
+
+    void run(ContainerIndex index, Sink sink);
+
+    static SearchQuery constant(String needle, ConstantIndex.Match match) {
+        return (index, sink) -> {
+            for (String className : index.getConstants().find(needle, match).keySet()) {
+                ClassSummary summary = index.get(className);
+                if (summary == null)
+                    continue;
+                for (int i = 0; i < summary.constantCount(); i++) {
+                    String text = String.valueOf(summary.constants[i]);
+                    boolean matches = match == ConstantIndex.Match.EXACT ? text.equals(needle)
+                            : match == ConstantIndex.Match.PREFIX ? text.startsWith(needle) : text.contains(needle);
+                    if (matches)
+                        sink.hit(className, summary.constantMethods[i]);
+                }
+            }
+        };
+    }
+
+    static SearchQuery constantRange(double from, double to) {
+        return (index, sink) -> {
+            for (String className : index.getConstants().findInRange(from, to).keySet()) {
+                ClassSummary summary = index.get(className);
+                if (summary == null)
+                    continue;
+                for (int i = 0; i < summary.constantCount(); i++) {
+                    Object cst = summary.constants[i];
+                    boolean matches;
+                    if (cst instanceof Integer || cst instanceof Long) {
+                        long v = ((Number) cst).longValue();
+                        matches = v >= Math.ceil(from) && v <= Math.floor(to);
+                    } else if (cst instanceof Float || cst instanceof Double) {
+                        double v = ((Number) cst).doubleValue();
+                        matches = v >= from && v <= to;
+                    } else {
+                        matches = false;
+                    }
+                    if (matches)
+                        sink.hit(className, summary.constantMethods[i]);
+                }
+            }
+        };
+    }
+
+    /**
+     * Uses of a member, null components match anything.
+     */
+    static SearchQuery member(JavaDesc.DescType type, String owner, String name, String desc) {
+        return (index, sink) -> index.getSymbols().find(type, owner, name, desc,
+                (o, n, d, className, method, kind) -> sink.hit(className, method));
+    }
+
+    /**
+     * Uses of a member, also through the subtypes of its owner that inherit it rather than declaring their own.
+     * Falls back to {@link #member} when a component is null or the owner isn't in the container's hierarchy.
+     */
+    static SearchQuery memberInHierarchy(JavaDesc.DescType type, String owner, String name, String desc) {
+        SearchQuery exact = member(type, owner, name, desc);
+        if (owner == null || name == null || desc == null)
+            return exact;
+        return (index, sink) -> {
+            ClassHierarchyIndex hierarchy = index.getHierarchy();
+            int root = hierarchy == null ? -1 : hierarchy.id(owner);
+            if (root < 0) {
+                exact.run(index, sink);
+                return;
+            }
+            BitSet visited = new BitSet();
+            Deque<Integer> queue = new ArrayDeque<>();
+            queue.add(root);
+            visited.set(root);
+            while (!queue.isEmpty()) {
+                int t = queue.poll();
+                index.getSymbols().find(type, hierarchy.getName(t), name, desc,
+                        (o, n, d, className, method, kind) -> sink.hit(className, method));
+                for (int i = 0; i < hierarchy.childCount(t); i++) {
+                    int child = hierarchy.getChild(t, i);
+                    boolean redeclared = type == JavaDesc.DescType.FIELD ? hierarchy.declaresField(child, name, desc)
+                            : hierarchy.getMethod(child, name, desc) >= 0;
+                    if (!redeclared && !visited.get(child)) {
+                        visited.set(child);
+                        queue.add(child);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Uses of members whose name matches a regex.
+     */
+    static SearchQuery memberPattern(JavaDesc.DescType type, String nameRegex) {
+        Pattern pattern = Pattern.compile(nameRegex);
+        return (index, sink) -> index.getSymbols().findMatching(type, null, pattern, null,
+                (o, n, d, className, method, kind) -> sink.hit(className, method));
+    }
+}
@@ -0,0 +1,57 @@
+package org.mapleir.jdaplugin;
+
+import club.bytecode.the.jda.FileContainer;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Handle on a running search. Hits are streamed to the search's consumer, this only tracks progress.
+ */
+public class SearchTask {
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final AtomicInteger emitted = new AtomicInteger();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final List<FileContainer> partial = new CopyOnWriteArrayList<>();
+
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    /**
+     * @return number of distinct classes reported so far
+     */
+    public int getEmitted() {
+        return emitted.get();
+    }
+
+    /**
+     * @return containers whose analysis hadn't finished when they were searched, so hits may be missing
+     */
+    public List<FileContainer> getPartialContainers() {
+        return partial;
+    }
+
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    int emit() {
+        return emitted.incrementAndGet();
+    }
+
+    void partial(FileContainer fc) {
+        partial.add(fc);
+    }
+}
@@ -0,0 +1,123 @@
+package org.mapleir.jdaplugin;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Rewrites a jar entry by entry without materialising all of its classes. A reader thread feeds entries to the
+ * worker pool and queues their futures in input order, a bounded queue so it stalls when the writer falls
+ * behind, and the calling thread writes results out in that same order. Only the class headers, needed to
+ * compute frames, are kept for the whole jar.
+ */
+public class StreamingRewriter {
+    public interface Transform {
+        /**
+         * @param out receives the entries to write for this one, in order
+         */
+        void apply(String name, byte[] data, Map<String, byte[]> out) throws Exception;
+    }
+
+    private static final Future<Map<String, byte[]>> END = CompletableFuture.completedFuture(null);
+
+    private final ForkJoinPool pool;
+    private final int window;
+
+    /**
+     * @param window max number of entries read ahead of the writer
+     */
+    public StreamingRewriter(ForkJoinPool pool, int window) {
+        this.pool = pool;
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * First pass, reads just the header of every class in the jar.
+     */
+    public static ClassHierarchyIndex readHeaders(ZipFile zip) throws IOException {
+        ClassHierarchyIndex.Builder headers = new ClassHierarchyIndex.Builder();
+        for (ZipEntry entry : Collections.list(zip.entries())) {
+            if (entry.isDirectory() || !entry.getName().endsWith(".class"))
+                continue;
+            try (InputStream in = zip.getInputStream(entry)) {
+                headers.add(new ClassReader(in));
+            } catch(Exception e) {
+                System.err.println("[MapleIR] Failed to read header of " + entry.getName() + ": " + e);
+            }
+        }
+        return headers.build();
+    }
+
+    /**
+     * Second pass, transforms and writes every entry.
+     */
+    public void rewrite(ZipFile zip, Transform transform, OutputSink out) throws IOException, InterruptedException {
+        BlockingQueue<Future<Map<String, byte[]>>> pending = new ArrayBlockingQueue<>(window);
+        Throwable[] readError = new Throwable[1];
+        Thread reader = new Thread(() -> {
+            boolean abandoned = false;
+            try {
+                for (ZipEntry entry : Collections.list(zip.entries())) {
+                    if (entry.isDirectory())
+                        continue;
+                    byte[] data;
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        data = HeadlessRunner.readFully(in);
+                    }
+                    pending.put(pool.submit(() -> {
+                        Map<String, byte[]> result = new LinkedHashMap<>();
+                        transform.apply(entry.getName(), data, result);
+                        return result;
+                    }));
+                }
+            } catch(InterruptedException e) {
+                abandoned = true; // the writer gave up, nobody is waiting for the end marker
+            } catch(Throwable t) {
+                readError[0] = t;
+            } finally {
+                // whatever went wrong, the writer must not be left waiting forever
+                if (!abandoned) {
+                    try {
+                        pending.put(END);
+                    } catch(InterruptedException ignored) {
+                    }
+                }
+            }
+        }, "MapleIR-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            for (Future<Map<String, byte[]>> f; (f = pending.take()) != END; ) {
+                Map<String, byte[]> result;
+                try {
+                    result = f.get();
+                } catch(ExecutionException e) {
+                    throw new IOException("Transform failed", e.getCause());
+                }
+                for (Map.Entry<String, byte[]> e : result.entrySet()) {
+                    out.write(e.getKey(), e.getValue());
+                }
+            }
+            reader.join();
+            Throwable error = readError[0];
+            if (error instanceof IOException)
+                throw (IOException) error;
+            if (error instanceof RuntimeException)
+                throw (RuntimeException) error;
+            if (error instanceof Error)
+                throw (Error) error;
+        } finally {
+            if (reader.isAlive()) {
+                reader.interrupt();
+                for (Future<?> f : pending)
+                    f.cancel(true);
+            }
+        }
+    }
+}
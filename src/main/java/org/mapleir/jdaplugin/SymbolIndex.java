@@ -0,0 +1,258 @@
+package org.mapleir.jdaplugin;
+
+import org.mapleir.stdlib.util.JavaDesc;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Cross-reference index from referenced members (owner, name, desc) to the sites that use them. Symbols and
+ * referencing classes are interned to ids, sites are stored in parallel primitive arrays. Removed and re-added
+ * classes are masked out, the index compacts once their sites dominate, renumbering the live classes and dropping
+ * symbols nothing uses any more.
+ */
+public class SymbolIndex {
+    public interface SiteVisitor {
+        void visit(String owner, String name, String desc, String className, int methodIndex, byte kind);
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // symbols
+    private final List<String> symOwners = new ArrayList<>();
+    private final List<String> symNames = new ArrayList<>();
+    private final List<String> symDescs = new ArrayList<>();
+    private final List<JavaDesc.DescType> symTypes = new ArrayList<>();
+    private final List<IntList> symSites = new ArrayList<>();
+    private final Map<String, Integer> symbolIds = new HashMap<>();
+    private final Map<String, IntList> byName = new HashMap<>();
+    private final Map<String, IntList> byOwner = new HashMap<>();
+
+    // referencing classes
+    private final List<String> classNames = new ArrayList<>();
+    private final List<Integer> classSiteCounts = new ArrayList<>();
+    private final Map<String, Integer> classIds = new HashMap<>();
+    private final BitSet deadClasses = new BitSet();
+
+    // sites
+    private int[] siteClass = new int[64];
+    private int[] siteMethod = new int[64];
+    private byte[] siteKind = new byte[64];
+    private int siteCount;
+    private int deadSites;
+
+    public void add(ClassSummary summary) {
+        lock.writeLock().lock();
+        try {
+            removeClass(summary.name);
+            int classId = classNames.size();
+            classNames.add(summary.name);
+            classSiteCounts.add(summary.refCount());
+            classIds.put(summary.name, classId);
+            for (int i = 0; i < summary.refCount(); i++) {
+                int sym = intern(ClassSummary.descType(summary.refKinds[i]), summary.refOwners[i], summary.refNames[i], summary.refDescs[i]);
+                symSites.get(sym).add(addSite(classId, summary.refMethods[i], summary.refKinds[i]));
+            }
+            compactIfMostlyDead();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String className) {
+        lock.writeLock().lock();
+        try {
+            removeClass(className);
+            compactIfMostlyDead();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeClass(String className) {
+        Integer old = classIds.remove(className);
+        if (old == null)
+            return;
+        deadClasses.set(old);
+        deadSites += classSiteCounts.get(old);
+    }
+
+    private int intern(JavaDesc.DescType type, String owner, String name, String desc) {
+        String key = type.ordinal() + owner + '.' + name + ' ' + desc;
+        Integer id = symbolIds.get(key);
+        if (id != null)
+            return id;
+        id = symOwners.size();
+        symOwners.add(owner);
+        symNames.add(name);
+        symDescs.add(desc);
+        symTypes.add(type);
+        symSites.add(new IntList());
+        symbolIds.put(key, id);
+        byName.computeIfAbsent(name, k -> new IntList()).add(id);
+        byOwner.computeIfAbsent(owner, k -> new IntList()).add(id);
+        return id;
+    }
+
+    private int addSite(int classId, int method, byte kind) {
+        if (siteCount == siteClass.length) {
+            int n = siteCount * 2;
+            siteClass = Arrays.copyOf(siteClass, n);
+            siteMethod = Arrays.copyOf(siteMethod, n);
+            siteKind = Arrays.copyOf(siteKind, n);
+        }
+        siteClass[siteCount] = classId;
+        siteMethod[siteCount] = method;
+        siteKind[siteCount] = kind;
+        return siteCount++;
+    }
+
+    private void compactIfMostlyDead() {
+        if (deadSites > 4096 && deadSites > siteCount / 2) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        // live classes keep their order under new ids
+        int[] classRemap = new int[classNames.size()];
+        List<String> oldClassNames = new ArrayList<>(classNames);
+        List<Integer> oldClassSiteCounts = new ArrayList<>(classSiteCounts);
+        classNames.clear();
+        classSiteCounts.clear();
+        for (int c = 0; c < classRemap.length; c++) {
+            if (deadClasses.get(c)) {
+                classRemap[c] = -1;
+                continue;
+            }
+            classRemap[c] = classNames.size();
+            classIds.put(oldClassNames.get(c), classNames.size());
+            classNames.add(oldClassNames.get(c));
+            classSiteCounts.add(oldClassSiteCounts.get(c));
+        }
+        deadClasses.clear();
+
+        int[] remap = new int[siteCount];
+        int n = 0;
+        for (int i = 0; i < siteCount; i++) {
+            int cls = classRemap[siteClass[i]];
+            if (cls < 0) {
+                remap[i] = -1;
+                continue;
+            }
+            remap[i] = n;
+            siteClass[n] = cls;
+            siteMethod[n] = siteMethod[i];
+            siteKind[n] = siteKind[i];
+            n++;
+        }
+        siteCount = n;
+        deadSites = 0;
+
+        List<String> oldOwners = new ArrayList<>(symOwners);
+        List<String> oldNames = new ArrayList<>(symNames);
+        List<String> oldDescs = new ArrayList<>(symDescs);
+        List<JavaDesc.DescType> oldTypes = new ArrayList<>(symTypes);
+        List<IntList> oldSites = new ArrayList<>(symSites);
+        symOwners.clear();
+        symNames.clear();
+        symDescs.clear();
+        symTypes.clear();
+        symSites.clear();
+        symbolIds.clear();
+        byName.clear();
+        byOwner.clear();
+        for (int sym = 0; sym < oldSites.size(); sym++) {
+            IntList sites = oldSites.get(sym);
+            int m = 0;
+            for (int i = 0; i < sites.size; i++) {
+                int site = remap[sites.data[i]];
+                if (site >= 0)
+                    sites.data[m++] = site;
+            }
+            sites.size = m;
+            if (m == 0)
+                continue;
+            int id = intern(oldTypes.get(sym), oldOwners.get(sym), oldNames.get(sym), oldDescs.get(sym));
+            symSites.set(id, sites);
+        }
+    }
+
+    /**
+     * Exact lookup, null components match anything.
+     */
+    public void find(JavaDesc.DescType type, String owner, String name, String desc, SiteVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            if (owner != null && name != null && desc != null) {
+                Integer sym = symbolIds.get(type.ordinal() + owner + '.' + name + ' ' + desc);
+                if (sym != null)
+                    visitSites(sym, visitor);
+                return;
+            }
+            IntList candidates = name != null ? byName.get(name) : owner != null ? byOwner.get(owner) : null;
+            if (candidates != null) {
+                for (int i = 0; i < candidates.size; i++) {
+                    int sym = candidates.data[i];
+                    if (symbolMatches(sym, type, owner, name, desc))
+                        visitSites(sym, visitor);
+                }
+            } else if (name == null && owner == null) {
+                for (int sym = 0; sym < symNames.size(); sym++) {
+                    if (symbolMatches(sym, type, null, null, desc))
+                        visitSites(sym, visitor);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Regex lookup, scans the symbol table rather than every site. Null patterns match anything.
+     */
+    public void findMatching(JavaDesc.DescType type, Pattern owner, Pattern name, Pattern desc, SiteVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (int sym = 0; sym < symNames.size(); sym++) {
+                if (symTypes.get(sym) == type
+                        && (owner == null || owner.matcher(symOwners.get(sym)).matches())
+                        && (name == null || name.matcher(symNames.get(sym)).matches())
+                        && (desc == null || desc.matcher(symDescs.get(sym)).matches())) {
+                    visitSites(sym, visitor);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int symbolCount() {
+        lock.readLock().lock();
+        try {
+            return symNames.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean symbolMatches(int sym, JavaDesc.DescType type, String owner, String name, String desc) {
+        return symTypes.get(sym) == type
+                && (owner == null || owner.equals(symOwners.get(sym)))
+                && (name == null || name.equals(symNames.get(sym)))
+                && (desc == null || desc.equals(symDescs.get(sym)));
+    }
+
+    private void visitSites(int sym, SiteVisitor visitor) {
+        IntList sites = symSites.get(sym);
+        for (int i = 0; i < sites.size; i++) {
+            int site = sites.data[i];
+            int cls = siteClass[site];
+            if (deadClasses.get(cls))
+                continue;
+            visitor.visit(symOwners.get(sym), symNames.get(sym), symDescs.get(sym), classNames.get(cls), siteMethod[site], siteKind[site]);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.mapleir.jdaplugin;
+
+import java.util.concurrent.*;
+
+/**
+ * Shared work-stealing pool used for analysis and other per-class/per-method work.
+ * Parallelism can be configured with the {@code mapleir.parallelism} system property.
+ */
+public final class Workers {
+    public static final String PARALLELISM_PROPERTY = "mapleir.parallelism";
+
+    private static volatile ForkJoinPool shared;
+
+    private Workers() {
+    }
+
+    public static int parallelism() {
+        return Math.max(1, Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public static ForkJoinPool shared() {
+        if (shared == null) {
+            synchronized (Workers.class) {
+                if (shared == null) {
+                    shared = create(parallelism());
+                }
+            }
+        }
+        return shared;
+    }
+
+    public static ForkJoinPool create(int parallelism) {
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("MapleIR-worker-" + t.getPoolIndex());
+            return t;
+        }, null, false);
+    }
+
+    /**
+     * Runs the task inside the pool (so parallel streams in it use the pool) and waits for it.
+     * If the waiting thread is interrupted the task is cancelled and the interrupt is rethrown,
+     * the task itself is expected to poll its own cancellation flag.
+     */
+    public static <T> T invoke(ForkJoinPool pool, Callable<T> task) throws InterruptedException {
+        if (ForkJoinTask.getPool() == pool) {
+            // already on one of its workers, e.g. nested per-class/per-method work
+            try {
+                return task.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        ForkJoinTask<T> job = pool.submit(task);
+        try {
+            return job.get();
+        } catch (InterruptedException e) {
+            job.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    public static void invoke(ForkJoinPool pool, Runnable task) throws InterruptedException {
+        invoke(pool, Executors.callable(task));
+    }
+}
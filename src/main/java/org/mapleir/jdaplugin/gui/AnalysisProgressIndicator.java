@@ -0,0 +1,73 @@
+package org.mapleir.jdaplugin.gui;
+
+import org.mapleir.jdaplugin.AnalysisManager;
+import org.mapleir.jdaplugin.AnalysisProgress;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shows how far background analysis has got at the right end of the menu bar, hidden while nothing is running.
+ * Listener calls come from worker threads, they only schedule a refresh on the EDT if none is pending yet.
+ */
+public class AnalysisProgressIndicator extends JPanel implements AnalysisProgress.Listener {
+    private final AnalysisManager manager;
+    private final JProgressBar bar = new JProgressBar(0, 1000);
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+
+    public AnalysisProgressIndicator(AnalysisManager manager) {
+        this.manager = manager;
+        setOpaque(false);
+        setBorder(new EmptyBorder(0, 8, 0, 8));
+        bar.setStringPainted(true);
+        add(bar);
+        setVisible(false);
+    }
+
+    public static AnalysisProgressIndicator install(JFrame frame, AnalysisManager manager) {
+        AnalysisProgressIndicator indicator = new AnalysisProgressIndicator(manager);
+        JMenuBar menuBar = frame.getJMenuBar();
+        if (menuBar != null) {
+            menuBar.add(Box.createHorizontalGlue());
+            menuBar.add(indicator);
+            menuBar.revalidate();
+        }
+        manager.addProgressListener(indicator);
+        indicator.refresh();
+        return indicator;
+    }
+
+    @Override
+    public void progressChanged(AnalysisProgress progress) {
+        if (refreshPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::refresh);
+        }
+    }
+
+    private void refresh() {
+        refreshPending.set(false);
+        List<AnalysisProgress> running = new ArrayList<>();
+        for (AnalysisProgress p : manager.getProgress()) {
+            if (!p.isFinished())
+                running.add(p);
+        }
+        if (running.isEmpty()) {
+            setVisible(false);
+            return;
+        }
+        double fraction = 0;
+        StringBuilder tooltip = new StringBuilder("<html>");
+        for (AnalysisProgress p : running) {
+            fraction += p.getFraction();
+            tooltip.append(p).append("<br>");
+        }
+        bar.setValue((int) (fraction / running.size() * 1000));
+        bar.setString(running.size() == 1 ? running.get(0).toString() : running.size() + " containers analysing");
+        setToolTipText(tooltip.append("</html>").toString());
+        bar.setToolTipText(getToolTipText());
+        setVisible(true);
+    }
+}
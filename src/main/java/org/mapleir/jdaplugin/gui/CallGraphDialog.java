@@ -0,0 +1,124 @@
+package org.mapleir.jdaplugin.gui;
+
+import club.bytecode.the.jda.FileContainer;
+import club.bytecode.the.jda.JDA;
+import club.bytecode.the.jda.gui.fileviewer.ViewerFile;
+import club.bytecode.the.jda.gui.search.SearchDialog;
+import org.mapleir.jdaplugin.AnalysisManager;
+import org.mapleir.jdaplugin.CallGraph;
+import org.mapleir.jdaplugin.MaplePlugin;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Callers and callees of a method, looked up in the call graphs of the open containers.
+ */
+public class CallGraphDialog extends JDialog {
+    private final JTextField query = new JTextField(40);
+    private final DefaultListModel<Row> model = new DefaultListModel<>();
+    private final JList<Row> list = new JList<>(model);
+    private final JLabel status = new JLabel(" ");
+
+    public CallGraphDialog(JFrame owner) {
+        super(owner, "MapleIR - Callers / callees", false);
+        rootPane.setBorder(new EmptyBorder(10, 10, 10, 10));
+
+        JPanel top = new JPanel(new BorderLayout(5, 0));
+        top.add(new JLabel("Method (name, owner.name or owner.name(desc)):"), "North");
+        top.add(query, "Center");
+        JButton find = new JButton("Find");
+        top.add(find, "East");
+        getContentPane().add(top, "North");
+        getContentPane().add(new JScrollPane(list), "Center");
+
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.add(status, "Center");
+        JButton open = new JButton("Open");
+        bottom.add(open, "East");
+        getContentPane().add(bottom, "South");
+
+        find.addActionListener(evt -> find());
+        query.addActionListener(evt -> find());
+        open.addActionListener(evt -> openSelected());
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2)
+                    openSelected();
+            }
+        });
+
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        setSize(700, 450);
+        setLocationRelativeTo(owner);
+    }
+
+    private void find() {
+        model.clear();
+        AnalysisManager engine = MaplePlugin.getInstance().analysisEngine;
+        if (engine.getCallGraphMode() == CallGraph.Mode.NONE) {
+            status.setText("Call graphs are off, start JDA with -D" + CallGraph.MODE_PROPERTY + "=cha or rta");
+            return;
+        }
+        String q = query.getText().trim();
+        if (q.isEmpty())
+            return;
+        int methods = 0, missing = 0;
+        for (FileContainer fc : JDA.getOpenFiles()) {
+            CallGraph cg = engine.getCallGraph(fc);
+            if (cg == null) {
+                missing++;
+                continue;
+            }
+            for (int m : cg.find(q)) {
+                methods++;
+                model.addElement(new Row(fc, cg.getOwner(m), cg.toString(m)));
+                for (int i = 0; i < cg.callerCount(m); i++) {
+                    int c = cg.caller(m, i);
+                    model.addElement(new Row(fc, cg.getOwner(c), "    called by " + cg.toString(c)));
+                }
+                for (int i = 0; i < cg.calleeCount(m); i++) {
+                    int c = cg.callee(m, i);
+                    model.addElement(new Row(fc, cg.getOwner(c), "    calls " + cg.toString(c)));
+                }
+            }
+        }
+        status.setText(methods + " methods" + (missing > 0 ? ", " + missing + " containers not analysed yet" : ""));
+    }
+
+    private void openSelected() {
+        Set<String> seen = new LinkedHashSet<>();
+        List<ViewerFile> files = new ArrayList<>();
+        for (Row row : list.getSelectedValuesList()) {
+            if (seen.add(row.container.name + "/" + row.owner))
+                files.add(new ViewerFile(row.container, row.owner + ".class"));
+        }
+        if (!files.isEmpty())
+            new SearchDialog(query.getText(), files).setVisible(true);
+    }
+
+    private static final class Row {
+        final FileContainer container;
+        final String owner;
+        final String text;
+
+        Row(FileContainer container, String owner, String text) {
+            this.container = container;
+            this.owner = owner;
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
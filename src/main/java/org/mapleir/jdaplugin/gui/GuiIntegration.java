@@ -3,8 +3,11 @@ package org.mapleir.jdaplugin.gui;
 import club.bytecode.the.jda.JDA;
 import club.bytecode.the.jda.gui.MainViewerGUI;
 import club.bytecode.the.jda.gui.fileviewer.ViewerFile;
-import club.bytecode.the.jda.gui.search.SearchDialog;
+import org.mapleir.jdaplugin.AnalysisManager;
+import org.mapleir.jdaplugin.AnalysisProgress;
+import org.mapleir.jdaplugin.ConstantIndex;
 import org.mapleir.jdaplugin.MaplePlugin;
+import org.mapleir.jdaplugin.SearchQuery;
 import org.mapleir.stdlib.util.JavaDesc;
 
 import javax.swing.*;
@@ -12,11 +15,14 @@ import java.util.List;
 
 public class GuiIntegration {
     private final MainViewerGUI gui;
+    private final AnalysisProgressIndicator progressIndicator;
 
     public GuiIntegration(MainViewerGUI mainViewerGUI) {
         gui = mainViewerGUI;
 
         addSearchHooks();
+        addPluginMenu();
+        progressIndicator = AnalysisProgressIndicator.install(gui, MaplePlugin.getInstance().analysisEngine);
     }
 
     private void addSearchHooks() {
@@ -27,9 +33,29 @@ public class GuiIntegration {
         gui.searchMenu.add(javaConstantButton);
     }
 
+    private void addPluginMenu() {
+        JMenuBar menuBar = gui.getJMenuBar();
+        if (menuBar == null)
+            return;
+        JMenu menu = new JMenu("MapleIR");
+        JMenuItem overBudget = new JMenuItem("Over-budget methods...");
+        overBudget.addActionListener((e) -> new OverBudgetDialog(gui).setVisible(true));
+        menu.add(overBudget);
+        JMenuItem callGraph = new JMenuItem("Callers / callees...");
+        callGraph.addActionListener((e) -> new CallGraphDialog(gui).setVisible(true));
+        menu.add(callGraph);
+        menuBar.add(menu);
+    }
+
     private void checkwarnIncompleteAnalysis() {
-        if (!MaplePlugin.getInstance().analysisEngine.isAnalysisComplete()) {
-            JOptionPane.showMessageDialog(gui, "Analysis is't complete yet, results may be inaccurate", "Warning", JOptionPane.WARNING_MESSAGE);
+        AnalysisManager engine = MaplePlugin.getInstance().analysisEngine;
+        if (!engine.isAnalysisComplete()) {
+            StringBuilder msg = new StringBuilder("Analysis is't complete yet, results may be inaccurate");
+            for (AnalysisProgress p : engine.getProgress()) {
+                if (!p.isFinished())
+                    msg.append("\n").append(p);
+            }
+            JOptionPane.showMessageDialog(gui, msg.toString(), "Warning", JOptionPane.WARNING_MESSAGE);
         }
     }
 
@@ -44,11 +70,10 @@ public class GuiIntegration {
     }
 
     private void doJavaSearchConstantDialog() {
-        checkwarnIncompleteAnalysis();
         String constant = JOptionPane.showInputDialog("Enter a constant...");
         if (constant == null || constant.isEmpty()) {
             return;
         }
-        new SearchDialog(constant, MaplePlugin.getInstance().analysisEngine.searchConstant(constant)).setVisible(true);
+        SearchResultsDialog.show(gui, constant, SearchQuery.constant(constant, ConstantIndex.Match.SUBSTRING));
     }
 }
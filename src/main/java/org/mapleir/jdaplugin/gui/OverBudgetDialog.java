@@ -0,0 +1,59 @@
+package org.mapleir.jdaplugin.gui;
+
+import org.mapleir.jdaplugin.AnalysisManager;
+import org.mapleir.jdaplugin.MaplePlugin;
+import org.mapleir.jdaplugin.MethodBudget;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.util.Map;
+
+/**
+ * Lists the methods skipped for going over the {@link MethodBudget} and lets the user lift the limits for some
+ * or all of them. Retried methods are analysed in full the next time a decompiler tab or the deobfuscator asks,
+ * and their classes are reindexed so search finds them.
+ */
+public class OverBudgetDialog extends JDialog {
+    private final DefaultListModel<String> model = new DefaultListModel<>();
+    private final JList<String> list = new JList<>(model);
+
+    public OverBudgetDialog(JFrame owner) {
+        super(owner, "MapleIR - Over-budget methods", false);
+        AnalysisManager engine = MaplePlugin.getInstance().analysisEngine;
+        rootPane.setBorder(new EmptyBorder(10, 10, 10, 10));
+        getContentPane().add(new JLabel("Skipped methods, reopen the class to see retried ones:"), "North");
+        getContentPane().add(new JScrollPane(list), "Center");
+
+        JPanel buttons = new JPanel();
+        JButton retry = new JButton("Retry selected");
+        JButton retryAll = new JButton("Retry all");
+        JButton close = new JButton("Close");
+        buttons.add(retry);
+        buttons.add(retryAll);
+        buttons.add(close);
+        getContentPane().add(buttons, "South");
+
+        retry.addActionListener(evt -> {
+            for (String entry : list.getSelectedValuesList())
+                engine.retry(entry.substring(0, entry.indexOf(" (")));
+            refresh();
+        });
+        retryAll.addActionListener(evt -> {
+            for (String key : MethodBudget.shared().getSkipped().keySet())
+                engine.retry(key);
+            refresh();
+        });
+        close.addActionListener(evt -> dispose());
+
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        refresh();
+        setSize(700, 400);
+        setLocationRelativeTo(owner);
+    }
+
+    private void refresh() {
+        model.clear();
+        for (Map.Entry<String, String> e : MethodBudget.shared().getSkipped().entrySet())
+            model.addElement(e.getKey() + " (" + e.getValue() + ")");
+    }
+}
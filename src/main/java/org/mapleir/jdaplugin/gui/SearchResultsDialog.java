@@ -0,0 +1,130 @@
+package org.mapleir.jdaplugin.gui;
+
+import club.bytecode.the.jda.FileContainer;
+import club.bytecode.the.jda.gui.fileviewer.ViewerFile;
+import club.bytecode.the.jda.gui.search.SearchDialog;
+import org.mapleir.jdaplugin.MaplePlugin;
+import org.mapleir.jdaplugin.SearchHit;
+import org.mapleir.jdaplugin.SearchQuery;
+import org.mapleir.jdaplugin.SearchTask;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Shows search hits as they stream in, one row per class. The search runs off the EDT, hits are handed over
+ * in batches by a timer so a huge result set can't flood the event queue. Closing the dialog cancels the search.
+ */
+public class SearchResultsDialog extends JDialog {
+    public static final int RESULT_LIMIT = 10000;
+
+    private final String title;
+    private final DefaultListModel<SearchHit> model = new DefaultListModel<>();
+    private final JList<SearchHit> list = new JList<>(model);
+    private final JLabel status = new JLabel("Searching...");
+    private final JButton stop = new JButton("Stop");
+    private final ConcurrentLinkedQueue<SearchHit> pending = new ConcurrentLinkedQueue<>();
+    private final Timer drain = new Timer(100, e -> drain());
+    private SearchTask task;
+
+    public SearchResultsDialog(JFrame owner, String title) {
+        super(owner, "MapleIR - " + title, false);
+        this.title = title;
+        rootPane.setBorder(new EmptyBorder(10, 10, 10, 10));
+        getContentPane().add(status, "North");
+        getContentPane().add(new JScrollPane(list), "Center");
+
+        JPanel buttons = new JPanel();
+        JButton open = new JButton("Open");
+        buttons.add(open);
+        buttons.add(stop);
+        getContentPane().add(buttons, "South");
+
+        open.addActionListener(evt -> openSelected());
+        stop.addActionListener(evt -> cancel());
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2)
+                    openSelected();
+            }
+        });
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                cancel();
+            }
+        });
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        setSize(600, 400);
+        setLocationRelativeTo(owner);
+    }
+
+    public static void show(JFrame owner, String title, SearchQuery query) {
+        SearchResultsDialog dialog = new SearchResultsDialog(owner, title);
+        dialog.start(query);
+        dialog.setVisible(true);
+    }
+
+    private void start(SearchQuery query) {
+        task = MaplePlugin.getInstance().analysisEngine.search(query, RESULT_LIMIT, pending::add);
+        drain.start();
+        task.completion().whenComplete((v, t) -> SwingUtilities.invokeLater(() -> finish(t)));
+    }
+
+    private void drain() {
+        SearchHit hit;
+        while ((hit = pending.poll()) != null) {
+            model.addElement(hit);
+        }
+        if (!task.isDone())
+            status.setText("Searching... " + model.size() + " classes");
+    }
+
+    private void finish(Throwable t) {
+        drain.stop();
+        drain();
+        stop.setEnabled(false);
+        if (t != null) {
+            status.setText("Search failed: " + t);
+        } else if (task.isCancelled()) {
+            status.setText("Stopped, " + model.size() + " classes");
+        } else if (model.size() >= RESULT_LIMIT) {
+            status.setText("First " + model.size() + " classes");
+        } else {
+            status.setText(model.size() + " classes");
+        }
+        List<FileContainer> partial = task.getPartialContainers();
+        if (!partial.isEmpty()) {
+            StringBuilder sb = new StringBuilder(status.getText()).append(", analysis incomplete for");
+            for (FileContainer fc : partial)
+                sb.append(' ').append(fc.name);
+            status.setText(sb.toString());
+        }
+    }
+
+    private void cancel() {
+        if (task != null)
+            task.cancel();
+    }
+
+    private void openSelected() {
+        List<SearchHit> hits = list.getSelectedValuesList();
+        if (hits.isEmpty()) {
+            hits = new ArrayList<>(model.size());
+            for (int i = 0; i < model.size(); i++)
+                hits.add(model.get(i));
+        }
+        List<ViewerFile> files = new ArrayList<>(hits.size());
+        for (SearchHit hit : hits)
+            files.add(hit.toViewerFile());
+        new SearchDialog(title, files).setVisible(true);
+    }
+}
@@ -0,0 +1,175 @@
+package org.mapleir.jdaplugin;
+
+import org.junit.Test;
+import org.mapleir.flowgraph.edges.ImmediateEdge;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.stdlib.collections.graph.FastGraphEdge;
+import org.mapleir.stdlib.collections.graph.algorithms.ExtendedDfs;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.objectweb.asm.Opcodes.*;
+
+public class BlockLayoutTest {
+    @Test
+    public void branchy() {
+        assertSameOrder(branchyMethod());
+    }
+
+    @Test
+    public void switches() {
+        assertSameOrder(switchMethod());
+    }
+
+    @Test
+    public void handlers() {
+        assertSameOrder(handlerMethod());
+    }
+
+    private static void assertSameOrder(MethodNode mn) {
+        ControlFlowGraph cfg = ControlFlowGraphBuilder.build(ASMAdaptor.wrapMethodNode(mn));
+        assertEquals(mn.name, names(dfsOrder(cfg)), names(new BlockLayout(cfg).getOrder()));
+    }
+
+    private static List<String> names(List<BasicBlock> blocks) {
+        return blocks.stream().map(BasicBlock::getDisplayName).collect(Collectors.toList());
+    }
+
+    // what the IL printer laid blocks out with before BlockLayout
+    private static List<BasicBlock> dfsOrder(ControlFlowGraph cfg) {
+        return new ExtendedDfs<BasicBlock>(cfg, ExtendedDfs.TOPO) {
+            @Override
+            protected Iterable<? extends FastGraphEdge<BasicBlock>> order(
+                    Set<? extends FastGraphEdge<BasicBlock>> edges) {
+                return () -> Stream.concat(
+                        edges.stream().filter(e -> !(e instanceof ImmediateEdge)),
+                        edges.stream().filter(ImmediateEdge.class::isInstance)).iterator();
+            }
+        }.run(cfg.getEntries().iterator().next()).getTopoOrder();
+    }
+
+    // int r = 0;
+    // for (int i = 0; i < x; i++) { if (i % 2 == 0) r += i; else if (i % 3 == 0) r -= i; else break; }
+    // return r;
+    private static MethodNode branchyMethod() {
+        MethodNode mn = method("branchy");
+        Label cond = new Label(), otherwise = new Label(), inc = new Label(), end = new Label();
+        mn.visitInsn(ICONST_0);
+        mn.visitVarInsn(ISTORE, 1);
+        mn.visitInsn(ICONST_0);
+        mn.visitVarInsn(ISTORE, 2);
+        mn.visitLabel(cond);
+        mn.visitVarInsn(ILOAD, 2);
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitJumpInsn(IF_ICMPGE, end);
+        mn.visitVarInsn(ILOAD, 2);
+        mn.visitInsn(ICONST_2);
+        mn.visitInsn(IREM);
+        mn.visitJumpInsn(IFNE, otherwise);
+        mn.visitVarInsn(ILOAD, 1);
+        mn.visitVarInsn(ILOAD, 2);
+        mn.visitInsn(IADD);
+        mn.visitVarInsn(ISTORE, 1);
+        mn.visitJumpInsn(GOTO, inc);
+        mn.visitLabel(otherwise);
+        mn.visitVarInsn(ILOAD, 2);
+        mn.visitInsn(ICONST_3);
+        mn.visitInsn(IREM);
+        mn.visitJumpInsn(IFNE, end);
+        mn.visitVarInsn(ILOAD, 1);
+        mn.visitVarInsn(ILOAD, 2);
+        mn.visitInsn(ISUB);
+        mn.visitVarInsn(ISTORE, 1);
+        mn.visitLabel(inc);
+        mn.visitIincInsn(2, 1);
+        mn.visitJumpInsn(GOTO, cond);
+        mn.visitLabel(end);
+        mn.visitVarInsn(ILOAD, 1);
+        mn.visitInsn(IRETURN);
+        return mn;
+    }
+
+    // a tableswitch with fallthrough between cases, one case running into a lookupswitch
+    private static MethodNode switchMethod() {
+        MethodNode mn = method("switches");
+        Label c0 = new Label(), c1 = new Label(), c2 = new Label(), ten = new Label(), hundred = new Label();
+        Label dflt = new Label(), after = new Label();
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitTableSwitchInsn(0, 2, dflt, c0, c1, c2);
+        mn.visitLabel(c0);
+        mn.visitIincInsn(0, 1);
+        mn.visitLabel(c1);
+        mn.visitIincInsn(0, 2);
+        mn.visitJumpInsn(GOTO, after);
+        mn.visitLabel(c2);
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitLookupSwitchInsn(after, new int[] {10, 100}, new Label[] {ten, hundred});
+        mn.visitLabel(ten);
+        mn.visitIincInsn(0, 3);
+        mn.visitLabel(hundred);
+        mn.visitIincInsn(0, 4);
+        mn.visitLabel(dflt);
+        mn.visitIincInsn(0, -1);
+        mn.visitLabel(after);
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitInsn(IRETURN);
+        return mn;
+    }
+
+    // nested try blocks: an inner ArithmeticException handler inside an outer catch-all
+    private static MethodNode handlerMethod() {
+        MethodNode mn = method("handlers");
+        Label outerStart = new Label(), innerStart = new Label(), skip = new Label(), innerEnd = new Label();
+        Label outerEnd = new Label(), inner = new Label(), outer = new Label(), ret = new Label();
+        mn.visitTryCatchBlock(innerStart, innerEnd, inner, "java/lang/ArithmeticException");
+        mn.visitTryCatchBlock(outerStart, outerEnd, outer, "java/lang/Throwable");
+        mn.visitLabel(outerStart);
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitInsn(ICONST_1);
+        mn.visitInsn(IDIV);
+        mn.visitVarInsn(ISTORE, 0);
+        mn.visitLabel(innerStart);
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitJumpInsn(IFEQ, skip);
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitInsn(ICONST_2);
+        mn.visitInsn(IDIV);
+        mn.visitVarInsn(ISTORE, 0);
+        mn.visitLabel(skip);
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitInsn(ICONST_3);
+        mn.visitInsn(IREM);
+        mn.visitVarInsn(ISTORE, 0);
+        mn.visitLabel(innerEnd);
+        mn.visitJumpInsn(GOTO, ret);
+        mn.visitLabel(outerEnd);
+        mn.visitLabel(inner);
+        mn.visitInsn(POP);
+        mn.visitInsn(ICONST_M1);
+        mn.visitVarInsn(ISTORE, 0);
+        mn.visitJumpInsn(GOTO, ret);
+        mn.visitLabel(outer);
+        mn.visitInsn(POP);
+        mn.visitIntInsn(BIPUSH, -2);
+        mn.visitVarInsn(ISTORE, 0);
+        mn.visitLabel(ret);
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitInsn(IRETURN);
+        return mn;
+    }
+
+    private static MethodNode method(String name) {
+        MethodNode mn = new MethodNode(ACC_PUBLIC | ACC_STATIC, name, "(I)I", null, null);
+        mn.maxStack = 4;
+        mn.maxLocals = 3;
+        return mn;
+    }
+}
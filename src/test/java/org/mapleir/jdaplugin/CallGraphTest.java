@@ -0,0 +1,216 @@
+package org.mapleir.jdaplugin;
+
+import org.junit.Test;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+import static org.mapleir.jdaplugin.Classes.*;
+import static org.objectweb.asm.Opcodes.*;
+
+public class CallGraphTest {
+    private static final ForkJoinPool POOL = new ForkJoinPool(2);
+
+    @Test
+    public void chaDispatchesToEveryConcreteSubtype() throws InterruptedException {
+        CallGraph g = CallGraph.build(program(true), CallGraph.Mode.CHA, POOL);
+
+        assertEquals(set("app/Circ.area()I", "app/Junk.area()I", "app/Sq.area()I"), callees(g, "app/Main.total"));
+        assertEquals(set("app/Junk.<init>()V"), callees(g, "app/Main.dead"));
+        assertEquals(set("app/Main.total(Lapp/Shape;)I", "app/Sq.<init>()V", "app/Worker.<init>()V",
+                "app/Main.lambda$0()V"), callees(g, "app/Main.main"));
+        assertEquals(set("app/Main.total(Lapp/Shape;)I"), callers(g, "app/Sq.area"));
+        assertEquals(CallGraph.Mode.CHA, g.getMode());
+        assertCompressedRows(g);
+    }
+
+    @Test
+    public void rtaOnlyFollowsReachableCode() throws InterruptedException {
+        CallGraph g = CallGraph.build(program(true), CallGraph.Mode.RTA, POOL);
+
+        // Junk is only instantiated by dead code
+        assertEquals(set("app/Sq.area()I"), callees(g, "app/Main.total"));
+        assertEquals(set(), callees(g, "app/Main.dead"));
+        assertEquals(set(), callers(g, "app/Junk.<init>"));
+        // Thread calls run, the library can reach overrides of its methods
+        assertEquals(set("app/Worker.helper()V"), callees(g, "app/Worker.run"));
+        // static initialisers are entry points
+        assertEquals(set("app/Init2.go()V"), callees(g, "app/Init.<clinit>"));
+        assertEquals(set(), callers(g, "app/Init2.unused"));
+        assertCompressedRows(g);
+    }
+
+    @Test
+    public void rtaConfiguredEntryPoints() throws InterruptedException {
+        ClassHierarchyIndex h = ClassHierarchyIndex.of(program(true));
+        CallGraph g = CallGraph.build(h, CallGraph.Mode.RTA, Collections.singletonList("app/Main.dead"), POOL);
+
+        assertEquals(set("app/Junk.<init>()V"), callees(g, "app/Main.dead"));
+        assertEquals(set("app/Junk.area()I", "app/Sq.area()I"), callees(g, "app/Main.total"));
+        assertCompressedRows(g);
+    }
+
+    @Test
+    public void rtaWithoutMainStartsFromPublicApi() throws InterruptedException {
+        CallGraph g = CallGraph.build(program(false), CallGraph.Mode.RTA, POOL);
+
+        // no main: the public static dead() is api, total() isn't public so only reached through it
+        assertEquals(set("app/Junk.<init>()V"), callees(g, "app/Main.dead"));
+        assertEquals(set(), callees(g, "app/Main.total"));
+        assertCompressedRows(g);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noneIsNotAMode() throws InterruptedException {
+        CallGraph.build(program(true), CallGraph.Mode.NONE, POOL);
+    }
+
+    @Test
+    public void find() throws InterruptedException {
+        CallGraph g = CallGraph.build(program(true), CallGraph.Mode.CHA, POOL);
+
+        assertEquals(4, g.find("area").size());
+        assertEquals(1, g.find("app/Sq.area").size());
+        assertEquals(1, g.find("app/Sq.area()I").size());
+        assertEquals(0, g.find("app/Sq.area()V").size());
+        int id = g.find("app/Main.total").get(0);
+        assertEquals(id, g.id("app/Main", "total", "(Lapp/Shape;)I"));
+        assertEquals("app/Main", g.getOwner(id));
+        assertEquals("total", g.getName(id));
+        assertEquals("(Lapp/Shape;)I", g.getDesc(id));
+    }
+
+    /**
+     * Edges are stored once per direction: callees sorted and unique per method, callers exactly the reverse.
+     */
+    private static void assertCompressedRows(CallGraph g) {
+        int callees = 0, callers = 0;
+        Map<Integer, Set<Integer>> reverse = new HashMap<>();
+        for (int m = 0; m < g.methodCount(); m++) {
+            for (int i = 0; i < g.calleeCount(m); i++) {
+                if (i > 0)
+                    assertTrue(g.callee(m, i - 1) < g.callee(m, i));
+                reverse.computeIfAbsent(g.callee(m, i), k -> new HashSet<>()).add(m);
+            }
+            callees += g.calleeCount(m);
+        }
+        for (int m = 0; m < g.methodCount(); m++) {
+            Set<Integer> of = new HashSet<>();
+            for (int i = 0; i < g.callerCount(m); i++)
+                of.add(g.caller(m, i));
+            assertEquals(g.callerCount(m), of.size());
+            assertEquals(reverse.getOrDefault(m, Collections.emptySet()), of);
+            callers += g.callerCount(m);
+        }
+        assertEquals(g.edgeCount(), callees);
+        assertEquals(g.edgeCount(), callers);
+    }
+
+    private static Set<String> callees(CallGraph g, String method) {
+        int id = only(g, method);
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < g.calleeCount(id); i++)
+            result.add(g.toString(g.callee(id, i)));
+        return result;
+    }
+
+    private static Set<String> callers(CallGraph g, String method) {
+        int id = only(g, method);
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < g.callerCount(id); i++)
+            result.add(g.toString(g.caller(id, i)));
+        return result;
+    }
+
+    private static int only(CallGraph g, String method) {
+        List<Integer> found = g.find(method);
+        assertEquals(method, 1, found.size());
+        return found.get(0);
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    /**
+     * Shapes, one of them only created by dead code, a thread subclass, a static initialiser and a lambda.
+     */
+    private static List<ClassNode> program(boolean withMain) {
+        List<ClassNode> classes = new ArrayList<>();
+        ClassNode shape = itf("app/Shape");
+        method(shape, ACC_PUBLIC | ACC_ABSTRACT, "area", "()I");
+        classes.add(shape);
+        for (String name : new String[]{"app/Sq", "app/Circ", "app/Junk"}) {
+            ClassNode cn = cls(0, name, "java/lang/Object", "app/Shape");
+            constructor(cn, "java/lang/Object");
+            method(cn, ACC_PUBLIC, "area", "()I");
+            classes.add(cn);
+        }
+
+        ClassNode worker = cls(0, "app/Worker", "java/lang/Thread");
+        constructor(worker, "java/lang/Thread");
+        method(worker, ACC_PUBLIC, "run", "()V", mn -> {
+            mn.visitVarInsn(ALOAD, 0);
+            mn.visitMethodInsn(INVOKEVIRTUAL, "app/Worker", "helper", "()V", false);
+        });
+        method(worker, 0, "helper", "()V");
+        method(worker, 0, "never", "()V");
+        classes.add(worker);
+
+        ClassNode init = cls(0, "app/Init", "java/lang/Object");
+        method(init, ACC_STATIC, "<clinit>", "()V",
+                mn -> mn.visitMethodInsn(INVOKESTATIC, "app/Init2", "go", "()V", false));
+        ClassNode init2 = cls(0, "app/Init2", "java/lang/Object");
+        method(init2, ACC_STATIC, "go", "()V");
+        method(init2, ACC_STATIC, "unused", "()V");
+        classes.add(init);
+        classes.add(init2);
+
+        ClassNode main = cls("app/Main", "java/lang/Object");
+        method(main, ACC_STATIC, "total", "(Lapp/Shape;)I", mn -> {
+            mn.visitVarInsn(ALOAD, 0);
+            mn.visitMethodInsn(INVOKEINTERFACE, "app/Shape", "area", "()I", true);
+            mn.visitInsn(POP);
+        });
+        method(main, ACC_PUBLIC | ACC_STATIC, "dead", "()V", mn -> {
+            mn.visitTypeInsn(NEW, "app/Junk");
+            mn.visitInsn(DUP);
+            mn.visitMethodInsn(INVOKESPECIAL, "app/Junk", "<init>", "()V", false);
+            mn.visitInsn(POP);
+        });
+        method(main, ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC, "lambda$0", "()V");
+        if (withMain) {
+            method(main, ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V", mn -> {
+                mn.visitTypeInsn(NEW, "app/Sq");
+                mn.visitInsn(DUP);
+                mn.visitMethodInsn(INVOKESPECIAL, "app/Sq", "<init>", "()V", false);
+                mn.visitMethodInsn(INVOKESTATIC, "app/Main", "total", "(Lapp/Shape;)I", false);
+                mn.visitInsn(POP);
+                mn.visitTypeInsn(NEW, "app/Worker");
+                mn.visitInsn(DUP);
+                mn.visitMethodInsn(INVOKESPECIAL, "app/Worker", "<init>", "()V", false);
+                mn.visitMethodInsn(INVOKEVIRTUAL, "app/Worker", "start", "()V", false);
+                Handle metafactory = new Handle(H_INVOKESTATIC, "java/lang/invoke/LambdaMetafactory", "metafactory",
+                        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;"
+                                + "Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;"
+                                + "Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;", false);
+                mn.visitInvokeDynamicInsn("run", "()Ljava/lang/Runnable;", metafactory, Type.getType("()V"),
+                        new Handle(H_INVOKESTATIC, "app/Main", "lambda$0", "()V", false), Type.getType("()V"));
+                mn.visitInsn(POP);
+            });
+        }
+        classes.add(main);
+        return classes;
+    }
+
+    private static void constructor(ClassNode cn, String superName) {
+        method(cn, ACC_PUBLIC, "<init>", "()V", mn -> {
+            mn.visitVarInsn(ALOAD, 0);
+            mn.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V", false);
+        });
+    }
+}
@@ -0,0 +1,106 @@
+package org.mapleir.jdaplugin;
+
+import org.junit.Test;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.objectweb.asm.Opcodes.*;
+
+public class CfgCacheTest {
+    @Test
+    public void switchTargetsChangeTheFingerprint() {
+        assertArrayEquals(CfgCache.fingerprint(tableSwitch(false)), CfgCache.fingerprint(tableSwitch(false)));
+        assertDiffer(tableSwitch(false), tableSwitch(true));
+        assertDiffer(lookupSwitch(false), lookupSwitch(true));
+    }
+
+    @Test
+    public void handlerRangesChangeTheFingerprint() {
+        assertArrayEquals(CfgCache.fingerprint(guarded(false, "java/lang/Exception")),
+                CfgCache.fingerprint(guarded(false, "java/lang/Exception")));
+        assertDiffer(guarded(false, "java/lang/Exception"), guarded(true, "java/lang/Exception"));
+        assertDiffer(guarded(false, "java/lang/Exception"), guarded(false, "java/lang/Throwable"));
+    }
+
+    @Test
+    public void constantsAreTyped() {
+        assertDiffer(ldc(1), ldc(1L));
+        assertDiffer(ldc(1), ldc("1"));
+        assertDiffer(ldc(0.1f), ldc(0.1));
+    }
+
+    private static void assertDiffer(MethodNode a, MethodNode b) {
+        assertFalse(Arrays.equals(CfgCache.fingerprint(a), CfgCache.fingerprint(b)));
+    }
+
+    // switch (x) { case 0: return 1; case 1: return 2; default: return 0; }, optionally with the cases swapped
+    private static MethodNode tableSwitch(boolean swapped) {
+        MethodNode mn = new MethodNode(ACC_STATIC, "m", "(I)I", null, null);
+        Label one = new Label(), two = new Label(), dflt = new Label();
+        mn.visitCode();
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitTableSwitchInsn(0, 1, dflt, swapped ? new Label[]{two, one} : new Label[]{one, two});
+        returnConst(mn, one, ICONST_1);
+        returnConst(mn, two, ICONST_2);
+        returnConst(mn, dflt, ICONST_0);
+        mn.visitMaxs(1, 1);
+        mn.visitEnd();
+        return mn;
+    }
+
+    private static MethodNode lookupSwitch(boolean swapped) {
+        MethodNode mn = new MethodNode(ACC_STATIC, "m", "(I)I", null, null);
+        Label one = new Label(), two = new Label(), dflt = new Label();
+        mn.visitCode();
+        mn.visitVarInsn(ILOAD, 0);
+        mn.visitLookupSwitchInsn(dflt, new int[]{10, 20}, swapped ? new Label[]{two, one} : new Label[]{one, two});
+        returnConst(mn, one, ICONST_1);
+        returnConst(mn, two, ICONST_2);
+        returnConst(mn, dflt, ICONST_0);
+        mn.visitMaxs(1, 1);
+        mn.visitEnd();
+        return mn;
+    }
+
+    private static void returnConst(MethodNode mn, Label label, int opcode) {
+        mn.visitLabel(label);
+        mn.visitInsn(opcode);
+        mn.visitInsn(IRETURN);
+    }
+
+    // try { a(); b(); } catch (type) {}, optionally with only a() covered
+    private static MethodNode guarded(boolean narrow, String type) {
+        MethodNode mn = new MethodNode(ACC_STATIC, "m", "()V", null, null);
+        Label start = new Label(), middle = new Label(), end = new Label(), handler = new Label(), done = new Label();
+        mn.visitCode();
+        mn.visitTryCatchBlock(start, narrow ? middle : end, handler, type);
+        mn.visitLabel(start);
+        mn.visitMethodInsn(INVOKESTATIC, "app/A", "a", "()V", false);
+        mn.visitLabel(middle);
+        mn.visitMethodInsn(INVOKESTATIC, "app/A", "b", "()V", false);
+        mn.visitLabel(end);
+        mn.visitJumpInsn(GOTO, done);
+        mn.visitLabel(handler);
+        mn.visitInsn(POP);
+        mn.visitLabel(done);
+        mn.visitInsn(RETURN);
+        mn.visitMaxs(1, 0);
+        mn.visitEnd();
+        return mn;
+    }
+
+    private static MethodNode ldc(Object cst) {
+        MethodNode mn = new MethodNode(ACC_STATIC, "m", "()V", null, null);
+        mn.visitCode();
+        mn.visitLdcInsn(cst);
+        mn.visitInsn(cst instanceof Long || cst instanceof Double ? POP2 : POP);
+        mn.visitInsn(RETURN);
+        mn.visitMaxs(2, 0);
+        mn.visitEnd();
+        return mn;
+    }
+}
@@ -0,0 +1,202 @@
+package org.mapleir.jdaplugin;
+
+import org.junit.Test;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.mapleir.jdaplugin.Classes.*;
+import static org.objectweb.asm.Opcodes.*;
+
+public class ClassHierarchyIndexTest {
+    @Test
+    public void subtypeAcrossLibrarySuperClass() {
+        ClassHierarchyIndex h = ClassHierarchyIndex.of(Arrays.asList(
+                cls("app/A", "lib/Base"),
+                cls("app/B", "app/A"),
+                cls("app/C", "lib/Base")));
+
+        assertTrue(h.isSubtype("app/B", "app/A"));
+        assertTrue(h.isSubtype("app/B", "lib/Base"));
+        assertTrue(h.isSubtype("app/C", "lib/Base"));
+        assertFalse(h.isSubtype("app/C", "app/A"));
+        assertFalse(h.isSubtype("lib/Base", "app/A"));
+        // the library type's own supertypes aren't known
+        assertFalse(h.isSubtype("app/B", "java/lang/Object"));
+
+        int base = h.id("lib/Base");
+        assertFalse(h.isApplicationClass(base));
+        assertEquals(-1, h.getSuperClass(base));
+        assertEquals(0, h.getAccess(base));
+        assertNull(h.getClassNode(base));
+        assertEquals(3, h.applicationCount());
+        assertEquals(4, h.size());
+        assertEquals(set("lib/Base", "app/A", "app/B", "app/C"), names(h, h.getSubtypes(base)));
+    }
+
+    @Test
+    public void classExtendingLibraryType() {
+        ClassHierarchyIndex h = ClassHierarchyIndex.of(Collections.singletonList(
+                cls("app/Tasks", "java/util/ArrayList", "java/lang/Runnable")));
+
+        int runnable = h.id("java/lang/Runnable");
+        int list = h.id("java/util/ArrayList");
+        assertTrue(h.isInterface(runnable));
+        assertFalse(h.isInterface(list));
+        assertTrue(h.isSubtype("app/Tasks", "java/lang/Runnable"));
+        assertTrue(h.isSubtype("app/Tasks", "java/util/ArrayList"));
+        assertEquals(list, h.getSuperClass(h.id("app/Tasks")));
+        assertEquals(-1, h.id("java/util/List"));
+        assertFalse(h.isSubtype("app/Tasks", "java/util/List"));
+    }
+
+    @Test
+    public void interfaceDiamond() {
+        ClassNode top = itf("app/Top");
+        method(top, ACC_PUBLIC | ACC_ABSTRACT, "m", "()V");
+        ClassNode left = itf("app/Left", "app/Top");
+        method(left, ACC_PUBLIC, "m", "()V");
+        ClassNode right = itf("app/Right", "app/Top");
+        ClassNode impl = cls("app/Impl", "java/lang/Object", "app/Left", "app/Right");
+        method(impl, ACC_PUBLIC, "m", "()V");
+        ClassHierarchyIndex h = ClassHierarchyIndex.of(Arrays.asList(top, left, right, impl));
+
+        assertTrue(h.isSubtype("app/Impl", "app/Top"));
+        assertTrue(h.isSubtype("app/Impl", "app/Left"));
+        assertTrue(h.isSubtype("app/Impl", "app/Right"));
+        assertTrue(h.isSubtype("app/Right", "app/Top"));
+        assertFalse(h.isSubtype("app/Right", "app/Left"));
+
+        List<String> visited = new ArrayList<>();
+        h.forEachInterface(h.id("app/Impl"), itf -> visited.add(h.getName(itf)));
+        assertEquals(3, visited.size());
+        assertEquals(set("app/Top", "app/Left", "app/Right"), new HashSet<>(visited));
+        // the most widely implemented interface comes first
+        assertEquals("app/Top", visited.get(0));
+        // reached twice over the diamond, listed once
+        assertEquals(set("app/Top", "app/Left", "app/Right", "app/Impl"), names(h, h.getSubtypes(h.id("app/Top"))));
+        assertEquals(4, h.getSubtypes(h.id("app/Top")).length);
+
+        int implM = h.getMethod("app/Impl", "m", "()V");
+        assertEquals(set("app/Top", "app/Left"), overriddenOwners(h, implM));
+        int leftM = h.getMethod("app/Left", "m", "()V");
+        assertEquals(set("app/Top"), overriddenOwners(h, leftM));
+        int topM = h.getMethod("app/Top", "m", "()V");
+        assertEquals(2, h.overriderCount(topM));
+    }
+
+    @Test
+    public void cycleFallback() {
+        // broken or malicious code, the jvm would refuse to load it but the index must still be built
+        ClassNode a = cls("app/A", "app/B");
+        method(a, ACC_PUBLIC, "m", "()V");
+        ClassNode b = cls("app/B", "app/A");
+        method(b, ACC_PUBLIC, "m", "()V");
+        ClassNode i = itf("app/I", "app/J");
+        ClassNode j = itf("app/J", "app/I");
+        ClassNode c = cls("app/C", "java/lang/Object", "app/I");
+        ClassHierarchyIndex h = ClassHierarchyIndex.of(Arrays.asList(a, b, i, j, c));
+
+        assertEquals(5, h.applicationCount());
+        assertTrue(h.isSubtype("app/A", "app/A"));
+        // one of the two is numbered under the other, either answer is fine as long as it terminates
+        assertTrue(h.isSubtype("app/A", "app/B") || h.isSubtype("app/B", "app/A"));
+        assertTrue(h.isSubtype("app/C", "app/I"));
+        assertTrue(h.isSubtype("app/C", "app/J"));
+        assertEquals(2, h.getSubtypes(h.id("app/A")).length);
+
+        int am = h.getMethod("app/A", "m", "()V");
+        int bm = h.getMethod("app/B", "m", "()V");
+        assertEquals(1, h.overriddenCount(am));
+        assertEquals(bm, h.getOverridden(am, 0));
+        assertEquals(1, h.overriddenCount(bm));
+        assertEquals(am, h.getOverridden(bm, 0));
+    }
+
+    @Test
+    public void libraryOverrides() {
+        ClassNode task = cls("app/Task", "java/lang/Object", "java/lang/Runnable");
+        method(task, ACC_PUBLIC, "run", "()V");
+        method(task, ACC_PUBLIC, "helper", "()V");
+        method(task, ACC_PUBLIC | ACC_STATIC, "util", "()V");
+        method(task, ACC_PUBLIC, "<init>", "()V");
+        ClassNode sub = cls("app/Sub", "app/Task");
+        method(sub, ACC_PUBLIC, "run", "()V");
+        ClassNode plain = cls("app/Plain", "java/lang/Object");
+        method(plain, ACC_PUBLIC, "toString", "()Ljava/lang/String;");
+        method(plain, ACC_PUBLIC, "helper", "()V");
+        ClassHierarchyIndex h = ClassHierarchyIndex.of(Arrays.asList(task, sub, plain));
+
+        assertTrue(h.hasLibrarySupertype(h.id("app/Task")));
+        assertTrue(h.hasLibrarySupertype(h.id("app/Sub")));
+        assertFalse(h.hasLibrarySupertype(h.id("app/Plain")));
+        // anything that may be Runnable.run, but not what already overrides a method of the container
+        assertTrue(h.mayOverrideLibrary(h.getMethod("app/Task", "run", "()V")));
+        assertTrue(h.mayOverrideLibrary(h.getMethod("app/Task", "helper", "()V")));
+        assertFalse(h.mayOverrideLibrary(h.getMethod("app/Sub", "run", "()V")));
+        assertFalse(h.mayOverrideLibrary(h.getMethod("app/Task", "util", "()V")));
+        assertFalse(h.mayOverrideLibrary(h.getMethod("app/Task", "<init>", "()V")));
+        // Object's methods are called by the library on anything
+        assertTrue(h.mayOverrideLibrary(h.getMethod("app/Plain", "toString", "()Ljava/lang/String;")));
+        assertFalse(h.mayOverrideLibrary(h.getMethod("app/Plain", "helper", "()V")));
+    }
+
+    @Test
+    public void overrideLookup() {
+        ClassNode a = cls("app/A", "java/lang/Object");
+        method(a, ACC_PUBLIC, "m", "()V");
+        method(a, ACC_PUBLIC | ACC_STATIC, "s", "()V");
+        method(a, ACC_PRIVATE, "p", "()V");
+        method(a, ACC_PUBLIC, "<init>", "()V");
+        ClassNode b = cls("app/B", "app/A");
+        method(b, ACC_PUBLIC, "m", "()V");
+        method(b, ACC_PUBLIC | ACC_STATIC, "s", "()V");
+        method(b, ACC_PUBLIC, "p", "()V");
+        method(b, ACC_PUBLIC, "<init>", "()V");
+        method(b, ACC_PUBLIC, "m", "(I)V");
+        ClassNode c = cls("app/C", "app/B");
+        ClassNode d = cls("app/D", "app/C");
+        method(d, ACC_PUBLIC, "m", "()V");
+        ClassHierarchyIndex h = ClassHierarchyIndex.of(Arrays.asList(a, b, c, d));
+
+        int am = h.getMethod("app/A", "m", "()V");
+        int bm = h.getMethod("app/B", "m", "()V");
+        int dm = h.getMethod("app/D", "m", "()V");
+        assertEquals(-1, h.getMethod("app/C", "m", "()V"));
+        // only the nearest super class method
+        assertEquals(1, h.overriddenCount(dm));
+        assertEquals(bm, h.getOverridden(dm, 0));
+        assertEquals(1, h.overriddenCount(bm));
+        assertEquals(am, h.getOverridden(bm, 0));
+        assertEquals(1, h.overriderCount(am));
+        assertEquals(bm, h.getOverrider(am, 0));
+        assertEquals(0, h.overriddenCount(am));
+
+        // statics, privates, constructors and other descriptors override nothing
+        assertEquals(0, h.overriddenCount(h.getMethod("app/B", "s", "()V")));
+        assertEquals(0, h.overriddenCount(h.getMethod("app/B", "p", "()V")));
+        assertEquals(0, h.overriddenCount(h.getMethod("app/B", "<init>", "()V")));
+        assertEquals(0, h.overriddenCount(h.getMethod("app/B", "m", "(I)V")));
+        assertEquals("app/B", h.getName(h.getMethodOwner(bm)));
+        assertSame(b.methods.get(0), h.getMethodNode(bm));
+    }
+
+    private static Set<String> set(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    private static Set<String> names(ClassHierarchyIndex h, int[] types) {
+        Set<String> names = new HashSet<>();
+        for (int t : types)
+            names.add(h.getName(t));
+        return names;
+    }
+
+    private static Set<String> overriddenOwners(ClassHierarchyIndex h, int method) {
+        Set<String> owners = new HashSet<>();
+        for (int i = 0; i < h.overriddenCount(method); i++)
+            owners.add(h.getName(h.getMethodOwner(h.getOverridden(method, i))));
+        return owners;
+    }
+}
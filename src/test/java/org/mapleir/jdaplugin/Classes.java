@@ -0,0 +1,89 @@
+package org.mapleir.jdaplugin;
+
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Arrays;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Builds classes in memory for the hierarchy and call graph tests.
+ */
+final class Classes {
+    private Classes() {
+    }
+
+    static ClassNode cls(String name, String superName, String... interfaces) {
+        return cls(ACC_PUBLIC, name, superName, interfaces);
+    }
+
+    static ClassNode itf(String name, String... interfaces) {
+        return cls(ACC_PUBLIC | ACC_INTERFACE | ACC_ABSTRACT, name, "java/lang/Object", interfaces);
+    }
+
+    static ClassNode cls(int access, String name, String superName, String... interfaces) {
+        ClassNode cn = new ClassNode();
+        cn.version = V1_8;
+        cn.access = access;
+        cn.name = name;
+        cn.superName = superName;
+        cn.interfaces.addAll(Arrays.asList(interfaces));
+        return cn;
+    }
+
+    /**
+     * Adds a method whose body is just a return, or no body if it's abstract.
+     */
+    static MethodNode method(ClassNode cn, int access, String name, String desc) {
+        MethodNode mn = new MethodNode(access, name, desc, null, null);
+        if ((access & ACC_ABSTRACT) == 0)
+            emitReturn(mn, desc);
+        cn.methods.add(mn);
+        return mn;
+    }
+
+    /**
+     * Adds a method that runs {@code body} and then returns.
+     */
+    static MethodNode method(ClassNode cn, int access, String name, String desc, Body body) {
+        MethodNode mn = new MethodNode(access, name, desc, null, null);
+        body.emit(mn);
+        emitReturn(mn, desc);
+        cn.methods.add(mn);
+        return mn;
+    }
+
+    interface Body {
+        void emit(MethodNode mn);
+    }
+
+    // returns a zero of the method's return type
+    private static void emitReturn(MethodNode mn, String desc) {
+        switch (desc.charAt(desc.indexOf(')') + 1)) {
+            case 'V':
+                mn.visitInsn(RETURN);
+                break;
+            case 'L':
+            case '[':
+                mn.visitInsn(ACONST_NULL);
+                mn.visitInsn(ARETURN);
+                break;
+            case 'J':
+                mn.visitInsn(LCONST_0);
+                mn.visitInsn(LRETURN);
+                break;
+            case 'F':
+                mn.visitInsn(FCONST_0);
+                mn.visitInsn(FRETURN);
+                break;
+            case 'D':
+                mn.visitInsn(DCONST_0);
+                mn.visitInsn(DRETURN);
+                break;
+            default:
+                mn.visitInsn(ICONST_0);
+                mn.visitInsn(IRETURN);
+        }
+    }
+}
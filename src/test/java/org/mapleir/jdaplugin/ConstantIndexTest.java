@@ -0,0 +1,137 @@
+package org.mapleir.jdaplugin;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConstantIndexTest {
+    @Test
+    public void substringPrefixAndExact() {
+        ConstantIndex index = new ConstantIndex();
+        index.add(summary("app/A", "hello world", "world", "hello world"));
+        index.add(summary("app/B", "say hello", 42));
+
+        assertEquals(counts("app/A", 2, "app/B", 1), index.find("hello", ConstantIndex.Match.SUBSTRING));
+        assertEquals(counts("app/A", 2), index.find("hello", ConstantIndex.Match.PREFIX));
+        assertEquals(counts("app/A", 1), index.find("world", ConstantIndex.Match.EXACT));
+        assertEquals(counts("app/A", 3), index.find("world", ConstantIndex.Match.SUBSTRING));
+        assertEquals(Collections.emptyMap(), index.find("goodbye", ConstantIndex.Match.SUBSTRING));
+        assertEquals(Collections.emptyMap(), index.find("hello", ConstantIndex.Match.EXACT));
+    }
+
+    @Test
+    public void shortNeedles() {
+        ConstantIndex index = new ConstantIndex();
+        index.add(summary("app/A", "ab", "xaby", 7));
+        index.add(summary("app/B", "b"));
+
+        assertEquals(counts("app/A", 2, "app/B", 1), index.find("b", ConstantIndex.Match.SUBSTRING));
+        assertEquals(counts("app/A", 2), index.find("ab", ConstantIndex.Match.SUBSTRING));
+        assertEquals(counts("app/A", 1), index.find("ab", ConstantIndex.Match.PREFIX));
+        assertEquals(counts("app/A", 1), index.find("7", ConstantIndex.Match.SUBSTRING));
+    }
+
+    @Test
+    public void typedValuesShareText() {
+        ConstantIndex index = new ConstantIndex();
+        index.add(summary("app/A", "5"));
+        index.add(summary("app/B", 5));
+        index.add(summary("app/C", 5L, 5.0));
+
+        // 5 and 5L are the same integral value, "5" the string is a different one with the same text
+        assertEquals(3, index.distinctValues());
+        assertEquals(counts("app/A", 1, "app/B", 1, "app/C", 1), index.find("5", ConstantIndex.Match.EXACT));
+        assertEquals(counts("app/C", 1), index.find("5.0", ConstantIndex.Match.EXACT));
+    }
+
+    @Test
+    public void floatsAndDoubles() {
+        ConstantIndex index = new ConstantIndex();
+        index.add(summary("app/A", 0.1f, 5.0f));
+        index.add(summary("app/B", 0.1, 5.0));
+
+        // same text, but 0.1f widens to 0.10000000149...
+        assertEquals(4, index.distinctValues());
+        assertEquals(counts("app/A", 1, "app/B", 1), index.find("0.1", ConstantIndex.Match.EXACT));
+        assertEquals(counts("app/B", 1), index.findInRange(0.1, 0.1));
+        assertEquals(counts("app/A", 1), index.findInRange((float) 0.1, (float) 0.1));
+        assertEquals(counts("app/A", 1, "app/B", 1), index.findInRange(5, 5));
+    }
+
+    @Test
+    public void ranges() {
+        ConstantIndex index = new ConstantIndex();
+        index.add(summary("app/A", 1, 10, 100L, "50"));
+        index.add(summary("app/B", 2.5f, 10.5, -3));
+
+        assertEquals(counts("app/A", 2, "app/B", 2), index.findInRange(1, 10.5));
+        assertEquals(counts("app/A", 1, "app/B", 1), index.findInRange(1.5, 10));
+        assertEquals(counts("app/B", 1), index.findInRange(-5, 0));
+        assertEquals(counts("app/A", 3, "app/B", 3),
+                index.findInRange(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY));
+        assertEquals(Collections.emptyMap(), index.findInRange(10, 1));
+        assertEquals(Collections.emptyMap(), index.findInRange(11, 99));
+    }
+
+    @Test
+    public void removeAndReplace() {
+        ConstantIndex index = new ConstantIndex();
+        ClassSummary a = summary("app/A", "shared value", "only in a", 3);
+        index.add(a);
+        index.add(summary("app/B", "shared value"));
+
+        index.remove(a);
+        assertEquals(counts("app/B", 1), index.find("shared", ConstantIndex.Match.SUBSTRING));
+        assertEquals(Collections.emptyMap(), index.find("only", ConstantIndex.Match.SUBSTRING));
+        assertEquals(Collections.emptyMap(), index.findInRange(3, 3));
+        assertEquals(1, index.distinctValues());
+
+        index.add(summary("app/A", "only in a again"));
+        assertEquals(counts("app/A", 1), index.find("only in a", ConstantIndex.Match.PREFIX));
+    }
+
+    @Test
+    public void compaction() {
+        ConstantIndex index = new ConstantIndex();
+        ClassSummary[] summaries = new ClassSummary[3000];
+        for (int i = 0; i < summaries.length; i++) {
+            summaries[i] = summary("app/C" + i, "value-" + i, i);
+            index.add(summaries[i]);
+        }
+        // enough dead values to trigger compaction, only every third class is left
+        for (int i = 0; i < summaries.length; i++) {
+            if (i % 3 != 2)
+                index.remove(summaries[i]);
+        }
+
+        assertEquals(2000, index.distinctValues());
+        assertEquals(counts("app/C2", 1), index.find("value-2", ConstantIndex.Match.EXACT));
+        assertEquals(Collections.emptyMap(), index.find("value-3", ConstantIndex.Match.EXACT));
+        assertEquals(counts("app/C2999", 1), index.find("value-2999", ConstantIndex.Match.SUBSTRING));
+        assertEquals(counts("app/C2", 1, "app/C5", 1), index.findInRange(0, 6));
+        Map<String, Integer> all = index.find("value-", ConstantIndex.Match.PREFIX);
+        assertEquals(1000, all.size());
+        assertTrue(all.containsKey("app/C2999"));
+    }
+
+    private static ClassSummary summary(String name, Object... constants) {
+        ClassSummary.Builder b = new ClassSummary.Builder(name, 1);
+        b.methodNames[0] = "m";
+        b.methodDescs[0] = "()V";
+        for (Object cst : constants)
+            b.addConstant(cst, 0);
+        return b.build();
+    }
+
+    private static Map<String, Integer> counts(Object... classesAndCounts) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < classesAndCounts.length; i += 2)
+            counts.put((String) classesAndCounts[i], (Integer) classesAndCounts[i + 1]);
+        return counts;
+    }
+}
@@ -0,0 +1,30 @@
+package org.mapleir.jdaplugin;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.mapleir.jdaplugin.Classes.cls;
+
+public class HierarchyClassWriterTest {
+    @Test
+    public void commonSuperClass() {
+        ClassHierarchyIndex h = ClassHierarchyIndex.of(Arrays.asList(
+                cls("app/A", "java/lang/Object"),
+                cls("app/B", "app/A"),
+                cls("app/C", "app/A"),
+                cls("app/L", "java/util/ArrayList"),
+                cls("app/X", "app/Y"),
+                cls("app/Y", "app/X")));
+        HierarchyClassWriter writer = new HierarchyClassWriter(0, h);
+
+        assertEquals("app/A", writer.getCommonSuperClass("app/B", "app/A"));
+        assertEquals("app/A", writer.getCommonSuperClass("app/B", "app/C"));
+        assertEquals("java/util/AbstractList", writer.getCommonSuperClass("app/L", "java/util/LinkedList"));
+        assertEquals("java/lang/Object", writer.getCommonSuperClass("app/B", "app/Missing"));
+        // a super class cycle ends the walk instead of looping
+        assertEquals("java/lang/Object", writer.getCommonSuperClass("app/X", "app/B"));
+        assertEquals("java/lang/Object", writer.getCommonSuperClass("app/B", "app/X"));
+    }
+}
@@ -0,0 +1,80 @@
+package org.mapleir.jdaplugin;
+
+import org.junit.Test;
+import org.mapleir.stdlib.util.TabbedStringWriter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LineWriterTest {
+    @Test
+    public void splitMatchesStringSplit() {
+        for (String text : new String[]{"", "a", "a\nb", "a\nb\n", "a\n\n\n", "\n", "\n\na", "a\n\nb", " \n \n"}) {
+            assertEquals(text, Arrays.asList(text.split("\n")), LineWriter.split(text));
+        }
+    }
+
+    @Test
+    public void splitOnCrLf() {
+        assertEquals(Arrays.asList("a", "b"), LineWriter.split("a\r\nb\r\n"));
+        assertEquals(Arrays.asList("a", "", "b"), LineWriter.split("a\r\n\r\nb"));
+        assertEquals(Arrays.asList("a", "b"), LineWriter.split("a\nb\r\n\r\n"));
+        // only a line break ends a line, a lone \r is kept
+        assertEquals(Collections.singletonList("a\rb"), LineWriter.split("a\rb"));
+    }
+
+    @Test
+    public void sameLinesAsTabbedStringWriter() {
+        TabbedStringWriter sw = new TabbedStringWriter();
+        LineWriter lw = new LineWriter();
+        sw.print("class A {").tab().newline().print("void m() {").tab().newline().print("return;").untab().newline()
+                .print('}').untab().newline().print("}").newline();
+        lw.print("class A {").tab().newline().print("void m() {").tab().newline().print("return;").untab().newline()
+                .print('}').untab().newline().print("}").newline();
+        assertEquals(LineWriter.split(sw.toString()), lw.finish());
+    }
+
+    @Test
+    public void tabbedWriterView() {
+        // the way ControlFlowGraph.blockToString prints a block
+        LineWriter lw = new LineWriter(new ArrayList<>(), "  ");
+        TabbedStringWriter sw = lw.asTabbedWriter();
+        sw.print("===#Block A===").tab().print("\n").print("0. x = 1;").print('\n').print("1. return x;").untab();
+        sw.tab().tab().print("\n-> A").untab().untab().print("\n");
+        assertEquals(Arrays.asList("===#Block A===", "  0. x = 1;", "  1. return x;", "    -> A"), lw.finish());
+    }
+
+    @Test
+    public void embeddedLineBreaks() {
+        LineWriter lw = new LineWriter();
+        lw.tab().print("a\nb\r\nc").print('\n').print("d");
+        List<String> lines = lw.finish();
+        // the first line was started before the tab, the others are indented and none keeps the \r
+        String indent = lines.get(1).substring(0, lines.get(1).length() - 1);
+        assertTrue(!indent.isEmpty() && indent.trim().isEmpty());
+        assertEquals(Arrays.asList("a", indent + "b", indent + "c", indent + "d"), lines);
+
+        lw = new LineWriter();
+        lw.print("x\r\ny\n");
+        assertEquals(Arrays.asList("x", "y"), lw.finish());
+    }
+
+    @Test
+    public void finishDropsTrailingEmptyLines() {
+        LineWriter lw = new LineWriter();
+        lw.print("a").newline().newline().newline();
+        assertEquals(Collections.singletonList("a"), lw.finish());
+
+        assertEquals(Collections.singletonList(""), new LineWriter().finish());
+
+        // the pooled buffer starts out empty again
+        lw = new LineWriter();
+        lw.print("b");
+        assertEquals(Collections.singletonList("b"), lw.finish());
+    }
+}
@@ -0,0 +1,82 @@
+package org.mapleir.jdaplugin;
+
+import org.junit.Test;
+import org.mapleir.deob.intraproc.eval.EvaluationFactory;
+import org.mapleir.deob.intraproc.eval.EvaluationFunctor;
+import org.mapleir.ir.code.expr.ArithmeticExpr;
+import org.mapleir.ir.code.expr.ComparisonExpr;
+import org.mapleir.ir.code.stmt.ConditionalJumpStmt;
+import org.objectweb.asm.Type;
+
+import static org.junit.Assert.assertEquals;
+
+public class PrecompiledFunctorFactoryTest {
+    private final Fallback fallback = new Fallback();
+    private final PrecompiledFunctorFactory factory = new PrecompiledFunctorFactory(fallback);
+
+    @Test
+    public void foldsWithoutTheFallback() throws Exception {
+        assertEquals(7, factory.arithmetic(Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE, ArithmeticExpr.Operator.ADD)
+                .eval(3, 4));
+        assertEquals(1L << 40, factory.arithmetic(Type.LONG_TYPE, Type.INT_TYPE, Type.LONG_TYPE,
+                ArithmeticExpr.Operator.SHL).eval(1L, 40));
+        assertEquals(-2.5, factory.negate(Type.DOUBLE_TYPE).eval(2.5));
+        assertEquals(3, factory.cast(Type.DOUBLE_TYPE, Type.INT_TYPE).eval(3.9));
+        assertEquals(-1, factory.compare(Type.FLOAT_TYPE, Type.FLOAT_TYPE, ComparisonExpr.ValueComparisonType.LT)
+                .eval(Float.NaN, 1f));
+        assertEquals(true, factory.branch(Type.INT_TYPE, Type.INT_TYPE, ConditionalJumpStmt.ComparisonType.LE)
+                .eval(2, 2));
+        assertEquals(0, fallback.built);
+    }
+
+    @Test
+    public void fallsBackOnceForUnhandledOperands() throws Exception {
+        EvaluationFunctor<Number> div = factory.arithmetic(Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE,
+                ArithmeticExpr.Operator.DIV);
+        assertEquals(3, div.eval(7, 2));
+        assertEquals(0, fallback.built);
+        assertEquals(-1, div.eval(1, 0));
+        assertEquals(-1, div.eval(2, 0));
+        assertEquals(1, fallback.built);
+
+        assertEquals(-1, factory.cast(Type.INT_TYPE, Type.BYTE_TYPE).eval(300));
+        assertEquals(true, factory.branch(Type.getType(Object.class), Type.getType(Object.class),
+                ConditionalJumpStmt.ComparisonType.NE).eval("a", "a"));
+        assertEquals(3, fallback.built);
+    }
+
+    // answers -1 (or true, which the real NE couldn't give) and counts how many functors it had to build
+    private static class Fallback implements EvaluationFactory {
+        int built;
+
+        @Override
+        public EvaluationFunctor<Boolean> branch(Type lt, Type rt, ConditionalJumpStmt.ComparisonType type) {
+            built++;
+            return args -> true;
+        }
+
+        @Override
+        public EvaluationFunctor<Number> compare(Type lt, Type rt, ComparisonExpr.ValueComparisonType type) {
+            built++;
+            return args -> -1;
+        }
+
+        @Override
+        public EvaluationFunctor<Number> cast(Type from, Type to) {
+            built++;
+            return args -> -1;
+        }
+
+        @Override
+        public EvaluationFunctor<Number> negate(Type t) {
+            built++;
+            return args -> -1;
+        }
+
+        @Override
+        public EvaluationFunctor<Number> arithmetic(Type t1, Type t2, Type rt, ArithmeticExpr.Operator op) {
+            built++;
+            return args -> -1;
+        }
+    }
+}
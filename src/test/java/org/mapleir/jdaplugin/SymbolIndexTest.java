@@ -0,0 +1,145 @@
+package org.mapleir.jdaplugin;
+
+import org.junit.Test;
+import org.mapleir.stdlib.util.JavaDesc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SymbolIndexTest {
+    private static final JavaDesc.DescType METHOD = JavaDesc.DescType.METHOD;
+    private static final JavaDesc.DescType FIELD = JavaDesc.DescType.FIELD;
+
+    @Test
+    public void exactAndPartialLookups() {
+        SymbolIndex index = new SymbolIndex();
+        index.add(summary("app/A",
+                ref(ClassSummary.INVOKE_VIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", 0),
+                ref(ClassSummary.FIELD_GET, "java/lang/System", "out", "Ljava/io/PrintStream;", 0),
+                ref(ClassSummary.INVOKE_VIRTUAL, "java/io/PrintStream", "println", "(I)V", 1)));
+        index.add(summary("app/B",
+                ref(ClassSummary.INVOKE_VIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", 2)));
+
+        assertEquals(Arrays.asList("app/A#0", "app/B#2"),
+                sites(index, METHOD, "java/io/PrintStream", "println", "(Ljava/lang/String;)V"));
+        assertEquals(Arrays.asList("app/A#0", "app/A#1", "app/B#2"), sites(index, METHOD, null, "println", null));
+        assertEquals(Arrays.asList("app/A#0", "app/A#1", "app/B#2"),
+                sites(index, METHOD, "java/io/PrintStream", null, null));
+        assertEquals(Collections.singletonList("app/A#1"), sites(index, METHOD, null, null, "(I)V"));
+        assertEquals(Collections.singletonList("app/A#0"),
+                sites(index, FIELD, "java/lang/System", "out", "Ljava/io/PrintStream;"));
+        // same member, other kind
+        assertEquals(Collections.emptyList(), sites(index, FIELD, null, "println", null));
+        assertEquals(Collections.emptyList(), sites(index, METHOD, "java/lang/System", "out", "Ljava/io/PrintStream;"));
+        assertEquals(3, index.symbolCount());
+    }
+
+    @Test
+    public void regexLookup() {
+        SymbolIndex index = new SymbolIndex();
+        index.add(summary("app/A",
+                ref(ClassSummary.INVOKE_STATIC, "app/Util", "decrypt", "(Ljava/lang/String;)Ljava/lang/String;", 0),
+                ref(ClassSummary.INVOKE_STATIC, "app/Util", "decode", "([B)[B", 1),
+                ref(ClassSummary.FIELD_PUT, "app/Util", "dec", "I", 1)));
+
+        List<String> found = new ArrayList<>();
+        index.findMatching(METHOD, Pattern.compile("app/.*"), Pattern.compile("dec.*"), null,
+                (owner, name, desc, className, methodIndex, kind) -> found.add(name));
+        Collections.sort(found);
+        assertEquals(Arrays.asList("decode", "decrypt"), found);
+
+        found.clear();
+        index.findMatching(FIELD, null, Pattern.compile("dec"), Pattern.compile("I"),
+                (owner, name, desc, className, methodIndex, kind) -> found.add(name + " " + kind));
+        assertEquals(Collections.singletonList("dec " + ClassSummary.FIELD_PUT), found);
+    }
+
+    @Test
+    public void removeAndReplace() {
+        SymbolIndex index = new SymbolIndex();
+        index.add(summary("app/A", ref(ClassSummary.INVOKE_STATIC, "app/Util", "run", "()V", 0)));
+        index.add(summary("app/B", ref(ClassSummary.INVOKE_STATIC, "app/Util", "run", "()V", 3)));
+
+        index.remove("app/A");
+        assertEquals(Collections.singletonList("app/B#3"), sites(index, METHOD, "app/Util", "run", "()V"));
+
+        // adding a class again replaces its sites rather than adding to them
+        index.add(summary("app/B", ref(ClassSummary.INVOKE_STATIC, "app/Util", "run", "()V", 1)));
+        index.add(summary("app/B", ref(ClassSummary.INVOKE_STATIC, "app/Util", "run", "()V", 2),
+                ref(ClassSummary.INVOKE_STATIC, "app/Util", "run", "()V", 4)));
+        assertEquals(Arrays.asList("app/B#2", "app/B#4"), sites(index, METHOD, "app/Util", "run", "()V"));
+
+        index.remove("app/Missing");
+        assertEquals(2, sites(index, METHOD, null, "run", null).size());
+    }
+
+    @Test
+    public void compaction() {
+        SymbolIndex index = new SymbolIndex();
+        for (int i = 0; i < 6000; i++) {
+            index.add(summary("app/C" + i,
+                    ref(ClassSummary.INVOKE_VIRTUAL, "app/Shared", "call", "()V", i % 7),
+                    ref(ClassSummary.INVOKE_VIRTUAL, "app/Own" + i, "call", "()V", 0)));
+        }
+        // removes two thirds of the sites, so the index compacts along the way
+        for (int i = 0; i < 6000; i++) {
+            if (i % 3 != 2)
+                index.remove("app/C" + i);
+        }
+
+        List<String> shared = sites(index, METHOD, "app/Shared", "call", "()V");
+        assertEquals(2000, shared.size());
+        for (String site : shared) {
+            int i = Integer.parseInt(site.substring("app/C".length(), site.indexOf('#')));
+            assertEquals(2, i % 3);
+            assertEquals("app/C" + i + "#" + (i % 7), site);
+        }
+        assertEquals(Collections.singletonList("app/C2#0"), sites(index, METHOD, "app/Own2", "call", "()V"));
+        assertEquals(Collections.emptyList(), sites(index, METHOD, "app/Own3", "call", "()V"));
+        // symbols only the removed classes used are dropped
+        assertTrue(index.symbolCount() < 6001);
+        assertEquals(2000, sites(index, METHOD, null, "call", null).size() - shared.size());
+    }
+
+    @Test
+    public void reanalysisStaysBounded() {
+        SymbolIndex index = new SymbolIndex();
+        // the same class reindexed over and over, each time calling something else
+        for (int k = 0; k < 20000; k++) {
+            index.add(summary("app/A", ref(ClassSummary.INVOKE_STATIC, "app/V" + k, "run", "()V", k % 5)));
+        }
+        assertTrue(index.symbolCount() <= 4098);
+        assertEquals(Collections.singletonList("app/A#4"), sites(index, METHOD, null, "run", null));
+        assertEquals(Collections.singletonList("app/A#4"), sites(index, METHOD, "app/V19999", "run", "()V"));
+        assertEquals(Collections.emptyList(), sites(index, METHOD, "app/V0", "run", "()V"));
+
+        index.add(summary("app/B", ref(ClassSummary.INVOKE_STATIC, "app/V19999", "run", "()V", 1)));
+        assertEquals(Arrays.asList("app/A#4", "app/B#1"), sites(index, METHOD, "app/V19999", "run", "()V"));
+    }
+
+    private static List<String> sites(SymbolIndex index, JavaDesc.DescType type, String owner, String name,
+                                      String desc) {
+        List<String> sites = new ArrayList<>();
+        index.find(type, owner, name, desc,
+                (o, n, d, className, methodIndex, kind) -> sites.add(className + "#" + methodIndex));
+        Collections.sort(sites);
+        return sites;
+    }
+
+    private static Object[] ref(byte kind, String owner, String name, String desc, int method) {
+        return new Object[]{kind, owner, name, desc, method};
+    }
+
+    private static ClassSummary summary(String name, Object[]... refs) {
+        ClassSummary.Builder b = new ClassSummary.Builder(name, 8);
+        for (Object[] r : refs)
+            b.addRef((Byte) r[0], (String) r[1], (String) r[2], (String) r[3], (Integer) r[4]);
+        return b.build();
+    }
+}